@@ -0,0 +1,92 @@
+package org.rin.DAO;
+
+import org.openjdk.jmh.annotations.*;
+import org.rin.bench.EmbeddedDatabase;
+import org.rin.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các đường DAO nóng trên H2 in-memory (MODE=MySQL): đo chi phí phía Java (pool, proxy đo đạc, JDBC, mapping)
+ * chứ không phải độ trễ mạng của MySQL thật.
+ * forEachUser không có ở đây: fetchSize Integer.MIN_VALUE là chế độ streaming riêng của Connector/J, H2 từ chối.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class UserDAOBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"10000"})
+    int rows;
+
+    private UserDAO dao;
+    private CachedUserDAO cachedDao;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EmbeddedDatabase.start(rows);
+        dao = new UserDAO();
+        cachedDao = new CachedUserDAO();
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, rows + 1);
+    }
+
+    @Benchmark
+    public User getUserById() {
+        return dao.getUserById(randomId());
+    }
+
+    @Benchmark
+    public User getUserByIdCached() {
+        return cachedDao.getUserById(randomId());
+    }
+
+    @Benchmark
+    public List<User> getUsersPage() {
+        return dao.getUsersPage(randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<User> getAllUsers() {
+        return dao.getAllUsers();
+    }
+
+    @Benchmark
+    public byte[] getAllUsersJsonCached() {
+        return cachedDao.getAllUsersJson();
+    }
+
+    @Benchmark
+    public User updateUser() {
+        int id = randomId();
+        return dao.updateUser(id, "User " + id, "0900000000");
+    }
+
+    /**
+     * Batch insert rồi xóa lại để kích thước bảng không đổi giữa các iteration
+     */
+    @Benchmark
+    public List<Integer> addUsersThenDelete() {
+        List<User> users = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            users.add(new User(0, "Batch " + i, "0911111111"));
+        }
+        List<User> added = dao.addUsers(users);
+        List<Integer> ids = new ArrayList<>(added.size());
+        for (User user : added) {
+            ids.add(user.getId());
+        }
+        return dao.deleteUsers(ids);
+    }
+}
@@ -0,0 +1,98 @@
+package org.rin.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * So sánh hai file kết quả JSON của JMH (baseline, candidate): mỗi benchmark + bộ tham số một dòng,
+ * kèm byte cấp phát mỗi op nếu chạy với -prof gc. Thay đổi nằm trong sai số (score ± error chồng nhau) đánh dấu "~".
+ * <pre>
+ *   java -cp benchmarks.jar org.rin.bench.BenchmarkCompare results/baseline.json results/candidate.json
+ * </pre>
+ */
+public final class BenchmarkCompare {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    private record Score(double score, double error, boolean higherIsBetter, Double allocBytes) {}
+
+    private BenchmarkCompare() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkCompare <baseline.json> <candidate.json>");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(new File(args[0]));
+        Map<String, Score> candidate = read(new File(args[1]));
+
+        System.out.printf("%-90s %14s %14s %9s  %s%n", "benchmark", "baseline", "candidate", "change", "alloc B/op");
+        for (Map.Entry<String, Score> entry : candidate.entrySet()) {
+            Score after = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", after.score(), "new", alloc(null, after));
+                continue;
+            }
+            // Dấu + luôn nghĩa là tốt hơn, bất kể mode là throughput hay thời gian
+            double change = (after.score() - before.score()) / before.score() * 100;
+            if (!after.higherIsBetter()) {
+                change = -change;
+            }
+            if (change == 0) {
+                change = 0; // không in "-0.0%"
+            }
+            boolean withinError = Math.abs(after.score() - before.score()) <= before.error() + after.error();
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%%s %s%n", entry.getKey(), before.score(), after.score(),
+                    change, withinError ? "~" : " ", alloc(before, after));
+        }
+        for (String key : baseline.keySet()) {
+            if (!candidate.containsKey(key)) {
+                System.out.printf("%-90s %14.3f %14s %9s%n", key, baseline.get(key).score(), "-", "removed");
+            }
+        }
+    }
+
+    private static String alloc(Score before, Score after) {
+        if (after.allocBytes() == null) {
+            return "";
+        }
+        if (before == null || before.allocBytes() == null) {
+            return String.format("%.0f", after.allocBytes());
+        }
+        return String.format("%.0f -> %.0f", before.allocBytes(), after.allocBytes());
+    }
+
+    private static Map<String, Score> read(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : MAPPER.readTree(file)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            JsonNode params = run.path("params");
+            for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> param = it.next();
+                key.append(key.indexOf("(") < 0 ? "(" : ", ").append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            if (params.size() > 0) {
+                key.append(')');
+            }
+
+            JsonNode primary = run.path("primaryMetric");
+            double error = primary.path("scoreError").asDouble(0);
+            String unit = primary.path("scoreUnit").asText();
+            JsonNode alloc = run.path("secondaryMetrics").path(ALLOC_METRIC);
+            scores.put(key.toString(), new Score(
+                    primary.path("score").asDouble(),
+                    Double.isNaN(error) ? 0 : error, // NaN khi chỉ có một iteration
+                    unit.startsWith("ops/"),
+                    alloc.isMissingNode() ? null : alloc.path("score").asDouble()));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,70 @@
+package org.rin.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point của benchmarks.jar: chạy JMH với tham số như bình thường, nhưng mặc định ghi kết quả JSON vào
+ * results/&lt;thời điểm&gt;-&lt;commit&gt;.json để so sánh giữa các commit bằng BenchmarkCompare.
+ * <pre>
+ *   mvn -B package -pl benchmarks -am
+ *   java -jar benchmarks/target/benchmarks.jar FanOut -prof gc
+ *   java -cp benchmarks/target/benchmarks.jar org.rin.bench.BenchmarkCompare results/a.json results/b.json
+ * </pre>
+ * Truyền -rf / -rff thì dùng đúng giá trị đó.
+ */
+public final class BenchmarkMain {
+
+    private static final Path RESULTS_DIR = Path.of("results");
+
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(List.of(args));
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+        }
+        if (!jmhArgs.contains("-rff")) {
+            Files.createDirectories(RESULTS_DIR);
+            String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "-" + commit() + ".json";
+            jmhArgs.add("-rff");
+            jmhArgs.add(RESULTS_DIR.resolve(name).toString());
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+
+    /**
+     * Commit hiện tại (thêm "-dirty" nếu có thay đổi chưa commit), "unknown" khi không chạy trong git
+     */
+    private static String commit() {
+        String head = git("rev-parse", "--short", "HEAD");
+        if (head == null) {
+            return "unknown";
+        }
+        String status = git("status", "--porcelain", "--untracked-files=no");
+        return status != null && !status.isEmpty() ? head + "-dirty" : head;
+    }
+
+    private static String git(String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(List.of(args));
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            return process.waitFor() == 0 ? output : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
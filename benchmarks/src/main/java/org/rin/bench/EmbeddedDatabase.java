@@ -0,0 +1,57 @@
+package org.rin.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * H2 in-memory ở MODE=MySQL thay cho MySQL: cùng schema `test-db`.`user` như test-db_user.sql,
+ * DatabaseConfig được trỏ sang qua system property nên DAO chạy nguyên bản, không cần mạng hay server.
+ */
+public final class EmbeddedDatabase {
+
+    public static final String URL = "jdbc:h2:mem:test-db;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String USER = "sa";
+    private static final String PASSWORD = "bench";
+
+    private EmbeddedDatabase() {}
+
+    /**
+     * Tạo schema + `rows` user rồi cấu hình DatabaseConfig. Phải gọi trước lần đầu DatabaseConfig.getDataSource()
+     */
+    public static synchronized void start(int rows) {
+        System.setProperty("DB_DRIVER", "org.h2.Driver");
+        System.setProperty("DB_URL", URL);
+        System.setProperty("DB_USER", USER);
+        System.setProperty("DB_PASSWORD", PASSWORD);
+
+        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE SCHEMA IF NOT EXISTS `test-db`");
+                stmt.execute("DROP TABLE IF EXISTS `test-db`.`user`");
+                stmt.execute("CREATE TABLE `test-db`.`user` (" +
+                        "`id` int NOT NULL AUTO_INCREMENT, " +
+                        "`name` varchar(45) NOT NULL, " +
+                        "`phone` varchar(45) NOT NULL, " +
+                        "`version` int NOT NULL DEFAULT '0', " +
+                        "PRIMARY KEY (`id`))");
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO `test-db`.`user` (`name`, `phone`) VALUES (?, ?)")) {
+                for (int i = 1; i <= rows; i++) {
+                    ps.setString(1, "User " + i);
+                    ps.setString(2, String.format("09%08d", i));
+                    ps.addBatch();
+                    if (i % 1000 == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot create embedded database", e);
+        }
+    }
+}
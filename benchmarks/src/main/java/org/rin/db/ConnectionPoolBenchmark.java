@@ -0,0 +1,66 @@
+package org.rin.db;
+
+import org.openjdk.jmh.annotations.*;
+import org.rin.DAO.UserDAO;
+import org.rin.bench.EmbeddedDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool DBCP dưới tải đồng thời (H2 in-memory): `concurrency` request cùng lúc gọi UserDAO.getUserById
+ * trên platform thread pool hoặc virtual thread, pool (DB_POOL_MAX_TOTAL) là giới hạn concurrency thật sự.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dorg.slf4j.simpleLogger.defaultLogLevel=warn", "-DDB_POOL_MAX_TOTAL=20"})
+public class ConnectionPoolBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    @Param({"200"})
+    int concurrency;
+
+    private UserDAO dao;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EmbeddedDatabase.start(ROWS);
+        dao = new UserDAO();
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(concurrency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(executor.submit(() -> dao.getUserById(ThreadLocalRandom.current().nextInt(1, ROWS + 1))));
+        }
+        int found = 0;
+        for (Future<?> future : futures) {
+            if (future.get() != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
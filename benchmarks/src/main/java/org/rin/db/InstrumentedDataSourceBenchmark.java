@@ -0,0 +1,60 @@
+package org.rin.db;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.rin.bench.EmbeddedDatabase;
+import org.rin.config.DatabaseConfig;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí đo đạc của InstrumentedDataSource: borrow + prepare + query một row qua wrapper so với thẳng pool DBCP.
+ * H2 in-memory trả kết quả rất nhanh nên chênh lệch gần như toàn bộ là proxy + histogram.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class InstrumentedDataSourceBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final String SELECT_BY_ID = "SELECT `id`, `name`, `phone`, `version` FROM `test-db`.`user` WHERE `id` = ?";
+
+    private DataSource instrumented;
+    private DataSource raw;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        EmbeddedDatabase.start(ROWS);
+        instrumented = DatabaseConfig.getDataSource();
+        raw = instrumented.unwrap(BasicDataSource.class);
+    }
+
+    @Benchmark
+    public int queryInstrumented() throws SQLException {
+        return query(instrumented);
+    }
+
+    @Benchmark
+    public int queryRaw() throws SQLException {
+        return query(raw);
+    }
+
+    private static int query(DataSource ds) throws SQLException {
+        try (Connection conn = ds.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SELECT_BY_ID)) {
+            ps.setInt(1, ThreadLocalRandom.current().nextInt(1, ROWS + 1));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+}
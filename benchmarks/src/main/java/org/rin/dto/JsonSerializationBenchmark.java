@@ -0,0 +1,89 @@
+package org.rin.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.rin.config.JsonConfig;
+import org.rin.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize/deserialize JSON cho User và UserHandleDTO: writer/reader dựng sẵn của JsonConfig (Blackbird),
+ * ObjectMapper mặc định dùng chung (trước JsonConfig) và ObjectMapper tạo mới mỗi lần (cách cũ của buildAndSendToTopic).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private static final ObjectMapper PLAIN_MAPPER = new ObjectMapper();
+    private static final ObjectWriter EVENT_WRITER = JsonConfig.writerFor(UserHandleDTO.class);
+    private static final ObjectWriter PAGE_WRITER = JsonConfig.writerFor(UserPageDTO.class);
+    private static final ObjectReader USER_READER = JsonConfig.readerFor(User.class);
+
+    // Số user của một trang / snapshot danh sách
+    @Param({"100"})
+    int pageSize;
+
+    private UserHandleDTO event;
+    private UserPageDTO page;
+    private byte[] userJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        event = new UserHandleDTO(new User(42, "Nguyễn Văn A", "0912345678", 3), "update");
+        List<User> users = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            users.add(new User(i + 1, "User " + i, "09" + String.format("%08d", i), i % 5));
+        }
+        page = new UserPageDTO(users, pageSize);
+        userJson = PLAIN_MAPPER.writeValueAsBytes(event.getUser());
+    }
+
+    @Benchmark
+    public byte[] eventJsonConfig() throws Exception {
+        return EVENT_WRITER.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] eventJsonConfigRuntimeType() throws Exception {
+        return JsonConfig.toBytes(event);
+    }
+
+    @Benchmark
+    public byte[] eventPlainMapper() throws Exception {
+        return PLAIN_MAPPER.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] eventNewMapper() throws Exception {
+        return new ObjectMapper().writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] pageJsonConfig() throws Exception {
+        return PAGE_WRITER.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] pagePlainMapper() throws Exception {
+        return PLAIN_MAPPER.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public User readUserJsonConfig() throws Exception {
+        return USER_READER.readValue(userJson);
+    }
+
+    @Benchmark
+    public User readUserPlainMapper() throws Exception {
+        return PLAIN_MAPPER.readValue(userJson, User.class);
+    }
+}
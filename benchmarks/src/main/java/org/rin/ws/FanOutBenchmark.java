@@ -0,0 +1,101 @@
+package org.rin.ws;
+
+import io.javalin.websocket.WsContext;
+import org.openjdk.jmh.annotations.*;
+import org.rin.dto.UserHandleDTO;
+import org.rin.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out của WSConfig.buildAndSendToTopic tới 1 / 100 / 10k subscriber (WsContext giả, gửi hoàn tất ngay).
+ * Đi đủ đường thật: CONNECT/SUBSCRIBE qua onMessage, serialize, replay ring, router, encoder, OutboundQueue.
+ * Aux counter wireBytes / wireMessages tính theo giây: chia cho ops/s ra số byte và message mỗi broadcast.
+ * subscriptionsPerSession > 1: mỗi session subscribe thêm các topic khác (phòng chat riêng) - tổng subscription
+ * tăng 20 lần trong khi số người nhận của TOPIC giữ nguyên, broadcastLatency phải không đổi giữa 1 và 20.
+ * Heap cố định: để JVM tự co giãn thì live set lớn hơn (200k subscription) kéo theo young gen lớn hơn và số lần GC khác hẳn,
+ * hai cấu hình không còn so sánh được. Cùng lý do, subscription phụ được tạo sau khi mọi session đã CONNECT/SUBSCRIBE TOPIC:
+ * tạo xen kẽ thì object nóng của các session (entry, queue, user) nằm rải giữa node của router và benchmark đo thứ tự
+ * cấp phát chứ không phải số subscription.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dorg.slf4j.simpleLogger.defaultLogLevel=warn",
+        "-Xms1g", "-Xmx1g", "-Xmn256m", "-XX:+AlwaysPreTouch"})
+public class FanOutBenchmark {
+
+    static final String TOPIC = "/topic/manager/users";
+
+    @Param({"1", "100", "10000"})
+    int subscribers;
+
+    // JSON / CBOR: so sánh số byte trên dây của hai body encoding
+    @Param({"json", "cbor"})
+    String bodyEncoding;
+
+    // Tổng subscription = subscribers * subscriptionsPerSession, chỉ một trong số đó là TOPIC
+    @Param({"1", "20"})
+    int subscriptionsPerSession;
+
+    private WSConfig ws;
+    private final StubSessions.Wire wire = new StubSessions.Wire();
+    private UserHandleDTO event;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class WireCounters {
+        public long wireBytes;
+        public long wireMessages;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ws = WSConfig.getInstance();
+        List<WsContext> sessions = new ArrayList<>(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            var ctx = StubSessions.context("bench-" + i, "user" + i, wire);
+            sessions.add(ctx);
+            ws.onMessage(ctx, "CONNECT\naccept-version:1.2\nheart-beat:0,0\nbody-encoding:" + bodyEncoding + "\n\n\u0000");
+            ws.onMessage(ctx, "SUBSCRIBE\nid:sub-0\ndestination:" + TOPIC + "\n\n\u0000");
+        }
+        for (int i = 0; i < subscribers; i++) {
+            for (int j = 1; j < subscriptionsPerSession; j++) {
+                ws.onMessage(sessions.get(i), "SUBSCRIBE\nid:sub-" + j + "\ndestination:/topic/room-" + j + "/user" + i + "\n\n\u0000");
+            }
+        }
+        event = new UserHandleDTO(new User(42, "Nguyen Van A", "0912345678", 3), "update");
+        wire.takeBytes();
+        wire.takeMessages();
+        // Dọn rác của setup trước khi đo: hai cấu hình bắt đầu từ cùng một heap đã nén
+        System.gc();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ws.shutdown();
+    }
+
+    @Benchmark
+    public void broadcast(WireCounters counters) throws Exception {
+        ws.buildAndSendToTopic(TOPIC, event);
+        counters.wireBytes += wire.takeBytes();
+        counters.wireMessages += wire.takeMessages();
+    }
+
+    /**
+     * Thời gian một broadcast tới TOPIC - so sánh giữa subscriptionsPerSession=1 và 20
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void broadcastLatency() throws Exception {
+        ws.buildAndSendToTopic(TOPIC, event);
+        wire.takeBytes();
+        wire.takeMessages();
+    }
+}
@@ -0,0 +1,79 @@
+package org.rin.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.rin.dto.UserHandleDTO;
+import org.rin.model.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí dựng MESSAGE frame cho một broadcast tới N người nhận, chạy với -prof gc để xem byte cấp phát mỗi op:
+ * - encoder: body + header chung encode một lần vào buffer pool, mỗi người nhận chỉ thêm prefix subscription/message-id
+ * - legacyStrings: cách cũ, mỗi người nhận một String MESSAGE mới với UUID và getBytes lại body để lấy content-length
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameEncoderBenchmark {
+
+    private static final String TOPIC = "/topic/manager/users";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"100"})
+    int recipients;
+
+    private MessageFrameEncoder encoder;
+    private UserHandleDTO event;
+    private String[] subscriptionIds;
+
+    @Setup
+    public void setUp() {
+        encoder = new MessageFrameEncoder("bench", 10_000, 16 * 1024, 256);
+        event = new UserHandleDTO(new User(42, "Nguyen Van A", "0912345678", 3), "update");
+        subscriptionIds = new String[recipients];
+        for (int i = 0; i < recipients; i++) {
+            subscriptionIds[i] = "sub-" + i;
+        }
+    }
+
+    @Benchmark
+    public void encoder(Blackhole bh) throws Exception {
+        byte[] body = MAPPER.writeValueAsBytes(event);
+        PayloadFrames frames = new PayloadFrames(encoder, TOPIC, null, "application/json", body, event);
+        try {
+            for (String subscriptionId : subscriptionIds) {
+                StompMessageFrame frame = frames.frameFor(BodyEncoding.JSON);
+                ByteBuffer prefix = encoder.prefix(subscriptionId);
+                bh.consume(prefix.remaining() + frame.sharedLength());
+                encoder.releasePrefix(prefix);
+            }
+        } finally {
+            frames.release();
+        }
+    }
+
+    @Benchmark
+    public void legacyStrings(Blackhole bh) throws Exception {
+        String json = new ObjectMapper().writeValueAsString(event);
+        for (String subscriptionId : subscriptionIds) {
+            String message = "MESSAGE\n" +
+                    "destination:" + TOPIC + "\n" +
+                    "content-type:application/json\n" +
+                    "message-id:" + UUID.randomUUID() + "\n" +
+                    "subscription:" + subscriptionId + "\n" +
+                    "content-length:" + json.getBytes(StandardCharsets.UTF_8).length + "\n" +
+                    "\n" +
+                    json + "\n" +
+                    "\0";
+            bh.consume(message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.rin.ws;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí kiểm tra admission của mỗi SEND (session + username + destination) khi nhiều thread
+ * cùng đập vào bucket của một destination. Rate đặt rất cao để đo đường cho qua, không phải đường từ chối.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {
+        "-DWS_SEND_SESSION_RATE=1000000000", "-DWS_SEND_USER_RATE=1000000000", "-DWS_SEND_DESTINATION_RATE=1000000000"})
+public class SendAdmissionBenchmark {
+
+    private SendAdmission admission;
+
+    @State(org.openjdk.jmh.annotations.Scope.Thread)
+    public static class Session {
+        TokenBucket bucket;
+        String username;
+
+        @Setup
+        public void setUp(SendAdmissionBenchmark shared) {
+            bucket = shared.admission.newSessionBucket();
+            username = "user-" + Thread.currentThread().threadId();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        admission = new SendAdmission();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SendAdmission.Scope admitSingleThread(Session session) {
+        return admission.admit(session.bucket, session.username, "/topic/chat/room-42");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SendAdmission.Scope admitContended(Session session) {
+        return admission.admit(session.bucket, session.username, "/topic/chat/room-42");
+    }
+}
@@ -0,0 +1,58 @@
+package org.rin.ws;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.rin.config.JsonConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dựng body MESSAGE từ SEND application/json (gồm cả decode frame): relay ghép nguyên byte body
+ * so với parse thành JsonNode + SendPayload rồi serialize lại (WS_SEND_RELAY=false).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendRelayBenchmark {
+
+    // Độ dài gần đúng của body JSON (byte)
+    @Param({"100", "4000"})
+    int bodySize;
+
+    private byte[] bytes;
+    private byte[] prefix;
+    private final StompDecoder decoder = new StompDecoder();
+
+    @Setup
+    public void setUp() {
+        StringBuilder body = new StringBuilder("{\"room\":42,\"mentions\":[\"an\",\"binh\"],\"text\":\"");
+        while (body.length() < bodySize) {
+            body.append("Xin chào mọi người, hôm nay có họp lúc 3 giờ chiều. ");
+        }
+        body.append("\"}");
+        bytes = ("SEND\ndestination:/topic/chat/room-42\ncontent-type:application/json\n\n" + body + "\u0000")
+                .getBytes(StandardCharsets.UTF_8);
+        prefix = SendRelay.envelopePrefix("an");
+    }
+
+    @Benchmark
+    public void relay(Blackhole bh) {
+        decoder.decode(bytes, 0, bytes.length, frame -> bh.consume(SendRelay.envelope(prefix, frame, true)));
+    }
+
+    @Benchmark
+    public void reserialize(Blackhole bh) {
+        decoder.decode(bytes, 0, bytes.length, frame -> {
+            try {
+                Object content = JsonConfig.readTree(frame.bodyStream());
+                bh.consume(JsonConfig.toBytes(new WSConfig.SendPayload("an", System.currentTimeMillis(), content)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package org.rin.ws;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse STOMP frame client gửi lên: StompDecoder hiện tại so với cách cũ của onMessage
+ * (startsWith theo command + extractHeaderValue/extractBodyContent split cả frame cho mỗi header).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StompParserBenchmark {
+
+    @Param({"SEND", "SUBSCRIBE"})
+    String frameType;
+
+    private String message;
+    private byte[] bytes;
+    private final StompDecoder decoder = new StompDecoder();
+
+    @Setup
+    public void setUp() {
+        message = switch (frameType) {
+            case "SEND" -> "SEND\ndestination:/topic/chat/room-42\ncontent-type:application/json\nreceipt:r-17\n\n"
+                    + "{\"text\":\"Xin chào mọi người, hôm nay có họp lúc 3 giờ chiều\",\"room\":42,\"mentions\":[\"an\",\"binh\"]}\u0000";
+            default -> "SUBSCRIBE\nid:sub-3\ndestination:/user/{username}/queue/notifications\nack:auto\n\n\u0000";
+        };
+        bytes = message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Đường hiện tại với WebSocket binary message
+     */
+    @Benchmark
+    public void decoderBytes(Blackhole bh) {
+        decoder.decode(bytes, 0, bytes.length, frame -> consume(frame, bh));
+    }
+
+    /**
+     * Đường hiện tại với text message: onMessage(String) encode UTF-8 trước khi decode
+     */
+    @Benchmark
+    public void decoderText(Blackhole bh) {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(data, 0, data.length, frame -> consume(frame, bh));
+    }
+
+    @Benchmark
+    public void legacySplit(Blackhole bh) {
+        String frame = message;
+        if (frame.startsWith("CONNECT") || frame.startsWith("STOMP")) {
+            bh.consume(extractHeaderValue(frame, "heart-beat"));
+        } else if (frame.startsWith("SUBSCRIBE")) {
+            bh.consume(extractHeaderValue(frame, "destination"));
+            bh.consume(extractHeaderValue(frame, "id"));
+        } else if (frame.startsWith("UNSUBSCRIBE")) {
+            bh.consume(extractHeaderValue(frame, "id"));
+        } else if (frame.startsWith("SEND")) {
+            bh.consume(extractHeaderValue(frame, "destination"));
+            bh.consume(extractHeaderValue(frame, "content-type"));
+            bh.consume(extractBodyContent(frame));
+        }
+    }
+
+    private static void consume(StompFrame frame, Blackhole bh) {
+        switch (frame.command()) {
+            case SUBSCRIBE -> {
+                bh.consume(frame.header("destination"));
+                bh.consume(frame.header("id"));
+            }
+            case SEND -> {
+                bh.consume(frame.header("destination"));
+                bh.consume(frame.header("content-type"));
+                bh.consume(frame.bodyAsString());
+            }
+            default -> bh.consume(frame);
+        }
+    }
+
+    // ===== Bản sao parser cũ của WSConfig để làm mốc so sánh ===== //
+
+    private static String extractHeaderValue(String frame, String headerName) {
+        String[] lines = frame.split("\n");
+        for (String line : lines) {
+            if (line.startsWith(headerName + ":")) {
+                return line.substring(headerName.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private static String extractBodyContent(String frame) {
+        String[] lines = frame.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].equals("") && i + 1 < lines.length) {
+                return lines[i + 1];
+            }
+        }
+        return null;
+    }
+}
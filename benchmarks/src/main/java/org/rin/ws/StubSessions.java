@@ -0,0 +1,152 @@
+package org.rin.ws;
+
+import io.javalin.http.Context;
+import io.javalin.websocket.WsContext;
+import io.javalin.websocket.WsMessageContext;
+import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.UpgradeResponse;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * WsContext giả cho benchmark: không có socket, mọi lần gửi hoàn tất ngay (callback writeSuccess gọi đồng bộ)
+ * và được đếm vào Wire. Jetty/Javalin là interface nên dựng bằng dynamic proxy, method không dùng trả về giá trị rỗng.
+ */
+final class StubSessions {
+
+    private static final String UPGRADE_CONTEXT_ATTRIBUTE = "javalin-ws-upgrade-context";
+    private static final InetSocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 50_000);
+
+    /**
+     * Số byte / WebSocket message đã "gửi" ra các session dùng chung Wire
+     */
+    static final class Wire {
+        private long bytes;
+        private long messages;
+
+        synchronized void record(int length, boolean last) {
+            bytes += length;
+            if (last) {
+                messages++;
+            }
+        }
+
+        synchronized long takeBytes() {
+            long value = bytes;
+            bytes = 0;
+            return value;
+        }
+
+        synchronized long takeMessages() {
+            long value = messages;
+            messages = 0;
+            return value;
+        }
+    }
+
+    private StubSessions() {}
+
+    /**
+     * Context của một kết nối đã qua handshake với ?username=...
+     */
+    static WsContext context(String sessionId, String username, Wire wire) {
+        Context upgradeCtx = stub(Context.class, (method, args) ->
+                method.getName().equals("queryParam") && "username".equals(args[0]) ? username : null);
+        HttpServletRequest servletRequest = stub(HttpServletRequest.class, (method, args) ->
+                method.getName().equals("getAttribute") && UPGRADE_CONTEXT_ATTRIBUTE.equals(args[0]) ? upgradeCtx : null);
+        JettyServerUpgradeRequest upgradeRequest = stub(JettyServerUpgradeRequest.class, (method, args) -> switch (method.getName()) {
+            case "getHttpServletRequest" -> servletRequest;
+            case "getParameterMap" -> Map.of("username", List.of(username));
+            default -> null;
+        });
+        UpgradeResponse upgradeResponse = stub(UpgradeResponse.class, (method, args) ->
+                method.getName().equals("getExtensions") ? List.of() : null);
+        RemoteEndpoint remote = stub(RemoteEndpoint.class, (method, args) -> {
+            WriteCallback callback = null;
+            switch (method.getName()) {
+                case "sendPartialBytes" -> {
+                    wire.record(((ByteBuffer) args[0]).remaining(), (Boolean) args[1]);
+                    callback = args.length > 2 ? (WriteCallback) args[2] : null;
+                }
+                case "sendBytes" -> {
+                    wire.record(((ByteBuffer) args[0]).remaining(), true);
+                    callback = args.length > 1 ? (WriteCallback) args[1] : null;
+                }
+                case "sendString" -> {
+                    wire.record(((String) args[0]).getBytes(StandardCharsets.UTF_8).length, true);
+                    callback = args.length > 1 ? (WriteCallback) args[1] : null;
+                }
+                case "sendPing", "sendPong" -> callback = args.length > 1 ? (WriteCallback) args[1] : null;
+                case "getRemoteAddress" -> {
+                    return REMOTE;
+                }
+                default -> {
+                    return null;
+                }
+            }
+            if (callback != null) {
+                callback.writeSuccess();
+            }
+            return null;
+        });
+        Session session = stub(Session.class, (method, args) -> switch (method.getName()) {
+            case "getRemote" -> remote;
+            case "getRemoteAddress" -> REMOTE;
+            case "getUpgradeRequest" -> upgradeRequest;
+            case "getUpgradeResponse" -> upgradeResponse;
+            case "isOpen" -> true;
+            case "close" -> {
+                if (args != null && args.length == 3 && args[2] instanceof WriteCallback callback) {
+                    callback.writeSuccess();
+                }
+                yield null;
+            }
+            default -> null;
+        });
+        return new WsMessageContext(sessionId, session, "");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, BiFunction<Method, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "toString" -> {
+                    return "Stub" + type.getSimpleName();
+                }
+                default -> {
+                    Object result = handler.apply(method, args);
+                    return result != null ? result : emptyValue(method.getReturnType());
+                }
+            }
+        });
+    }
+
+    private static Object emptyValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        return null;
+    }
+}
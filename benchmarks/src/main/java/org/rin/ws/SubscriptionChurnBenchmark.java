@@ -0,0 +1,100 @@
+package org.rin.ws;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SessionRegistry dưới tải đồng thời: nhiều thread subscribe/unsubscribe (hoặc connect/remove cả session)
+ * trong khi một thread fan-out liên tục match destination. Đo thông lượng của cả hai phía và
+ * (với -prof gc) lượng rác do invalidation cache của router.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class SubscriptionChurnBenchmark {
+
+    private static final String TOPIC = "/topic/manager/users";
+
+    // Subscriber "ổn định" luôn có mặt, churn diễn ra bên cạnh
+    @Param({"1000"})
+    int stableSessions;
+
+    private TopicRouter router;
+    private SessionRegistry registry;
+    private final StubSessions.Wire wire = new StubSessions.Wire();
+    private final AtomicLong nextSession = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        router = new TopicRouter(10_000);
+        registry = new SessionRegistry(router);
+        for (int i = 0; i < stableSessions; i++) {
+            String sessionId = connect("stable-" + i);
+            registry.subscribe(sessionId, TOPIC, "sub-0");
+        }
+    }
+
+    private String connect(String sessionId) {
+        SessionRegistry.Entry entry = registry.open(StubSessions.context(sessionId, sessionId, wire),
+                ctx -> new OutboundQueue(ctx.sessionId(), ctx.session, 16, OutboundQueue.OverflowPolicy.DROP_OLDEST));
+        registry.connect(entry, new UserSession(sessionId, "127.0.0.1", 50_000, sessionId, true), null);
+        return sessionId;
+    }
+
+    /**
+     * Mỗi thread churn có session riêng, đã CONNECT sẵn
+     */
+    @State(Scope.Thread)
+    public static class ChurnSession {
+        String sessionId;
+        int round;
+
+        @Setup(Level.Trial)
+        public void setUp(SubscriptionChurnBenchmark bench, ThreadParams params) {
+            sessionId = bench.connect("churn-" + params.getThreadIndex());
+        }
+    }
+
+    @Benchmark
+    @Group("subscribe")
+    @GroupThreads(3)
+    public void subscribeUnsubscribe(ChurnSession session) {
+        String subscriptionId = "sub-" + (session.round++ & 7);
+        registry.subscribe(session.sessionId, TOPIC, subscriptionId);
+        registry.unsubscribe(session.sessionId, subscriptionId);
+    }
+
+    @Benchmark
+    @Group("subscribe")
+    @GroupThreads(1)
+    public void fanOutDuringSubscribe(Blackhole bh) {
+        bh.consume(router.match(TOPIC));
+    }
+
+    /**
+     * Kết nối ngắn: open, CONNECT, SUBSCRIBE hai topic rồi remove cả session
+     */
+    @Benchmark
+    @Group("connect")
+    @GroupThreads(3)
+    public void connectSubscribeRemove() {
+        String sessionId = connect("short-" + nextSession.incrementAndGet());
+        registry.subscribe(sessionId, TOPIC, "sub-0");
+        registry.subscribe(sessionId, "/user/{username}/queue/notifications", "sub-1");
+        registry.remove(sessionId);
+    }
+
+    @Benchmark
+    @Group("connect")
+    @GroupThreads(1)
+    public void fanOutDuringConnect(Blackhole bh) {
+        bh.consume(router.match(TOPIC));
+    }
+}
@@ -0,0 +1,73 @@
+package org.rin.ws;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TopicRouter.match: trúng cache, tính lại sau khi subscription thay đổi, và không có cache (duyệt trie mỗi lần).
+ * Subscription rải trên nhiều room, kèm wildcard "/topic/room/*" và "/topic/**" như dashboard quản trị.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class TopicRouterBenchmark {
+
+    private static final int ROOMS = 1000;
+    private static final int WILDCARD_EVERY = 100;
+
+    @Param({"1000", "100000"})
+    int subscriptions;
+
+    private TopicRouter cached;
+    private TopicRouter uncached;
+    private String[] destinations;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cached = new TopicRouter(10_000);
+        uncached = new TopicRouter(0);
+        for (int i = 0; i < subscriptions; i++) {
+            String pattern = i % WILDCARD_EVERY == 0
+                    ? (i % (WILDCARD_EVERY * 2) == 0 ? "/topic/room/*" : "/topic/**")
+                    : "/topic/room/" + (i % ROOMS);
+            cached.subscribe(pattern, "session-" + i, "sub-0");
+            uncached.subscribe(pattern, "session-" + i, "sub-0");
+        }
+        destinations = new String[ROOMS];
+        for (int i = 0; i < ROOMS; i++) {
+            destinations[i] = "/topic/room/" + i;
+        }
+    }
+
+    private String nextDestination() {
+        next = next + 1 == destinations.length ? 0 : next + 1;
+        return destinations[next];
+    }
+
+    @Benchmark
+    public List<TopicRouter.Subscriber> matchCached() {
+        return cached.match(nextDestination());
+    }
+
+    /**
+     * Mỗi lần match đều sau một subscribe/unsubscribe -> version đổi, cache không dùng được
+     */
+    @Benchmark
+    public List<TopicRouter.Subscriber> matchAfterChange() {
+        String destination = nextDestination();
+        cached.subscribe(destination, "churn", "sub-churn");
+        cached.unsubscribe(destination, "churn", "sub-churn");
+        return cached.match(destination);
+    }
+
+    @Benchmark
+    public List<TopicRouter.Subscriber> matchUncached() {
+        return uncached.match(nextDestination());
+    }
+}
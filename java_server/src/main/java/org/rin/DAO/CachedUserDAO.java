@@ -0,0 +1,229 @@
+package org.rin.DAO;
+
+import org.rin.config.EnvConfig;
+import org.rin.config.JsonConfig;
+import org.rin.dto.UserHandleDTO;
+import org.rin.model.User;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache read-through đứng trước UserDAO.
+ * - getUserById: LRU giới hạn kích thước + TTL
+ * - getAllUsers: snapshot danh sách đã serialize sẵn thành JSON
+ * Mọi thao tác ghi trong process này đi qua đây nên cache được cập nhật/invalidate ngay, TTL chỉ là lớp an toàn.
+ */
+public class CachedUserDAO extends UserDAO {
+
+    public record Stats(long userHits, long userMisses, long listHits, long listMisses,
+                        int cachedUsers, int maxSize, long ttlMillis) {}
+
+    private record Entry(User user, long expiresAt) {}
+
+    // version: snapshot chỉ còn dùng được khi chưa có lần ghi nào sau lúc build
+    private record ListSnapshot(List<User> users, byte[] json, long expiresAt, long version) {
+        boolean isFresh(long currentVersion) {
+            return version == currentVersion && expiresAt > System.currentTimeMillis();
+        }
+    }
+
+    private final int maxSize = EnvConfig.getInt("USER_CACHE_MAX_SIZE", 10_000);
+    private final long ttlMillis = EnvConfig.getLong("USER_CACHE_TTL_MS", 60_000);
+
+    // LinkedHashMap access-order = LRU
+    private final Map<Integer, Entry> users = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private volatile ListSnapshot listSnapshot;
+    // Tăng sau mỗi lần ghi (trước khi sửa cache), bản đọc từ DB trong lúc có ghi xen vào sẽ không được lưu
+    private final AtomicLong version = new AtomicLong();
+    private final Object listLock = new Object();
+
+    private final LongAdder userHits = new LongAdder();
+    private final LongAdder userMisses = new LongAdder();
+    private final LongAdder listHits = new LongAdder();
+    private final LongAdder listMisses = new LongAdder();
+
+    @Override
+    public User getUserById(int id) {
+        Entry entry;
+        synchronized (users) {
+            entry = users.get(id);
+        }
+        if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+            userHits.increment();
+            return entry.user();
+        }
+
+        userMisses.increment();
+        long before = version.get();
+        User user = super.getUserById(id);
+        if (user != null && user.getVersion() != null) {
+            putUserIfUnchanged(user, before);
+        }
+        return user;
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        return loadList().users();
+    }
+
+    /**
+     * JSON của toàn bộ danh sách, trả thẳng ra response không cần serialize lại
+     */
+    public byte[] getAllUsersJson() {
+        return loadList().json();
+    }
+
+    private ListSnapshot loadList() {
+        ListSnapshot snapshot = listSnapshot;
+        if (snapshot != null && snapshot.isFresh(version.get())) {
+            listHits.increment();
+            return snapshot;
+        }
+
+        // Chỉ một thread query lại DB, các thread khác chờ rồi dùng kết quả
+        synchronized (listLock) {
+            snapshot = listSnapshot;
+            if (snapshot != null && snapshot.isFresh(version.get())) {
+                listHits.increment();
+                return snapshot;
+            }
+
+            listMisses.increment();
+            long before = version.get();
+            List<User> all = List.copyOf(super.getAllUsers());
+            try {
+                snapshot = new ListSnapshot(all, JsonConfig.toBytes(all),
+                        System.currentTimeMillis() + ttlMillis, before);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot serialize user list", e);
+            }
+            // Có ghi xen vào thì snapshot tự hết hiệu lực ở lần đọc sau (isFresh so version)
+            listSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    @Override
+    public User addUser(String name, String phone) {
+        User user = super.addUser(name, phone);
+        if (user != null) {
+            apply(new UserHandleDTO(user, "add"));
+        }
+        return user;
+    }
+
+    @Override
+    public User updateUser(int id, String name, String phone, Integer expectedVersion) {
+        User user;
+        try {
+            user = super.updateUser(id, name, phone, expectedVersion);
+        } catch (VersionConflictException e) {
+            // Bản trong cache có thể đã cũ
+            invalidateUser(id);
+            throw e;
+        }
+        if (user != null) {
+            apply(new UserHandleDTO(user, "update"));
+        }
+        return user;
+    }
+
+    @Override
+    public boolean deleteUser(int id) {
+        boolean deleted = super.deleteUser(id);
+        if (deleted) {
+            apply(new UserHandleDTO(new User(id, "", ""), "delete"));
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<User> addUsers(List<User> users) {
+        List<User> created = super.addUsers(users);
+        if (created != null) {
+            created.forEach(user -> apply(new UserHandleDTO(user, "add")));
+        }
+        return created;
+    }
+
+    @Override
+    public List<User> updateUsers(List<User> users) {
+        List<User> updated = super.updateUsers(users);
+        if (updated != null) {
+            updated.forEach(user -> apply(new UserHandleDTO(user, "update")));
+        }
+        return updated;
+    }
+
+    @Override
+    public List<Integer> deleteUsers(List<Integer> ids) {
+        List<Integer> deleted = super.deleteUsers(ids);
+        if (deleted != null) {
+            deleted.forEach(id -> apply(new UserHandleDTO(new User(id, "", ""), "delete")));
+        }
+        return deleted;
+    }
+
+    /**
+     * Cập nhật cache theo change event (add/update/delete) giống event gửi lên /topic/manager/users
+     */
+    public void apply(UserHandleDTO event) {
+        version.incrementAndGet();
+        listSnapshot = null;
+
+        User user = event.getUser();
+        // Không biết version thì không cache - ETag phải luôn là version thật
+        if ("delete".equals(event.getAction()) || user.getVersion() == null) {
+            invalidateUser(user.getId());
+        } else {
+            putUser(user);
+        }
+    }
+
+    private void putUser(User user) {
+        synchronized (users) {
+            users.put(user.getId(), new Entry(user, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Lưu bản đọc từ DB nếu chưa có lần ghi nào kể từ lúc đọc.
+     * Kiểm tra và put cùng dưới lock của map: ghi xen vào sau khi kiểm tra sẽ put/remove sau bản này,
+     * ghi xen vào trước đó đã tăng version nên bản này bị bỏ.
+     */
+    private void putUserIfUnchanged(User user, long before) {
+        synchronized (users) {
+            if (version.get() == before) {
+                users.put(user.getId(), new Entry(user, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+    }
+
+    private void invalidateUser(int id) {
+        version.incrementAndGet();
+        synchronized (users) {
+            users.remove(id);
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (users) {
+            size = users.size();
+        }
+        return new Stats(userHits.sum(), userMisses.sum(), listHits.sum(), listMisses.sum(),
+                size, maxSize, ttlMillis);
+    }
+}
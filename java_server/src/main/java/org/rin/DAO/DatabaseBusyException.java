@@ -0,0 +1,12 @@
+package org.rin.DAO;
+
+/**
+ * Không lấy được connection trong thời gian chờ tối đa của pool
+ */
+public class DatabaseBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DatabaseBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
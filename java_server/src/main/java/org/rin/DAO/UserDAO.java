@@ -6,15 +6,35 @@ import org.rin.model.User;
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 public class UserDAO {
+    // Số row mỗi lần executeBatch để giới hạn kích thước packet gửi lên MySQL
+    private static final int BATCH_CHUNK_SIZE = 1000;
+
     private final DataSource ds = DatabaseConfig.getDataSource();
 
+    // Lấy connection từ pool, hết thời gian chờ thì báo DatabaseBusyException (503)
+    private Connection getConnection() throws SQLException {
+        try {
+            return ds.getConnection();
+        } catch (SQLException e) {
+            if (e.getCause() instanceof NoSuchElementException) {
+                throw new DatabaseBusyException("Timed out waiting for a database connection", e);
+            }
+            throw e;
+        }
+    }
+
     // Thêm user và trả về User vừa tạo
     public User addUser(String name, String phone) {
         String sql = "INSERT INTO `test-db`.`user` (`name`, `phone`) VALUES (?, ?)";
-        try (Connection conn = ds.getConnection();
+        try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             ps.setString(1, name);
@@ -26,7 +46,7 @@ public class UserDAO {
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
                     int id = rs.getInt(1);
-                    return new User(id, name, phone);
+                    return new User(id, name, phone, 0);
                 }
             }
 
@@ -38,18 +58,42 @@ public class UserDAO {
 
     // Sửa user theo id và trả về User vừa cập nhật
     public User updateUser(int id, String name, String phone) {
-        String sql = "UPDATE `test-db`.`user` SET `name` = ?, `phone` = ? WHERE `id` = ?";
-        try (Connection conn = ds.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        return updateUser(id, name, phone, null);
+    }
 
-            ps.setString(1, name);
-            ps.setString(2, phone);
-            ps.setInt(3, id);
+    // Sửa user, expectedVersion != null -> chỉ sửa khi version khớp (optimistic locking).
+    // Một statement trên một connection, User trả về dựng từ dữ liệu đã có + version mới, không SELECT lại.
+    public User updateUser(int id, String name, String phone, Integer expectedVersion) {
+        String sql = expectedVersion == null
+                // LAST_INSERT_ID(expr) đưa version mới vào OK packet -> đọc qua getGeneratedKeys, không cần query thêm
+                ? "UPDATE `test-db`.`user` SET `name` = ?, `phone` = ?, `version` = LAST_INSERT_ID(`version` + 1) WHERE `id` = ?"
+                : "UPDATE `test-db`.`user` SET `name` = ?, `phone` = ?, `version` = `version` + 1 WHERE `id` = ? AND `version` = ?";
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, name);
+                ps.setString(2, phone);
+                ps.setInt(3, id);
+                if (expectedVersion != null) {
+                    ps.setInt(4, expectedVersion);
+                }
 
-            int affected = ps.executeUpdate();
-            if (affected > 0) {
-                // Trả về User vừa cập nhật
-                return getUserById(id);
+                int affected = ps.executeUpdate();
+                if (affected > 0) {
+                    if (expectedVersion != null) {
+                        return new User(id, name, phone, expectedVersion + 1);
+                    }
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        return new User(id, name, phone, rs.next() ? rs.getInt(1) : null);
+                    }
+                }
+            }
+
+            // Không update được: phân biệt không tồn tại với lệch version (chỉ chạy ở nhánh lỗi)
+            if (expectedVersion != null) {
+                Integer currentVersion = findVersion(conn, id);
+                if (currentVersion != null) {
+                    throw new VersionConflictException(id, expectedVersion, currentVersion);
+                }
             }
 
         } catch (SQLException e) {
@@ -58,10 +102,20 @@ public class UserDAO {
         return null;
     }
 
+    private Integer findVersion(Connection conn, int id) throws SQLException {
+        String sql = "SELECT `version` FROM `test-db`.`user` WHERE `id` = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
     // Xóa user theo id
     public boolean deleteUser(int id) {
         String sql = "DELETE FROM `test-db`.`user` WHERE `id` = ?";
-        try (Connection conn = ds.getConnection();
+        try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, id);
@@ -74,11 +128,161 @@ public class UserDAO {
         }
     }
 
+    // Thêm nhiều user trong một transaction (JDBC batch, driver ghép thành INSERT nhiều row), trả về các User kèm id
+    public List<User> addUsers(List<User> users) {
+        String sql = "INSERT INTO `test-db`.`user` (`name`, `phone`) VALUES (?, ?)";
+        List<User> created = new ArrayList<>(users.size());
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < users.size(); from += BATCH_CHUNK_SIZE) {
+                    List<User> chunk = users.subList(from, Math.min(from + BATCH_CHUNK_SIZE, users.size()));
+                    for (User user : chunk) {
+                        ps.setString(1, user.getName());
+                        ps.setString(2, user.getPhone());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        for (User user : chunk) {
+                            if (!rs.next()) {
+                                throw new SQLException("Missing generated key");
+                            }
+                            created.add(new User(rs.getInt(1), user.getName(), user.getPhone(), 0));
+                        }
+                    }
+                }
+                conn.commit();
+                return created;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // Sửa nhiều user trong một transaction, trả về các User thực sự được cập nhật kèm version mới.
+    // Item có version -> chỉ sửa khi khớp (lệch thì bị bỏ qua). Item không có version được đọc lại version
+    // trong cùng transaction - row đang bị UPDATE khóa nên giá trị đọc được chính là version vừa ghi.
+    public List<User> updateUsers(List<User> users) {
+        String sql = "UPDATE `test-db`.`user` SET `name` = ?, `phone` = ?, `version` = `version` + 1 " +
+                "WHERE `id` = ? AND (? IS NULL OR `version` = ?)";
+        List<User> updated = new ArrayList<>(users.size());
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int from = 0; from < users.size(); from += BATCH_CHUNK_SIZE) {
+                    List<User> chunk = users.subList(from, Math.min(from + BATCH_CHUNK_SIZE, users.size()));
+                    for (User user : chunk) {
+                        ps.setString(1, user.getName());
+                        ps.setString(2, user.getPhone());
+                        ps.setInt(3, user.getId());
+                        ps.setObject(4, user.getVersion(), Types.INTEGER);
+                        ps.setObject(5, user.getVersion(), Types.INTEGER);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            updated.add(chunk.get(i));
+                        }
+                    }
+                }
+                Map<Integer, Integer> versions = findVersions(conn, updated);
+                for (int i = 0; i < updated.size(); i++) {
+                    User user = updated.get(i);
+                    Integer version = user.getVersion() != null ? user.getVersion() + 1 : versions.get(user.getId());
+                    updated.set(i, new User(user.getId(), user.getName(), user.getPhone(), version));
+                }
+                conn.commit();
+                return updated;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // Version hiện tại của các user không kèm version (id -> version), đọc theo từng chunk IN (...)
+    private Map<Integer, Integer> findVersions(Connection conn, List<User> users) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        for (User user : users) {
+            if (user.getVersion() == null) {
+                ids.add(user.getId());
+            }
+        }
+        Map<Integer, Integer> versions = new HashMap<>(ids.size() * 2);
+        for (int from = 0; from < ids.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + BATCH_CHUNK_SIZE, ids.size()));
+            String sql = "SELECT `id`, `version` FROM `test-db`.`user` WHERE `id` IN (" +
+                    String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        versions.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+        return versions;
+    }
+
+    // Xóa nhiều user trong một transaction, trả về các id đã xóa
+    public List<Integer> deleteUsers(List<Integer> ids) {
+        String sql = "DELETE FROM `test-db`.`user` WHERE `id` = ?";
+        List<Integer> deleted = new ArrayList<>(ids.size());
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int from = 0; from < ids.size(); from += BATCH_CHUNK_SIZE) {
+                    List<Integer> chunk = ids.subList(from, Math.min(from + BATCH_CHUNK_SIZE, ids.size()));
+                    for (int id : chunk) {
+                        ps.setInt(1, id);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            deleted.add(chunk.get(i));
+                        }
+                    }
+                }
+                conn.commit();
+                return deleted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     // Lấy danh sách user
     public List<User> getAllUsers() {
         List<User> users = new ArrayList<>();
-        String sql = "SELECT `id`, `name`, `phone` FROM `test-db`.`user` ORDER BY `id` DESC";
-        try (Connection conn = ds.getConnection();
+        String sql = "SELECT `id`, `name`, `phone`, `version` FROM `test-db`.`user` ORDER BY `id` DESC";
+        try (Connection conn = getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -86,7 +290,8 @@ public class UserDAO {
                 users.add(new User(
                         rs.getInt("id"),
                         rs.getString("name"),
-                        rs.getString("phone")
+                        rs.getString("phone"),
+                        rs.getInt("version")
                 ));
             }
 
@@ -96,10 +301,63 @@ public class UserDAO {
         return users;
     }
 
+    // Lấy một trang user theo keyset (id giảm dần), cursor = id cuối của trang trước
+    public List<User> getUsersPage(Integer cursor, int limit) {
+        List<User> users = new ArrayList<>(limit);
+        String sql = cursor == null
+                ? "SELECT `id`, `name`, `phone`, `version` FROM `test-db`.`user` ORDER BY `id` DESC LIMIT ?"
+                : "SELECT `id`, `name`, `phone`, `version` FROM `test-db`.`user` WHERE `id` < ? ORDER BY `id` DESC LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            if (cursor != null) {
+                ps.setInt(i++, cursor);
+            }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    users.add(new User(
+                            rs.getInt("id"),
+                            rs.getString("name"),
+                            rs.getString("phone"),
+                            rs.getInt("version")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return users;
+    }
+
+    // Duyệt toàn bộ bảng theo kiểu streaming, từng row được đẩy ra consumer - không giữ danh sách trong heap.
+    // Lỗi giữa chừng được ném ra: consumer đã nhận một phần bảng, người gọi phải biết kết quả không đầy đủ
+    public void forEachUser(Consumer<User> consumer) throws SQLException {
+        String sql = "SELECT `id`, `name`, `phone`, `version` FROM `test-db`.`user` ORDER BY `id` DESC";
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // Connector/J: forward-only + fetchSize MIN_VALUE = đọc từng row từ socket thay vì load hết kết quả
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    consumer.accept(new User(
+                            rs.getInt(1),
+                            rs.getString(2),
+                            rs.getString(3),
+                            rs.getInt(4)
+                    ));
+                }
+            }
+        }
+    }
+
     // Lấy User theo id
     public User getUserById(int id) {
-        String sql = "SELECT `id`, `name`, `phone` FROM `test-db`.`user` WHERE `id` = ?";
-        try (Connection conn = ds.getConnection();
+        String sql = "SELECT `id`, `name`, `phone`, `version` FROM `test-db`.`user` WHERE `id` = ?";
+        try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setInt(1, id);
@@ -108,7 +366,8 @@ public class UserDAO {
                     return new User(
                             rs.getInt("id"),
                             rs.getString("name"),
-                            rs.getString("phone")
+                            rs.getString("phone"),
+                            rs.getInt("version")
                     );
                 }
             }
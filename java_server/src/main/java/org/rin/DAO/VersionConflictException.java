@@ -0,0 +1,20 @@
+package org.rin.DAO;
+
+/**
+ * Update có điều kiện thất bại vì version trong DB đã khác version client gửi lên
+ */
+public class VersionConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final int currentVersion;
+
+    public VersionConflictException(int id, int expectedVersion, int currentVersion) {
+        super("User " + id + " is at version " + currentVersion + ", expected " + expectedVersion);
+        this.id = id;
+        this.currentVersion = currentVersion;
+    }
+
+    public int getId() { return id; }
+    public int getCurrentVersion() { return currentVersion; }
+}
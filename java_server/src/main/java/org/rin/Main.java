@@ -3,6 +3,7 @@ package org.rin;
 import io.javalin.Javalin;
 import org.rin.config.JavalinConfig;
 import org.rin.config.DatabaseConfig;
+import org.rin.controller.MetricsController;
 import org.rin.controller.UserController;
 import org.rin.controller.UserSessionController;
 import org.rin.ws.WSConfig;
@@ -40,6 +41,7 @@ public class Main {
         // Controller
         new UserSessionController();
         new UserController();
+        new MetricsController();
 
 
 
@@ -54,6 +56,9 @@ public class Main {
                 String msg = ctx.message();
                 WSConfig.getInstance().onMessage(ctx, msg);
             });
+            ws.onBinaryMessage(ctx -> {
+                WSConfig.getInstance().onMessage(ctx, ctx.data(), ctx.offset(), ctx.length());
+            });
             ws.onClose(ctx -> {
                 WSConfig.getInstance().onDisconnect(ctx);
             });
@@ -0,0 +1,64 @@
+package org.rin.cluster;
+
+import org.rin.dto.SessionInfoDTO;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SPI trao đổi message giữa các node khi chạy nhiều instance sau load balancer.
+ * Mỗi node công bố các destination pattern mà session local của nó đang subscribe,
+ * publish chỉ được chuyển tới những node có subscriber khớp destination.
+ * Message riêng của user đi đường khác: node công bố username đang kết nối, publishToUser chỉ tới node có user đó
+ * và node nhận giao theo session của user - không qua router nên wildcard /user/** không nhận được message người khác.
+ */
+public interface ClusterBroker {
+
+    /**
+     * Nhận message từ node khác - chỉ giao cho subscriber local, không chuyển tiếp nữa
+     */
+    interface Listener {
+        void onRemoteMessage(String destination, String contentType, byte[] body);
+
+        /**
+         * Message riêng của username (destination là phần sau "/user/{username}", có thể rỗng)
+         */
+        void onRemoteUserMessage(String username, String destination, String contentType, byte[] body);
+    }
+
+    String nodeId();
+
+    void start(Listener listener);
+
+    /**
+     * Chuyển message (body đã serialize) tới các node khác đang có subscriber khớp destination
+     */
+    void publish(String destination, String contentType, byte[] body);
+
+    /**
+     * Chuyển message riêng của user tới các node đang có session của user đó
+     */
+    void publishToUser(String username, String destination, String contentType, byte[] body);
+
+    /**
+     * Tập pattern đang được subscribe ở node này (thay thế toàn bộ tập trước đó)
+     */
+    void updateInterest(Set<String> patterns);
+
+    /**
+     * Tập username đang có session ở node này (thay thế toàn bộ tập trước đó)
+     */
+    void updateUsers(Set<String> usernames);
+
+    /**
+     * Danh sách session đang kết nối ở node này (thay thế toàn bộ danh sách trước đó)
+     */
+    void updateSessions(List<SessionInfoDTO> sessions);
+
+    /**
+     * Session của các node khác trong cluster
+     */
+    List<SessionInfoDTO> remoteSessions();
+
+    void shutdown();
+}
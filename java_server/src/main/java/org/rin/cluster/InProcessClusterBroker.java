@@ -0,0 +1,127 @@
+package org.rin.cluster;
+
+import org.rin.dto.SessionInfoDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Broker trong cùng JVM: các node cùng group gửi trực tiếp cho nhau.
+ * Mặc định chỉ có một node trong group nên publish không làm gì - hành vi giống khi chạy một instance.
+ * Bảng interest chỉ được dựng khi một node khác tra tới: node chạy một mình không giữ thêm một trie pattern.
+ */
+public final class InProcessClusterBroker implements ClusterBroker {
+
+    private static final Map<String, Map<String, InProcessClusterBroker>> GROUPS = new ConcurrentHashMap<>();
+
+    private final String group;
+    private final String nodeId;
+    private final InterestTable interest = new InterestTable();
+    private volatile Set<String> patterns = Set.of();
+    private volatile boolean interestStale;
+
+    private volatile Listener listener;
+    private volatile List<SessionInfoDTO> sessions = List.of();
+    private volatile Set<String> users = Set.of();
+
+    public InProcessClusterBroker(String group, String nodeId) {
+        this.group = group;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        GROUPS.computeIfAbsent(group, g -> new ConcurrentHashMap<>()).put(nodeId, this);
+    }
+
+    @Override
+    public void publish(String destination, String contentType, byte[] body) {
+        Map<String, InProcessClusterBroker> members = GROUPS.get(group);
+        if (members == null || members.size() <= 1) {
+            return;
+        }
+        for (InProcessClusterBroker peer : members.values()) {
+            if (peer != this && peer.listener != null && !peer.interest().nodesFor(destination).isEmpty()) {
+                peer.listener.onRemoteMessage(destination, contentType, body);
+            }
+        }
+    }
+
+    @Override
+    public void publishToUser(String username, String destination, String contentType, byte[] body) {
+        Map<String, InProcessClusterBroker> members = GROUPS.get(group);
+        if (members == null || members.size() <= 1) {
+            return;
+        }
+        for (InProcessClusterBroker peer : members.values()) {
+            if (peer != this && peer.listener != null && peer.users.contains(username)) {
+                peer.listener.onRemoteUserMessage(username, destination, contentType, body);
+            }
+        }
+    }
+
+    @Override
+    public void updateInterest(Set<String> patterns) {
+        Set<String> copy = Set.copyOf(patterns);
+        synchronized (this) {
+            this.patterns = copy;
+            interestStale = true;
+        }
+    }
+
+    /**
+     * Bảng interest của node này, cập nhật theo tập pattern mới nhất ở lần tra đầu tiên sau khi đổi
+     */
+    private InterestTable interest() {
+        if (interestStale) {
+            synchronized (this) {
+                if (interestStale) {
+                    interest.replace(nodeId, patterns);
+                    interestStale = false;
+                }
+            }
+        }
+        return interest;
+    }
+
+    @Override
+    public void updateUsers(Set<String> usernames) {
+        this.users = Set.copyOf(usernames);
+    }
+
+    @Override
+    public void updateSessions(List<SessionInfoDTO> sessions) {
+        this.sessions = List.copyOf(sessions);
+    }
+
+    @Override
+    public List<SessionInfoDTO> remoteSessions() {
+        List<SessionInfoDTO> out = new ArrayList<>();
+        Map<String, InProcessClusterBroker> members = GROUPS.get(group);
+        if (members != null) {
+            for (InProcessClusterBroker peer : members.values()) {
+                if (peer != this) {
+                    out.addAll(peer.sessions);
+                }
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void shutdown() {
+        Map<String, InProcessClusterBroker> members = GROUPS.get(group);
+        if (members != null) {
+            members.remove(nodeId, this);
+        }
+    }
+}
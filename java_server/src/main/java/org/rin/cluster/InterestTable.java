@@ -0,0 +1,56 @@
+package org.rin.cluster;
+
+import org.rin.ws.TopicRouter;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * node id -> các pattern node đó đang subscribe, tra ngược destination -> node bằng TopicRouter
+ */
+final class InterestTable {
+
+    private final TopicRouter router = new TopicRouter(10_000);
+    private final Map<String, Set<String>> patternsByNode = new ConcurrentHashMap<>();
+
+    synchronized void replace(String nodeId, Set<String> patterns) {
+        Set<String> previous = patternsByNode.getOrDefault(nodeId, Set.of());
+        for (String pattern : previous) {
+            if (!patterns.contains(pattern)) {
+                router.unsubscribe(pattern, nodeId, pattern);
+            }
+        }
+        for (String pattern : patterns) {
+            if (!previous.contains(pattern)) {
+                router.subscribe(pattern, nodeId, pattern);
+            }
+        }
+        if (patterns.isEmpty()) {
+            patternsByNode.remove(nodeId);
+        } else {
+            patternsByNode.put(nodeId, Set.copyOf(patterns));
+        }
+    }
+
+    void removeNode(String nodeId) {
+        replace(nodeId, Set.of());
+    }
+
+    /**
+     * Các node có ít nhất một pattern khớp destination
+     */
+    Set<String> nodesFor(String destination) {
+        List<TopicRouter.Subscriber> matches = router.match(destination);
+        if (matches.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> nodes = new HashSet<>();
+        for (TopicRouter.Subscriber match : matches) {
+            nodes.add(match.sessionId());
+        }
+        return nodes;
+    }
+}
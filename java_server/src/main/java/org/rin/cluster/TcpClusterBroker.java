@@ -0,0 +1,655 @@
+package org.rin.cluster;
+
+import org.rin.dto.SessionInfoDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broker qua TCP với danh sách peer cố định (CLUSTER_PEERS), test được trên localhost bằng nhiều port.
+ * Mỗi cặp node dùng 2 kết nối một chiều: node chủ động kết nối tới peer để GỬI, kết nối peer gọi tới để NHẬN.
+ * Frame: [int length][byte type][payload] - HELLO (node id), INTEREST (pattern), SESSIONS, PUBLISH,
+ * USERS (username đang kết nối), USER_PUBLISH (message riêng của một user).
+ * Chỉ listen trên CLUSTER_BIND (mặc định loopback). Kết nối đến chỉ được nhận khi HELLO mang đúng CLUSTER_TOKEN,
+ * hoặc - khi không cấu hình token - khi địa chỉ nguồn là một trong các CLUSTER_PEERS.
+ * Frame trạng thái (INTEREST, SESSIONS, USERS) không đi qua hàng đợi PUBLISH: mỗi loại giữ bản mới nhất trong một ô
+ * riêng của peer và được ghi trước khi xả hàng đợi, nên hàng đợi đầy chỉ làm rơi PUBLISH, không bao giờ rơi trạng thái.
+ */
+public final class TcpClusterBroker implements ClusterBroker {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterBroker.class);
+
+    private static final byte HELLO = 1;
+    private static final byte INTEREST = 2;
+    private static final byte SESSIONS = 3;
+    private static final byte PUBLISH = 4;
+    private static final byte USERS = 5;
+    private static final byte USER_PUBLISH = 6;
+    private static final byte[] STATE_TYPES = {INTEREST, SESSIONS, USERS};
+
+    // Đánh thức thread gửi khi chỉ có frame trạng thái mới, không ghi ra socket
+    private static final byte[] WAKEUP = new byte[0];
+    // Số frame PUBLISH tối đa ghi giữa hai lần kiểm tra frame trạng thái
+    private static final int MAX_BATCH = 256;
+
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 5000;
+    // Kết nối gửi rảnh quá lâu thì kiểm tra peer còn sống - nếu không sẽ chỉ phát hiện mất kết nối ở lần ghi sau
+    private static final long IDLE_CHECK_MS = 1000;
+
+    private final String nodeId;
+    private final InetAddress bindAddress;
+    private final int port;
+    private final byte[] token; // rỗng = không dùng token, chỉ kiểm tra địa chỉ peer
+    private final int queueCapacity;
+    private final List<Peer> peers = new ArrayList<>();
+
+    // Trạng thái nhận từ các node khác
+    private final InterestTable remoteInterest = new InterestTable();
+    private final Map<String, List<SessionInfoDTO>> remoteSessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> remoteUsers = new ConcurrentHashMap<>();
+    private final Map<String, Socket> inbound = new ConcurrentHashMap<>();
+
+    // node id -> kết nối gửi đang mở
+    private final Map<String, Peer> peersByNode = new ConcurrentHashMap<>();
+
+    // Trạng thái local mới nhất, gửi lại mỗi khi kết nối lại
+    private volatile byte[] interestFrame;
+    private volatile byte[] sessionsFrame;
+    private volatile byte[] usersFrame;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder deliveryFailures = new LongAdder();
+    private volatile Listener listener;
+    private volatile boolean running;
+    private ServerSocket server;
+
+    public TcpClusterBroker(String nodeId, InetAddress bindAddress, int port, List<InetSocketAddress> peerAddresses,
+                            String token, int queueCapacity) {
+        this.nodeId = nodeId;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.queueCapacity = queueCapacity;
+        for (InetSocketAddress address : peerAddresses) {
+            peers.add(new Peer(address));
+        }
+        this.interestFrame = encodeInterest(Set.of());
+        this.sessionsFrame = encodeSessions(List.of());
+        this.usersFrame = encodeUsers(Set.of());
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        this.running = true;
+        try {
+            server = new ServerSocket(port, 50, bindAddress);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot listen on cluster address " + bindAddress + ":" + port, e);
+        }
+        Thread.ofPlatform().daemon().name("cluster-accept").start(this::acceptLoop);
+        for (Peer peer : peers) {
+            peer.thread = Thread.ofPlatform().daemon().name("cluster-peer-" + peer.address).start(peer);
+        }
+        log.info("🌐 Cluster node {} listening on {}:{} ({} peers, token {})", nodeId, bindAddress.getHostAddress(),
+                port, peers.size(), token.length > 0 ? "required" : "not set");
+    }
+
+    @Override
+    public void publish(String destination, String contentType, byte[] body) {
+        Set<String> nodes = remoteInterest.nodesFor(destination);
+        if (nodes.isEmpty()) {
+            return;
+        }
+        byte[] frame = encode(PUBLISH, out -> {
+            out.writeUTF(destination);
+            out.writeUTF(contentType);
+            out.writeInt(body.length);
+            out.write(body);
+        });
+        for (String node : nodes) {
+            Peer peer = peersByNode.get(node);
+            if (peer != null) {
+                peer.offer(frame);
+            }
+        }
+    }
+
+    @Override
+    public void publishToUser(String username, String destination, String contentType, byte[] body) {
+        byte[] frame = null;
+        for (String node : nodesForUser(username)) {
+            Peer peer = peersByNode.get(node);
+            if (peer != null) {
+                if (frame == null) {
+                    frame = encode(USER_PUBLISH, out -> {
+                        out.writeUTF(username);
+                        out.writeUTF(destination);
+                        out.writeUTF(contentType);
+                        out.writeInt(body.length);
+                        out.write(body);
+                    });
+                }
+                peer.offer(frame);
+            }
+        }
+    }
+
+    @Override
+    public void updateInterest(Set<String> patterns) {
+        byte[] frame = encodeInterest(patterns);
+        interestFrame = frame;
+        broadcast(INTEREST, frame);
+    }
+
+    @Override
+    public void updateUsers(Set<String> usernames) {
+        byte[] frame = encodeUsers(usernames);
+        usersFrame = frame;
+        broadcast(USERS, frame);
+    }
+
+    @Override
+    public void updateSessions(List<SessionInfoDTO> sessions) {
+        byte[] frame = encodeSessions(sessions);
+        sessionsFrame = frame;
+        broadcast(SESSIONS, frame);
+    }
+
+    @Override
+    public List<SessionInfoDTO> remoteSessions() {
+        List<SessionInfoDTO> out = new ArrayList<>();
+        for (List<SessionInfoDTO> sessions : remoteSessions.values()) {
+            out.addAll(sessions);
+        }
+        return out;
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException ignored) {}
+        for (Peer peer : peers) {
+            peer.close();
+        }
+        for (Socket socket : inbound.values()) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Số frame bị bỏ vì hàng đợi tới peer đầy
+     */
+    public long droppedFrames() {
+        return dropped.sum();
+    }
+
+    /**
+     * Số frame nhận được nhưng listener ném lỗi khi giao cho session local
+     */
+    public long deliveryFailures() {
+        return deliveryFailures.sum();
+    }
+
+    /**
+     * Các node đang có kết nối gửi đã qua HELLO
+     */
+    Set<String> connectedNodes() {
+        return Set.copyOf(peersByNode.keySet());
+    }
+
+    /**
+     * Các node đang có pattern khớp destination
+     */
+    Set<String> nodesFor(String destination) {
+        return remoteInterest.nodesFor(destination);
+    }
+
+    /**
+     * Các node đang có session của username
+     */
+    Set<String> nodesForUser(String username) {
+        Set<String> nodes = new HashSet<>();
+        // Số node nhỏ: duyệt tập username của từng node
+        for (Map.Entry<String, Set<String>> entry : remoteUsers.entrySet()) {
+            if (entry.getValue().contains(username)) {
+                nodes.add(entry.getKey());
+            }
+        }
+        return nodes;
+    }
+
+    private void broadcast(byte type, byte[] frame) {
+        for (Peer peer : peersByNode.values()) {
+            peer.offerState(type, frame);
+        }
+    }
+
+    // ========== NHẬN ========== //
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofPlatform().daemon().name("cluster-in-" + socket.getRemoteSocketAddress())
+                        .start(() -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("❌ Cluster accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        String remote = null;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+            if (token.length == 0 && !isPeerAddress(socket.getInetAddress())) {
+                log.warn("❌ Rejected cluster connection from {}: not in CLUSTER_PEERS", socket.getRemoteSocketAddress());
+                return;
+            }
+            // Kết nối chưa xác thực không được giữ thread mãi
+            socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            DataInputStream hello = readFrame(in);
+            if (hello.readByte() != HELLO) {
+                log.warn("❌ Cluster peer {} did not send HELLO", socket.getRemoteSocketAddress());
+                return;
+            }
+            remote = hello.readUTF();
+            if (!validToken(hello)) {
+                log.warn("❌ Rejected cluster node {} from {}: invalid token", remote, socket.getRemoteSocketAddress());
+                remote = null;
+                return;
+            }
+            socket.setSoTimeout(0);
+            out.write(encodeHello());
+            out.flush();
+
+            Socket previous = inbound.put(remote, socket);
+            if (previous != null) {
+                previous.close();
+            }
+            log.info("🌐 Cluster node {} connected", remote);
+
+            while (running) {
+                DataInputStream frame = readFrame(in);
+                switch (frame.readByte()) {
+                    case INTEREST -> remoteInterest.replace(remote, decodeInterest(frame));
+                    case SESSIONS -> remoteSessions.put(remote, decodeSessions(frame));
+                    case PUBLISH -> {
+                        String destination = frame.readUTF();
+                        String contentType = frame.readUTF();
+                        byte[] body = new byte[frame.readInt()];
+                        frame.readFully(body);
+                        try {
+                            listener.onRemoteMessage(destination, contentType, body);
+                        } catch (RuntimeException e) {
+                            deliveryFailed(remote, destination, e);
+                        }
+                    }
+                    case USERS -> remoteUsers.put(remote, decodeUsers(frame));
+                    case USER_PUBLISH -> {
+                        String username = frame.readUTF();
+                        String destination = frame.readUTF();
+                        String contentType = frame.readUTF();
+                        byte[] body = new byte[frame.readInt()];
+                        frame.readFully(body);
+                        try {
+                            listener.onRemoteUserMessage(username, destination, contentType, body);
+                        } catch (RuntimeException e) {
+                            deliveryFailed(remote, "/user/" + username + destination, e);
+                        }
+                    }
+                    default -> log.warn("❌ Unknown cluster frame from {}", remote);
+                }
+            }
+        } catch (EOFException ignored) {
+            // peer đóng kết nối
+        } catch (IOException e) {
+            if (running) {
+                log.warn("❌ Cluster connection from {} failed: {}", remote, e.getMessage());
+            }
+        } finally {
+            // Chỉ xóa trạng thái nếu node chưa kết nối lại bằng socket khác
+            if (remote != null && inbound.remove(remote, socket)) {
+                remoteInterest.removeNode(remote);
+                remoteSessions.remove(remote);
+                remoteUsers.remove(remote);
+                log.info("🌐 Cluster node {} disconnected", remote);
+            }
+        }
+    }
+
+    /**
+     * Lỗi khi giao một message chỉ bỏ message đó - kết nối và trạng thái của node gửi vẫn giữ nguyên
+     */
+    private void deliveryFailed(String remote, String destination, RuntimeException e) {
+        deliveryFailures.increment();
+        log.warn("❌ Failed to deliver cluster message from {} to {}: {}", remote, destination, e.toString());
+    }
+
+    /**
+     * Địa chỉ nguồn có phải một peer đã cấu hình không (hostname được resolve lại mỗi lần kiểm tra)
+     */
+    private boolean isPeerAddress(InetAddress source) {
+        for (Peer peer : peers) {
+            try {
+                for (InetAddress address : InetAddress.getAllByName(peer.address.getHostString())) {
+                    if (address.equals(source)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                log.debug("Cannot resolve cluster peer {}: {}", peer.address, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private boolean validToken(DataInputStream hello) throws IOException {
+        byte[] received = new byte[hello.readUnsignedShort()];
+        hello.readFully(received);
+        return token.length == 0 || MessageDigest.isEqual(token, received);
+    }
+
+    private byte[] encodeHello() {
+        return encode(HELLO, out -> {
+            out.writeUTF(nodeId);
+            out.writeShort(token.length);
+            out.write(token);
+        });
+    }
+
+    private static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid cluster frame length: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    // ========== ENCODE/DECODE ========== //
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(byte type, Writer writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); // length, điền sau
+            out.writeByte(type);
+            writer.write(out);
+            out.flush();
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encodeInterest(Set<String> patterns) {
+        return encode(INTEREST, out -> {
+            out.writeInt(patterns.size());
+            for (String pattern : patterns) {
+                out.writeUTF(pattern);
+            }
+        });
+    }
+
+    private static Set<String> decodeInterest(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> patterns = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            patterns.add(in.readUTF());
+        }
+        return patterns;
+    }
+
+    private static byte[] encodeUsers(Set<String> usernames) {
+        return encode(USERS, out -> {
+            out.writeInt(usernames.size());
+            for (String username : usernames) {
+                out.writeUTF(username);
+            }
+        });
+    }
+
+    private static Set<String> decodeUsers(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> usernames = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            usernames.add(in.readUTF());
+        }
+        return Set.copyOf(usernames);
+    }
+
+    private static byte[] encodeSessions(List<SessionInfoDTO> sessions) {
+        return encode(SESSIONS, out -> {
+            out.writeInt(sessions.size());
+            for (SessionInfoDTO session : sessions) {
+                out.writeUTF(session.getNodeId());
+                out.writeUTF(session.getSessionId());
+                out.writeUTF(session.getUsername());
+                out.writeUTF(session.getIp());
+                out.writeInt(session.getPort());
+            }
+        });
+    }
+
+    private static List<SessionInfoDTO> decodeSessions(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<SessionInfoDTO> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sessions.add(new SessionInfoDTO(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readInt()));
+        }
+        return List.copyOf(sessions);
+    }
+
+    // ========== GỬI ========== //
+
+    /**
+     * Kết nối gửi tới một peer, tự kết nối lại với backoff
+     */
+    private final class Peer implements Runnable {
+        private final InetSocketAddress address;
+        private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(queueCapacity);
+        // frame type -> frame trạng thái mới nhất chưa gửi (bản mới ghi đè bản cũ)
+        private final AtomicReferenceArray<byte[]> pendingState = new AtomicReferenceArray<>(USER_PUBLISH + 1);
+        private volatile Thread thread;
+        private volatile Socket socket;
+        private volatile String remoteNodeId;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void offer(byte[] frame) {
+            if (!queue.offer(frame)) {
+                dropped.increment();
+                log.debug("🐢 Cluster queue to {} full, dropping frame", remoteNodeId);
+            }
+        }
+
+        /**
+         * Frame trạng thái không bao giờ bị bỏ: thay bản đang chờ cùng loại rồi đánh thức thread gửi.
+         * Hàng đợi đầy thì không cần đánh thức - thread gửi đang bận xả và sẽ thấy ô trạng thái ở lượt sau.
+         */
+        void offerState(byte type, byte[] frame) {
+            pendingState.set(type, frame);
+            queue.offer(WAKEUP);
+        }
+
+        private void writeState(DataOutputStream out) throws IOException {
+            for (byte type : STATE_TYPES) {
+                byte[] frame = pendingState.getAndSet(type, null);
+                if (frame != null) {
+                    out.write(frame);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long backoff = 100;
+            while (running) {
+                try (Socket s = new Socket()) {
+                    socket = s;
+                    s.connect(address, CONNECT_TIMEOUT_MS);
+                    s.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+
+                    out.write(encodeHello());
+                    out.flush();
+                    s.setSoTimeout(CONNECT_TIMEOUT_MS);
+                    DataInputStream hello = readFrame(in);
+                    if (hello.readByte() != HELLO) {
+                        throw new IOException("Peer did not answer HELLO");
+                    }
+                    String remote = hello.readUTF();
+                    if (!validToken(hello)) {
+                        throw new IOException("Peer " + remote + " answered with an invalid token");
+                    }
+                    // Sau HELLO peer không gửi gì trên kết nối này, chỉ đọc để phát hiện peer đóng kết nối
+                    s.setSoTimeout(1);
+                    if (remote.equals(nodeId)) {
+                        log.warn("⚠️ Cluster peer {} is this node, ignoring", address);
+                        return;
+                    }
+
+                    // Frame chờ trong lúc mất kết nối đã cũ, peer sẽ nhận trạng thái đầy đủ ngay sau đây
+                    queue.clear();
+                    for (byte type : STATE_TYPES) {
+                        pendingState.set(type, null);
+                    }
+                    remoteNodeId = remote;
+                    peersByNode.put(remote, this);
+                    backoff = 100;
+                    // Không ghi đè nếu updateXxx vừa đặt bản mới hơn sau khi peer vào peersByNode
+                    pendingState.compareAndSet(INTEREST, null, interestFrame);
+                    pendingState.compareAndSet(SESSIONS, null, sessionsFrame);
+                    pendingState.compareAndSet(USERS, null, usersFrame);
+
+                    while (running) {
+                        // Trạng thái mới nhất đi trước các PUBLISH đang chờ
+                        writeState(out);
+                        // Gom các frame đang chờ rồi mới flush một lần
+                        byte[] frame;
+                        int batch = 0;
+                        while (batch++ < MAX_BATCH && (frame = queue.poll()) != null) {
+                            if (frame != WAKEUP) {
+                                out.write(frame);
+                            }
+                        }
+                        out.flush();
+                        if (batch <= MAX_BATCH) {
+                            // Hàng đợi đã rỗng: chờ frame tiếp theo rồi ghi cùng lượt sau
+                            frame = queue.poll(IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+                            if (frame == null) {
+                                ensureOpen(in);
+                            } else if (frame != WAKEUP) {
+                                out.write(frame);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    if (running) {
+                        log.debug("Cluster peer {} unavailable: {}", address, e.getMessage());
+                    }
+                } finally {
+                    if (remoteNodeId != null) {
+                        peersByNode.remove(remoteNodeId, this);
+                    }
+                }
+
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+
+        /**
+         * Peer đã restart/đóng kết nối thì ném lỗi để kết nối lại và gửi lại trạng thái
+         */
+        private void ensureOpen(DataInputStream in) throws IOException {
+            try {
+                if (in.read() < 0) {
+                    throw new EOFException("Peer closed the connection");
+                }
+            } catch (SocketTimeoutException alive) {
+                // Không có dữ liệu trong 1ms: kết nối vẫn mở
+            }
+        }
+
+        void close() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.rin.config;
+
+import org.rin.log.UserChangeLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+public class ChangeLogConfig {
+
+    // Singleton instance
+    private static volatile UserChangeLog userChangeLog;
+    private static volatile boolean initialized;
+
+    private ChangeLogConfig() {}
+
+    /**
+     * Change log của User, null nếu không cấu hình USER_CHANGE_LOG_DIR
+     */
+    public static UserChangeLog getUserChangeLog() {
+        if (!initialized) {
+            synchronized (ChangeLogConfig.class) {
+                if (!initialized) {
+                    String dir = EnvConfig.getString("USER_CHANGE_LOG_DIR", "");
+                    if (!dir.isBlank()) {
+                        try {
+                            userChangeLog = new UserChangeLog(Path.of(dir),
+                                    EnvConfig.getInt("USER_CHANGE_LOG_SEGMENT_BYTES", 16 * 1024 * 1024),
+                                    EnvConfig.getInt("USER_CHANGE_LOG_SNAPSHOT_EVERY", 10_000));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Cannot open user change log in " + dir, e);
+                        }
+                    }
+                    initialized = true;
+                }
+            }
+        }
+        return userChangeLog;
+    }
+}
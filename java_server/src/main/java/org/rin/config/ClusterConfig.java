@@ -0,0 +1,71 @@
+package org.rin.config;
+
+import org.rin.cluster.ClusterBroker;
+import org.rin.cluster.InProcessClusterBroker;
+import org.rin.cluster.TcpClusterBroker;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class ClusterConfig {
+
+    /**
+     * IN_PROCESS: một instance (hoặc nhiều node trong cùng JVM), TCP: nhiều instance qua CLUSTER_PEERS
+     */
+    public enum Mode { IN_PROCESS, TCP }
+
+    // Singleton instance
+    private static volatile ClusterBroker broker;
+
+    private ClusterConfig() {}
+
+    private static ClusterBroker createBroker() {
+        String nodeId = EnvConfig.getString("CLUSTER_NODE_ID", UUID.randomUUID().toString().substring(0, 8));
+        Mode mode = EnvConfig.getEnum("CLUSTER_MODE", Mode.class, Mode.IN_PROCESS);
+
+        return switch (mode) {
+            case IN_PROCESS -> new InProcessClusterBroker(EnvConfig.getString("CLUSTER_GROUP", "default"), nodeId);
+            case TCP -> new TcpClusterBroker(nodeId,
+                    bindAddress(EnvConfig.getString("CLUSTER_BIND", "127.0.0.1")), // 0.0.0.0 = mọi interface
+                    EnvConfig.getInt("CLUSTER_PORT", 7800),
+                    parsePeers(EnvConfig.getString("CLUSTER_PEERS", "")), // host:port,host:port
+                    EnvConfig.getString("CLUSTER_TOKEN", ""), // rỗng = chỉ nhận kết nối từ địa chỉ trong CLUSTER_PEERS
+                    EnvConfig.getInt("CLUSTER_PEER_QUEUE_CAPACITY", 10_000));
+        };
+    }
+
+    private static InetAddress bindAddress(String host) {
+        try {
+            return InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid CLUSTER_BIND: " + host, e);
+        }
+    }
+
+    private static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : value.split(",")) {
+            peer = peer.trim();
+            int colon = peer.lastIndexOf(':');
+            if (colon > 0) {
+                peers.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+            }
+        }
+        return peers;
+    }
+
+    public static ClusterBroker getBroker() {
+        if (broker == null) {
+            synchronized (ClusterConfig.class) {
+                if (broker == null) {
+                    broker = createBroker();
+                }
+            }
+        }
+        return broker;
+    }
+}
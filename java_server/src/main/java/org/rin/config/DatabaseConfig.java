@@ -1,32 +1,110 @@
 package org.rin.config;
 
 import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.dbcp2.PoolableConnectionFactory;
+import org.apache.commons.pool2.impl.AbandonedConfig;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.rin.db.AdaptivePoolSizer;
+import org.rin.db.InstrumentedDataSource;
+import org.rin.metrics.MetricsRegistry;
 
 import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class DatabaseConfig {
 
     // Singleton instance
     // volatile an toàn khi nhiều thread đọc/ghi
-    private static volatile BasicDataSource dataSource;
+    private static volatile InstrumentedDataSource dataSource;
+    private static volatile AdaptivePoolSizer poolSizer; // null = kích thước pool cố định
 
     private DatabaseConfig() {}
 
+    /**
+     * Pool là giới hạn concurrency duy nhất khi chạy virtual thread -> xếp hàng FIFO (fair) khi chờ connection
+     */
+    private static final class FairBasicDataSource extends BasicDataSource {
+        private final boolean fair;
+
+        FairBasicDataSource(boolean fair) {
+            this.fair = fair;
+        }
+
+        @Override
+        protected GenericObjectPool<PoolableConnection> createObjectPool(PoolableConnectionFactory factory,
+                                                                         GenericObjectPoolConfig<PoolableConnection> poolConfig,
+                                                                         AbandonedConfig abandonedConfig) {
+            poolConfig.setFairness(fair);
+            return super.createObjectPool(factory, poolConfig, abandonedConfig);
+        }
+
+        int getNumWaiters() {
+            GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+            return pool != null ? pool.getNumWaiters() : 0;
+        }
+    }
+
     private static void initDataSource() {
-        BasicDataSource ds = new BasicDataSource();
-        ds.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        ds.setUrl("jdbc:mysql://localhost:3306/test-db?useSSL=false&serverTimezone=UTC");
-        ds.setUsername("root");
-        ds.setPassword("root");
+        FairBasicDataSource ds = new FairBasicDataSource(EnvConfig.getBoolean("DB_POOL_FAIR", true));
+        ds.setDriverClassName(EnvConfig.getString("DB_DRIVER", "com.mysql.cj.jdbc.Driver"));
+        // rewriteBatchedStatements: JDBC batch INSERT được driver ghép thành một câu INSERT nhiều row
+        ds.setUrl(EnvConfig.getString("DB_URL",
+                "jdbc:mysql://localhost:3306/test-db?useSSL=false&serverTimezone=UTC&rewriteBatchedStatements=true"));
+        ds.setUsername(EnvConfig.getString("DB_USER", "root"));
+        ds.setPassword(EnvConfig.getString("DB_PASSWORD", "root"));
 
         // Connection pool config
         ds.setInitialSize(5);            // số connection tạo sẵn
         ds.setMinIdle(5);                // số connection idle tối thiểu
         ds.setMaxIdle(10);               // số connection idle tối đa
-        ds.setMaxTotal(20);              // tổng số connection tối đa
+        ds.setMaxTotal(EnvConfig.getInt("DB_POOL_MAX_TOTAL", 20)); // tổng số connection tối đa
+        ds.setMaxWaitMillis(EnvConfig.getLong("DB_POOL_MAX_WAIT_MS", 5000)); // thời gian chờ connection tối đa
         ds.setMaxOpenPreparedStatements(100);
 
-        dataSource = ds;
+        // Validation: connection hỏng (MySQL đóng do wait_timeout, mạng rớt) bị loại trước khi tới DAO
+        ds.setTestOnBorrow(true);        // không có validation query -> dùng Connection.isValid
+        ds.setValidationQueryTimeout(EnvConfig.getInt("DB_POOL_VALIDATION_TIMEOUT_S", 2));
+        ds.setTestWhileIdle(true);
+        ds.setTimeBetweenEvictionRunsMillis(EnvConfig.getLong("DB_POOL_EVICTION_INTERVAL_MS", 30_000));
+
+        InstrumentedDataSource.Pool pool = new InstrumentedDataSource.Pool() {
+            @Override
+            public int active() { return ds.getNumActive(); }
+
+            @Override
+            public int idle() { return ds.getNumIdle(); }
+
+            @Override
+            public int waiters() { return ds.getNumWaiters(); }
+
+            @Override
+            public int maxTotal() { return ds.getMaxTotal(); }
+
+            @Override
+            public void setMaxTotal(int maxTotal) {
+                ds.setMaxTotal(maxTotal);
+                ds.setMaxIdle(Math.min(maxTotal, 10));
+            }
+        };
+        InstrumentedDataSource instrumented = new InstrumentedDataSource(ds, pool,
+                EnvConfig.getLong("DB_SLOW_QUERY_MS", 200),
+                EnvConfig.getInt("DB_METRICS_MAX_SHAPES", 200));
+
+        // Tự co giãn maxTotal theo thời gian chờ connection và độ trễ DB
+        if (EnvConfig.getBoolean("DB_POOL_ADAPTIVE", false)) {
+            AdaptivePoolSizer sizer = new AdaptivePoolSizer(instrumented,
+                    EnvConfig.getInt("DB_POOL_MIN_TOTAL", 5),
+                    EnvConfig.getInt("DB_POOL_ADAPTIVE_MAX", 50),
+                    EnvConfig.getLong("DB_POOL_TARGET_WAIT_MS", 5));
+            sizer.start(EnvConfig.getLong("DB_POOL_ADAPTIVE_INTERVAL_MS", 5000));
+            poolSizer = sizer;
+        }
+
+        MetricsRegistry.getInstance().collector(instrumented::writePrometheus);
+        dataSource = instrumented;
     }
 
     public static DataSource getDataSource() {
@@ -39,4 +117,17 @@ public class DatabaseConfig {
         }
         return dataSource;
     }
+
+    /**
+     * Số liệu pool + statement cho /metrics
+     */
+    public static Map<String, Object> getMetrics() {
+        getDataSource();
+        Map<String, Object> out = new LinkedHashMap<>(dataSource.metrics());
+        AdaptivePoolSizer sizer = poolSizer;
+        if (sizer != null) {
+            out.put("adaptive", sizer.metrics());
+        }
+        return out;
+    }
 }
@@ -0,0 +1,57 @@
+package org.rin.config;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+/**
+ * Đọc cấu hình từ system property (-DKEY=value), file .env (nếu có) hoặc biến môi trường, kèm giá trị mặc định
+ */
+public class EnvConfig {
+
+    private static final Dotenv dotenv = Dotenv.configure()
+            .ignoreIfMissing()
+            .ignoreIfMalformed()
+            .load();
+
+    private EnvConfig() {}
+
+    public static String getString(String key, String defaultValue) {
+        // System property đứng trước: JVM fork (vd. benchmark) đặt cấu hình riêng mà không cần sửa môi trường
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            value = dotenv.get(key);
+        }
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Enum.valueOf(type, value.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -1,6 +1,17 @@
 package org.rin.config;
 
 import io.javalin.Javalin;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.core.server.WebSocketServerComponents;
+import org.rin.DAO.DatabaseBusyException;
+import org.rin.DAO.VersionConflictException;
+import org.rin.metrics.LatencyHistogram;
+import org.rin.metrics.MetricFamily;
+import org.rin.metrics.MetricsRegistry;
+
+import java.util.zip.Deflater;
 
 public class JavalinConfig {
     private static Javalin app;
@@ -9,7 +20,39 @@ public class JavalinConfig {
 
     public static synchronized Javalin getInstance() {
         if (app == null) {
+            // true: HTTP handler, WebSocket callback và JDBC trong DAO chạy trên virtual thread,
+            // giới hạn concurrency khi đó chỉ còn là DB pool (DatabaseConfig)
+            boolean virtualThreads = EnvConfig.getBoolean("SERVER_VIRTUAL_THREADS", false);
+
             app = Javalin.create(config -> {
+                config.useVirtualThreads = virtualThreads;
+                // ctx.json / ctx.bodyAsClass dùng chung engine JSON với WebSocket
+                config.jsonMapper(JsonConfig.javalinMapper());
+
+                // Độ trễ mọi request theo route template (/users/{id}), không theo path thật để số series có hạn
+                MetricFamily<LatencyHistogram> httpLatency = MetricsRegistry.getInstance().latency(
+                        "http_request_duration_seconds", "HTTP request latency by route", "method", "route", "status");
+                config.requestLogger.http((ctx, executionTimeMs) -> {
+                    // Không khớp route nào thì Javalin trả về câu mô tả thay cho path
+                    String route = ctx.endpointHandlerPath();
+                    httpLatency.labels(ctx.method().name(), route.startsWith("/") ? route : "unmatched",
+                                    Integer.toString(ctx.statusCode()))
+                            .recordNanos((long) (executionTimeMs * 1_000_000));
+                });
+                if (!virtualThreads) {
+                    QueuedThreadPool threadPool = new QueuedThreadPool(
+                            EnvConfig.getInt("SERVER_MAX_THREADS", 250),
+                            EnvConfig.getInt("SERVER_MIN_THREADS", 8));
+                    threadPool.setName("JettyServerThreadPool");
+                    config.jetty.threadPool = threadPool;
+                }
+
+                // permessage-deflate: Jetty bật khi client đề nghị lúc handshake (browser luôn đề nghị).
+                // Pool Deflater dùng chung cho mọi session, mức nén thấp hơn = ít CPU hơn cho fan-out lớn
+                int deflateLevel = EnvConfig.getInt("WS_DEFLATE_LEVEL", Deflater.DEFAULT_COMPRESSION);
+                int deflatePoolSize = EnvConfig.getInt("WS_DEFLATE_POOL_SIZE", 1024);
+                config.jetty.modifyServer(server -> server.addBean(new DeflaterPool(deflatePoolSize, deflateLevel, true)));
+
                 config.bundledPlugins .enableCors(cors ->{
                      cors.addRule(it->{
                          it.allowHost("http://localhost:3000",
@@ -17,6 +60,25 @@ public class JavalinConfig {
                      });
                 });
             }).start("0.0.0.0", 8080);
+
+            if (!EnvConfig.getBoolean("WS_DEFLATE_ENABLED", true)) {
+                // Bỏ extension khỏi registry -> handshake sau đó không chấp nhận permessage-deflate nữa
+                ServletContextHandler handler = app.jettyServer().server().getChildHandlerByClass(ServletContextHandler.class);
+                WebSocketServerComponents.getWebSocketComponents(handler.getServletContext())
+                        .getExtensionRegistry().unregister("permessage-deflate");
+            }
+
+            // Hết thời gian chờ connection trong pool -> 503 thay vì treo request
+            app.exception(DatabaseBusyException.class, (e, ctx) -> {
+                ctx.status(503).result("Database busy, please retry");
+            });
+
+            // Update có điều kiện bị lệch version
+            app.exception(VersionConflictException.class, (e, ctx) -> {
+                ctx.status(409)
+                        .header("ETag", "\"" + e.getCurrentVersion() + "\"")
+                        .result(e.getMessage());
+            });
         }
         return app;
     }
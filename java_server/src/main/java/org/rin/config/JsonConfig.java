@@ -0,0 +1,169 @@
+package org.rin.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.json.JsonMapper;
+import org.rin.dto.UserHandleDTO;
+import org.rin.model.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Engine JSON duy nhất (Jackson) cho REST, WebSocket, cache và change log.
+ * - Blackbird: getter/setter/constructor gọi qua lambda sinh lúc chạy thay vì reflection
+ * - ObjectWriter/ObjectReader theo kiểu được dựng một lần (serializer resolve sẵn) rồi dùng lại
+ * - Serialize thẳng ra byte[] / OutputStream, không qua String trung gian
+ */
+public class JsonConfig {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new BlackbirdModule());
+    // CBOR cho body-encoding của WebSocket, cùng module/cấu hình với JSON
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory()).registerModule(new BlackbirdModule());
+
+    private static final Map<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private static final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final Map<Type, ObjectWriter> cborWriters = new ConcurrentHashMap<>();
+
+    static {
+        // Kiểu nóng: dựng serializer ngay lúc khởi động thay vì ở request đầu tiên
+        writerFor(User.class);
+        writerFor(UserHandleDTO.class);
+        readerFor(User.class);
+        readerFor(User[].class);
+    }
+
+    private JsonConfig() {}
+
+    public static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    public static ObjectWriter writerFor(Type type) {
+        return writers.computeIfAbsent(type, t -> MAPPER.writerFor(MAPPER.constructType(t)));
+    }
+
+    public static ObjectReader readerFor(Type type) {
+        return readers.computeIfAbsent(type, t -> MAPPER.readerFor(MAPPER.constructType(t)));
+    }
+
+    /**
+     * Serialize theo kiểu runtime của value
+     */
+    public static byte[] toBytes(Object value) throws JsonProcessingException {
+        return value == null ? MAPPER.writeValueAsBytes(null) : writerFor(value.getClass()).writeValueAsBytes(value);
+    }
+
+    public static byte[] toCbor(Object value) throws JsonProcessingException {
+        if (value == null) {
+            return CBOR_MAPPER.writeValueAsBytes(null);
+        }
+        return cborWriters.computeIfAbsent(value.getClass(), t -> CBOR_MAPPER.writerFor(CBOR_MAPPER.constructType(t)))
+                .writeValueAsBytes(value);
+    }
+
+    public static JsonNode readTree(byte[] json) throws IOException {
+        return MAPPER.readTree(json);
+    }
+
+    public static JsonNode readTree(InputStream json) throws IOException {
+        return MAPPER.readTree(json);
+    }
+
+    /**
+     * Đọc body request thẳng từ byte (ctx.bodyAsClass decode cả body thành String trước), JSON lỗi -> 400
+     */
+    public static <T> T body(Context ctx, Class<T> type) {
+        try {
+            return readerFor(type).readValue(ctx.bodyAsBytes());
+        } catch (JsonProcessingException e) {
+            throw new BadRequestResponse("Invalid JSON body: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Response JSON ghi thẳng từ byte[] (thay cho ctx.json, vốn serialize ra String trước)
+     */
+    public static void json(Context ctx, Object value) throws JsonProcessingException {
+        ctx.contentType(ContentType.APPLICATION_JSON).result(toBytes(value));
+    }
+
+    /**
+     * Mapper cho Javalin: ctx.json / ctx.bodyAsClass dùng chung ObjectMapper và writer/reader ở trên
+     */
+    public static JsonMapper javalinMapper() {
+        return new JsonMapper() {
+            @Override
+            public String toJsonString(Object obj, Type type) {
+                if (obj instanceof String s) {
+                    return s; // giống JavalinJackson: String coi như JSON đã serialize sẵn
+                }
+                try {
+                    return writerFor(type).writeValueAsString(obj);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public InputStream toJsonStream(Object obj, Type type) {
+                if (obj instanceof String s) {
+                    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+                }
+                try {
+                    return new ByteArrayInputStream(writerFor(type).writeValueAsBytes(obj));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void writeToOutputStream(Stream<?> stream, OutputStream outputStream) {
+                try (var sequence = MAPPER.writer().writeValuesAsArray(outputStream)) {
+                    for (Iterator<?> it = stream.iterator(); it.hasNext(); ) {
+                        sequence.write(it.next());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public <T> T fromJsonString(String json, Type targetType) {
+                try {
+                    return readerFor(targetType).readValue(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public <T> T fromJsonStream(InputStream json, Type targetType) {
+                try {
+                    return readerFor(targetType).readValue(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
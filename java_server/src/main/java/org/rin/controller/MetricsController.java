@@ -0,0 +1,34 @@
+package org.rin.controller;
+
+import io.javalin.Javalin;
+import org.rin.config.DatabaseConfig;
+import org.rin.config.JavalinConfig;
+import org.rin.config.JsonConfig;
+import org.rin.metrics.MetricsRegistry;
+import org.rin.metrics.PrometheusText;
+import org.rin.ws.WSConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MetricsController {
+
+    private final Javalin app = JavalinConfig.getInstance();
+
+    public MetricsController() {
+        // Prometheus text (mặc định, cho scraper) hoặc JSON (?format=json / Accept: application/json):
+        // pool connection, độ trễ statement theo dạng SQL, HTTP theo route, frame/fan-out WebSocket, admission control của SEND
+        app.get("/metrics", ctx -> {
+            String accept = ctx.header("Accept");
+            if ("json".equals(ctx.queryParam("format")) || accept != null && accept.startsWith("application/json")) {
+                Map<String, Object> metrics = new LinkedHashMap<>();
+                metrics.put("db", DatabaseConfig.getMetrics());
+                metrics.put("ws", WSConfig.getInstance().getMetrics());
+                JsonConfig.json(ctx, metrics);
+                return;
+            }
+            WSConfig.getInstance(); // metric WebSocket được đăng ký cả trước kết nối đầu tiên
+            ctx.contentType(PrometheusText.CONTENT_TYPE).result(MetricsRegistry.getInstance().scrape());
+        });
+    }
+}
@@ -1,33 +1,175 @@
 package org.rin.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.Gson;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.javalin.Javalin;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.Context;
+import org.rin.config.ChangeLogConfig;
 import org.rin.config.JavalinConfig;
-import org.rin.DAO.UserDAO;
+import org.rin.config.JsonConfig;
+import org.rin.DAO.CachedUserDAO;
+import org.rin.dto.UserChangesDTO;
 import org.rin.dto.UserHandleDTO;
+import org.rin.dto.UserPageDTO;
+import org.rin.log.UserChangeLog;
 import org.rin.model.User;
-import org.rin.ws.WSConfig;
+import org.rin.ws.ChangeEventPipeline;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class UserController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 50_000;
+    private static final String USERS_TOPIC = "/topic/manager/users";
+
     private final Javalin app = JavalinConfig.getInstance();
-    private final UserDAO userDAO = new UserDAO(); // tạo instance bình thường
-    private final WSConfig wsConfig = WSConfig.getInstance();
-    ObjectMapper mapper = new ObjectMapper();
-    Gson gson = new Gson();
+    private final CachedUserDAO userDAO = new CachedUserDAO(); // DAO có cache, ghi qua đây sẽ tự invalidate
+    // Change event đi qua pipeline để gom/gộp trước khi broadcast
+    private final ChangeEventPipeline events = ChangeEventPipeline.getInstance();
+    // Log các thay đổi để bootstrap danh sách user không cần SELECT toàn bảng, null = tắt
+    private final UserChangeLog changeLog = ChangeLogConfig.getUserChangeLog();
+    // Không flush sau mỗi row khi export
+    private final ObjectWriter rowWriter = JsonConfig.writerFor(User.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     public UserController() {
+        if (changeLog != null) {
+            changeLog.seedIfEmpty(userDAO::getAllUsers);
+        }
         registerRoutes();
     }
 
     private void registerRoutes() {
         // Lấy tất cả user
+        // ?limit=N[&cursor=id] -> phân trang keyset, không có limit -> toàn bộ danh sách (cache)
         app.get("/users", ctx -> {
-            List<User> users = userDAO.getAllUsers();
+            if (ctx.queryParam("limit") == null) {
+                // JSON đã serialize sẵn trong cache
+                ctx.contentType("application/json").result(userDAO.getAllUsersJson());
+                return;
+            }
+
+            int limit = ctx.queryParamAsClass("limit", Integer.class)
+                    .check(l -> l > 0 && l <= MAX_PAGE_SIZE, "limit must be between 1 and " + MAX_PAGE_SIZE)
+                    .get();
+            Integer cursor = ctx.queryParamAsClass("cursor", Integer.class).allowNullable().get();
+
+            // Lấy dư 1 row để biết còn trang sau hay không
+            List<User> users = userDAO.getUsersPage(cursor, limit + 1);
+            Integer nextCursor = null;
+            if (users.size() > limit) {
+                users = users.subList(0, limit);
+                nextCursor = users.get(limit - 1).getId();
+            }
+            JsonConfig.json(ctx, new UserPageDTO(users, nextCursor));
+        });
+
+        // Export toàn bộ bảng: stream từng row từ ResultSet thẳng ra response, heap không phụ thuộc số row.
+        // Lỗi DB giữa chừng: không đóng generator (không có ']' cuối) để client thấy body bị cắt, không phải 200 hợp lệ
+        app.get("/users/export", ctx -> {
+            ctx.contentType("application/json");
+            JsonGenerator gen = JsonConfig.getMapper().getFactory().createGenerator(ctx.outputStream());
+            gen.writeStartArray();
+            userDAO.forEachUser(user -> {
+                try {
+                    rowWriter.writeValue(gen, user);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            gen.writeEndArray();
+            gen.close();
+        });
+
+        // Hit/miss của cache
+        app.get("/users/cache/stats", ctx -> {
+            JsonConfig.json(ctx, userDAO.getStats());
+        });
 
-            ctx.json(users);
+        // ===== Change log - đăng ký trước /users/{id} ===== //
+
+        // Danh sách user + seq từ snapshot/log, không đụng MySQL
+        app.get("/users/changes/snapshot", ctx -> {
+            if (changeLog == null) {
+                ctx.status(404).result("User change log is disabled");
+                return;
+            }
+            JsonConfig.json(ctx, changeLog.snapshot());
+        });
+
+        // Các thay đổi sau ?after=seq, 410 nếu phần đó đã bị gộp vào snapshot
+        app.get("/users/changes", ctx -> {
+            if (changeLog == null) {
+                ctx.status(404).result("User change log is disabled");
+                return;
+            }
+            long after = ctx.queryParamAsClass("after", Long.class).get();
+            UserChangesDTO changes = changeLog.changesAfter(after);
+            if (changes == null) {
+                ctx.status(410).result("Changes after " + after + " were compacted, reload /users/changes/snapshot");
+                return;
+            }
+            JsonConfig.json(ctx, changes);
+        });
+
+        // ===== Batch - đăng ký trước /users/{id} để không bị match nhầm ===== //
+
+        // Thêm nhiều user: [{name, phone}, ...]
+        app.post("/users/batch", ctx -> {
+            List<User> req = batchBody(ctx, User[].class);
+            if (req.isEmpty() || req.size() > MAX_BATCH_SIZE) {
+                ctx.status(400).result("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+                return;
+            }
+            List<User> created = userDAO.addUsers(req);
+            if (created != null) {
+                ctx.status(201);
+                JsonConfig.json(ctx, created);
+                publishBatch(created, "add");
+            } else {
+                ctx.status(500).result("Failed to create users");
+            }
+        });
+
+        // Cập nhật nhiều user: [{id, name, phone}, ...]
+        app.put("/users/batch", ctx -> {
+            List<User> req = batchBody(ctx, User[].class);
+            if (req.isEmpty() || req.size() > MAX_BATCH_SIZE) {
+                ctx.status(400).result("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+                return;
+            }
+            List<User> updated = userDAO.updateUsers(req);
+            if (updated != null) {
+                JsonConfig.json(ctx, updated);
+                publishBatch(updated, "update");
+            } else {
+                ctx.status(500).result("Failed to update users");
+            }
+        });
+
+        // Xóa nhiều user: [id, ...]
+        app.delete("/users/batch", ctx -> {
+            List<Integer> ids = batchBody(ctx, Integer[].class);
+            if (ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+                ctx.status(400).result("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+                return;
+            }
+            List<Integer> deleted = userDAO.deleteUsers(ids);
+            if (deleted != null) {
+                JsonConfig.json(ctx, deleted);
+                List<User> users = new ArrayList<>(deleted.size());
+                for (int id : deleted) {
+                    users.add(new User(id, "", ""));
+                }
+                publishBatch(users, "delete");
+            } else {
+                ctx.status(500).result("Failed to delete users");
+            }
         });
 
         // Lấy user theo id
@@ -35,7 +177,10 @@ public class UserController {
             int id = Integer.parseInt(ctx.pathParam("id"));
             User user = userDAO.getUserById(id);
             if (user != null) {
-                ctx.json(user);
+                if (user.getVersion() != null) {
+                    ctx.header("ETag", "\"" + user.getVersion() + "\"");
+                }
+                JsonConfig.json(ctx, user);
             } else {
                 ctx.status(404).result("User not found");
             }
@@ -43,15 +188,12 @@ public class UserController {
 
         // Thêm user
         app.post("/users", ctx -> {
-            System.out.println(ctx.body());
-            User req = ctx.bodyAsClass(User.class); // JSON body {name, phone}
+            User req = JsonConfig.body(ctx, User.class); // JSON body {name, phone}
             User newUser = userDAO.addUser(req.getName(), req.getPhone());
             if (newUser != null) {
-                ctx.status(201).json(newUser);
-                wsConfig.buildAndSendToTopic(
-                        "/topic/manager/users",
-                        new UserHandleDTO(newUser,"add")
-                );
+                ctx.status(201);
+                JsonConfig.json(ctx, newUser);
+                publish(new UserHandleDTO(newUser,"add"));
             } else {
                 ctx.status(500).result("Failed to create user");
             }
@@ -60,14 +202,19 @@ public class UserController {
         // Cập nhật user
         app.put("/users/{id}", ctx -> {
             int id = Integer.parseInt(ctx.pathParam("id"));
-            User req = ctx.bodyAsClass(User.class);
-            User updatedUser = userDAO.updateUser(id, req.getName(), req.getPhone());
+            User req = JsonConfig.body(ctx, User.class);
+            // Update có điều kiện: If-Match: "<version>" hoặc field version trong body
+            Integer expectedVersion = parseIfMatch(ctx.header("If-Match"));
+            if (expectedVersion == null) {
+                expectedVersion = req.getVersion();
+            }
+            User updatedUser = userDAO.updateUser(id, req.getName(), req.getPhone(), expectedVersion);
             if (updatedUser != null) {
-                ctx.json(updatedUser);
-                wsConfig.buildAndSendToTopic(
-                        "/topic/manager/users",
-                        new UserHandleDTO(updatedUser,"update")
-                );
+                if (updatedUser.getVersion() != null) {
+                    ctx.header("ETag", "\"" + updatedUser.getVersion() + "\"");
+                }
+                JsonConfig.json(ctx, updatedUser);
+                publish(new UserHandleDTO(updatedUser,"update"));
             } else {
                 ctx.status(404).result("User not found or update failed");
             }
@@ -79,13 +226,68 @@ public class UserController {
             boolean deleted = userDAO.deleteUser(id);
             if (deleted) {
                 ctx.status(204); // No Content
-                wsConfig.buildAndSendToTopic(
-                        "/topic/manager/users",
-                        new UserHandleDTO(new User(id, "", ""),"delete")
-                );
+                publish(new UserHandleDTO(new User(id, "", ""),"delete"));
             } else {
                 ctx.status(404).result("User not found");
             }
         });
     }
+
+    // If-Match: "3" / W/"3" / 3 -> 3, không có hoặc "*" -> null (không kiểm tra version)
+    private static Integer parseIfMatch(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        value = value.replace("\"", "");
+        if (value.isEmpty() || value.equals("*")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestResponse("Invalid If-Match header");
+        }
+    }
+
+    /**
+     * Mảng JSON của batch; body "null" hoặc phần tử null -> 400 như body sai định dạng
+     */
+    private static <T> List<T> batchBody(Context ctx, Class<T[]> type) {
+        T[] items = JsonConfig.body(ctx, type);
+        if (items == null) {
+            throw new BadRequestResponse("Batch body must be a JSON array");
+        }
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == null) {
+                throw new BadRequestResponse("Batch element " + i + " is null");
+            }
+        }
+        return List.of(items);
+    }
+
+    private void publish(UserHandleDTO event) {
+        if (changeLog != null) {
+            changeLog.append(List.of(event));
+        }
+        events.publish(USERS_TOPIC, event);
+    }
+
+    // Cả batch vào pipeline một lần -> một frame (mảng UserHandleDTO) thay vì một frame mỗi row
+    private void publishBatch(List<User> users, String action) {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<UserHandleDTO> batch = new ArrayList<>(users.size());
+        for (User user : users) {
+            batch.add(new UserHandleDTO(user, action));
+        }
+        if (changeLog != null) {
+            changeLog.append(batch);
+        }
+        events.publishAll(USERS_TOPIC, batch);
+    }
 }
@@ -4,6 +4,8 @@ import io.javalin.Javalin;
 import org.rin.config.JavalinConfig;
 import org.rin.ws.WSConfig;
 
+import java.util.Map;
+
 public class UserSessionController {
     private final WSConfig wsConfig = WSConfig.getInstance();
 
@@ -12,8 +14,23 @@ public class UserSessionController {
     public UserSessionController() {
         // Định nghĩa các endpoint liên quan đến user ở đây
         app.get("/ss-users", ctx -> {
-            // Trả về danh sách user đang kết nối
-            ctx.json(wsConfig.getActiveUsers());
+            // Trả về danh sách user đang kết nối trên toàn cluster
+            ctx.json(wsConfig.getClusterUsers());
+        });
+
+        // Số session theo từng user (một user có thể mở nhiều tab/thiết bị)
+        app.get("/ss-users/by-user", ctx -> {
+            ctx.json(wsConfig.getSessionCountsByUser());
+        });
+
+        app.get("/ss-users/by-user/{username}", ctx -> {
+            String username = ctx.pathParam("username");
+            ctx.json(Map.of("username", username, "sessions", wsConfig.getSessionCount(username)));
+        });
+
+        // Độ sâu hàng đợi gửi của từng session
+        app.get("/ss-users/queues", ctx -> {
+            ctx.json(wsConfig.getOutboundQueueStats());
         });
     }
 }
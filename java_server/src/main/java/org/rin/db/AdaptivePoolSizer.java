@@ -0,0 +1,117 @@
+package org.rin.db;
+
+import org.rin.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Điều chỉnh maxTotal của pool trong [min, max] theo số liệu của mỗi chu kỳ:
+ * - Request phải chờ connection (p95 chờ > target hoặc có waiter) mà DB vẫn nhanh -> tăng ~25%
+ * - Request chờ VÀ DB chậm hẳn so với baseline (p95 > 2x và hơn ít nhất 5ms) -> DB mới là nút cổ chai, giảm ~12% để bớt tải
+ * - Không ai chờ và số connection dùng cùng lúc cao nhất < nửa pool -> giảm 1
+ * Baseline là p95 độ trễ statement thấp nhất gần đây (tăng dần 10% mỗi chu kỳ để theo kịp thay đổi).
+ */
+public final class AdaptivePoolSizer {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+    private static final int MIN_SAMPLES = 20;
+    // Chênh lệch dưới mức này coi là nhiễu, không phải DB chậm đi
+    private static final double MIN_SLOWDOWN_MILLIS = 5;
+
+    private final InstrumentedDataSource dataSource;
+    private final int minTotal;
+    private final int maxTotal;
+    private final double targetWaitMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "db-pool-sizer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private LatencyHistogram.Snapshot previousWait;
+    private LatencyHistogram.Snapshot previousStatements;
+    private volatile double baselineMillis;
+    private volatile String lastDecision = "none";
+
+    public AdaptivePoolSizer(InstrumentedDataSource dataSource, int minTotal, int maxTotal, double targetWaitMillis) {
+        this.dataSource = dataSource;
+        this.minTotal = minTotal;
+        this.maxTotal = Math.max(minTotal, maxTotal);
+        this.targetWaitMillis = targetWaitMillis;
+    }
+
+    public void start(long intervalMillis) {
+        previousWait = dataSource.borrowWait().snapshot();
+        previousStatements = dataSource.allStatements().snapshot();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                adjust();
+            } catch (Exception e) {
+                log.error("❌ Pool sizing failed: {}", e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void adjust() {
+        LatencyHistogram.Snapshot waitNow = dataSource.borrowWait().snapshot();
+        LatencyHistogram.Snapshot statementsNow = dataSource.allStatements().snapshot();
+        LatencyHistogram.Snapshot wait = waitNow.minus(previousWait);
+        LatencyHistogram.Snapshot statements = statementsNow.minus(previousStatements);
+        previousWait = waitNow;
+        previousStatements = statementsNow;
+
+        InstrumentedDataSource.Pool pool = dataSource.pool();
+        int current = pool.maxTotal();
+        int next = decide(current, dataSource.resetPeakInUse(), pool.waiters(), wait, statements);
+        if (next != current) {
+            pool.setMaxTotal(next);
+        }
+    }
+
+    /**
+     * maxTotal mới từ số liệu của một chu kỳ (wait, statements là phần chênh so với chu kỳ trước), cập nhật baseline
+     */
+    int decide(int current, int peak, int waiters, LatencyHistogram.Snapshot wait, LatencyHistogram.Snapshot statements) {
+        double waitP95 = wait.percentileMillis(0.95);
+        double dbP95 = statements.percentileMillis(0.95);
+
+        if (statements.count() >= MIN_SAMPLES) {
+            baselineMillis = baselineMillis == 0 ? dbP95 : Math.min(dbP95, baselineMillis * 1.1);
+        }
+        boolean waiting = waitP95 > targetWaitMillis || waiters > 0;
+        boolean dbSlow = baselineMillis > 0 && statements.count() >= MIN_SAMPLES
+                && dbP95 > Math.max(baselineMillis * 2, baselineMillis + MIN_SLOWDOWN_MILLIS);
+
+        int next = current;
+        if (waiting && !dbSlow) {
+            next = Math.min(maxTotal, current + Math.max(1, current / 4));
+        } else if (waiting) {
+            next = Math.max(minTotal, current - Math.max(1, current / 8));
+        } else if (peak < current / 2) {
+            next = Math.max(minTotal, current - 1);
+        }
+
+        if (next != current) {
+            lastDecision = String.format("%d -> %d (wait p95 %.1fms, db p95 %.1fms, baseline %.1fms, peak %d)",
+                    current, next, waitP95, dbP95, baselineMillis, peak);
+            log.info("📐 DB pool maxTotal {}", lastDecision);
+        }
+        return next;
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("minTotal", minTotal);
+        out.put("maxTotal", maxTotal);
+        out.put("targetWaitMs", targetWaitMillis);
+        out.put("baselineStatementP95Ms", Math.round(baselineMillis * 1000) / 1000.0);
+        out.put("lastDecision", lastDecision);
+        return out;
+    }
+}
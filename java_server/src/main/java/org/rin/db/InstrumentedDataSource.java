@@ -0,0 +1,359 @@
+package org.rin.db;
+
+import org.rin.metrics.LatencyHistogram;
+import org.rin.metrics.MetricFamily;
+import org.rin.metrics.PrometheusText;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * DataSource bọc pool để đo:
+ * - thời gian chờ lấy connection, số lần lấy thất bại (hết maxWait), số connection đang mượn (cả đỉnh)
+ * - độ trễ execute* theo "dạng" SQL (literal -> ?, danh sách ? / VALUES gộp lại), log câu chậm
+ * Connection/Statement được bọc bằng dynamic proxy nên DAO không phải đổi gì.
+ */
+public final class InstrumentedDataSource implements DataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentedDataSource.class);
+    private static final String OTHER_SHAPE = "(other)";
+    private static final int MAX_SHAPE_LENGTH = 200;
+    private static final String[] NO_LABELS = new String[0];
+    private static final String[] SHAPE_LABEL = {"shape"};
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern VALUES_ROWS = Pattern.compile("(\\(\\?\\.\\.\\.\\)|\\(\\?\\))(\\s*,\\s*(\\(\\?\\.\\.\\.\\)|\\(\\?\\)))+");
+
+    /**
+     * Trạng thái pool phía dưới (active/idle/waiters) và chỗ đổi kích thước pool
+     */
+    public interface Pool {
+        int active();
+        int idle();
+        int waiters();
+        int maxTotal();
+        void setMaxTotal(int maxTotal);
+    }
+
+    static final class StatementStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private final DataSource delegate;
+    private final Pool pool;
+    private final long slowQueryNanos;
+    private final int maxShapes;
+
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final LongAdder borrowFailures = new LongAdder();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final LatencyHistogram allStatements = new LatencyHistogram();
+    private final LongAdder slowQueries = new LongAdder();
+    private final Map<String, StatementStats> shapes = new ConcurrentHashMap<>();
+    // SQL gốc -> dạng đã chuẩn hóa, tránh chạy regex cho mỗi câu
+    private final Map<String, String> shapeCache = new ConcurrentHashMap<>();
+
+    public InstrumentedDataSource(DataSource delegate, Pool pool, long slowQueryMillis, int maxShapes) {
+        this.delegate = delegate;
+        this.pool = pool;
+        this.slowQueryNanos = slowQueryMillis * 1_000_000;
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = delegate.getConnection();
+        } catch (SQLException e) {
+            borrowFailures.increment();
+            throw e;
+        }
+        return borrowed(connection, start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = delegate.getConnection(username, password);
+        } catch (SQLException e) {
+            borrowFailures.increment();
+            throw e;
+        }
+        return borrowed(connection, start);
+    }
+
+    private Connection borrowed(Connection connection, long start) {
+        borrowWait.recordNanos(System.nanoTime() - start);
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close") && closed.compareAndSet(false, true)) {
+                inUse.decrementAndGet();
+            }
+            Object result = call(target, method, args);
+            return switch (name) {
+                case "prepareStatement" -> wrap(PreparedStatement.class, (Statement) result, shapeOf((String) args[0]));
+                case "prepareCall" -> wrap(CallableStatement.class, (Statement) result, shapeOf((String) args[0]));
+                case "createStatement" -> wrap(Statement.class, (Statement) result, null);
+                default -> result;
+            };
+        }
+    }
+
+    private Object wrap(Class<? extends Statement> type, Statement statement, String shape) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new StatementHandler(statement, shape));
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String shape; // null với Statement thường: lấy từ SQL truyền vào execute
+
+        StatementHandler(Statement target, String shape) {
+            this.target = target;
+            this.shape = shape;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) {
+                return call(target, method, args);
+            }
+            String sqlShape = shape;
+            if (sqlShape == null) {
+                sqlShape = args != null && args.length > 0 && args[0] instanceof String sql ? shapeOf(sql) : "(batch)";
+            }
+            StatementStats stats = statsFor(sqlShape);
+            long start = System.nanoTime();
+            try {
+                return call(target, method, args);
+            } catch (SQLException e) {
+                stats.errors.increment();
+                throw e;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                stats.latency.recordNanos(elapsed);
+                allStatements.recordNanos(elapsed);
+                if (elapsed >= slowQueryNanos) {
+                    slowQueries.increment();
+                    log.warn("🐢 Slow query {} ms: {}", elapsed / 1_000_000, sqlShape);
+                }
+            }
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private StatementStats statsFor(String shape) {
+        StatementStats stats = shapes.get(shape);
+        if (stats != null) {
+            return stats;
+        }
+        // Giới hạn số dạng SQL để SQL sinh động không làm phình bộ nhớ
+        if (shapes.size() >= maxShapes) {
+            return shapes.computeIfAbsent(OTHER_SHAPE, k -> new StatementStats());
+        }
+        return shapes.computeIfAbsent(shape, k -> new StatementStats());
+    }
+
+    private String shapeOf(String sql) {
+        String shape = shapeCache.get(sql);
+        if (shape == null) {
+            shape = normalize(sql);
+            if (shapeCache.size() >= maxShapes * 4) {
+                shapeCache.clear();
+            }
+            shapeCache.put(sql, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * "SELECT * FROM users WHERE id IN (1, 2, 3)" -> "SELECT * FROM users WHERE id IN (?...)"
+     */
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // Chuỗi literal -> ?
+                int end = i + 1;
+                while (end < sql.length() && sql.charAt(end) != c) {
+                    end += sql.charAt(end) == '\\' ? 2 : 1;
+                }
+                sb.append('?');
+                i = end + 1;
+            } else if (Character.isDigit(c) && (i == 0 || !Character.isLetterOrDigit(sql.charAt(i - 1)) && sql.charAt(i - 1) != '_')) {
+                // Số literal (không phải một phần của tên cột/bảng) -> ?
+                while (i < sql.length() && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        String shape = WHITESPACE.matcher(sb.toString().trim()).replaceAll(" ");
+        shape = PLACEHOLDER_LIST.matcher(shape).replaceAll("(?...)");
+        shape = VALUES_ROWS.matcher(shape).replaceAll("$1, ...");
+        return shape.length() > MAX_SHAPE_LENGTH ? shape.substring(0, MAX_SHAPE_LENGTH) + "..." : shape;
+    }
+
+    // ===== Số liệu cho /metrics và AdaptivePoolSizer ===== //
+
+    public Pool pool() {
+        return pool;
+    }
+
+    public LatencyHistogram borrowWait() {
+        return borrowWait;
+    }
+
+    public LatencyHistogram allStatements() {
+        return allStatements;
+    }
+
+    /**
+     * Số connection mượn cùng lúc lớn nhất kể từ lần gọi trước
+     */
+    public int resetPeakInUse() {
+        return peakInUse.getAndSet(inUse.get());
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> poolStats = new LinkedHashMap<>();
+        poolStats.put("active", pool.active());
+        poolStats.put("idle", pool.idle());
+        poolStats.put("waiters", pool.waiters());
+        poolStats.put("maxTotal", pool.maxTotal());
+        poolStats.put("inUse", inUse.get());
+        poolStats.put("borrowFailures", borrowFailures.sum());
+        poolStats.put("borrowWait", borrowWait.snapshot().summary());
+
+        Map<String, Object> statements = new TreeMap<>();
+        for (Map.Entry<String, StatementStats> entry : shapes.entrySet()) {
+            Map<String, Object> stats = entry.getValue().latency.snapshot().summary();
+            stats.put("errors", entry.getValue().errors.sum());
+            statements.put(entry.getKey(), stats);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("pool", poolStats);
+        out.put("statements", allStatements.snapshot().summary());
+        out.put("slowQueries", slowQueries.sum());
+        out.put("byShape", statements);
+        return out;
+    }
+
+    /**
+     * Cùng số liệu với metrics() theo Prometheus text, đăng ký làm collector của MetricsRegistry
+     */
+    public void writePrometheus(PrometheusText out) {
+        out.single("db_pool_active_connections", "Connections borrowed from the pool", MetricFamily.Type.GAUGE, pool.active());
+        out.single("db_pool_idle_connections", "Idle connections in the pool", MetricFamily.Type.GAUGE, pool.idle());
+        out.single("db_pool_waiters", "Threads waiting for a connection", MetricFamily.Type.GAUGE, pool.waiters());
+        out.single("db_pool_max_total", "Current pool size limit", MetricFamily.Type.GAUGE, pool.maxTotal());
+        out.single("db_pool_borrow_failures_total", "Connection borrows that timed out or failed", MetricFamily.Type.COUNTER, borrowFailures.sum());
+        out.header("db_pool_borrow_wait_seconds", "Time to borrow a connection from the pool", MetricFamily.Type.HISTOGRAM)
+                .latency("db_pool_borrow_wait_seconds", NO_LABELS, NO_LABELS, borrowWait.snapshot());
+        out.single("db_slow_queries_total", "Statements slower than DB_SLOW_QUERY_MS", MetricFamily.Type.COUNTER, slowQueries.sum());
+
+        out.header("db_statement_duration_seconds", "Statement execution time by normalized SQL", MetricFamily.Type.HISTOGRAM);
+        for (Map.Entry<String, StatementStats> entry : shapes.entrySet()) {
+            out.latency("db_statement_duration_seconds", SHAPE_LABEL, new String[]{entry.getKey()}, entry.getValue().latency.snapshot());
+        }
+        out.header("db_statement_errors_total", "Statements that threw SQLException by normalized SQL", MetricFamily.Type.COUNTER);
+        for (Map.Entry<String, StatementStats> entry : shapes.entrySet()) {
+            out.sample("db_statement_errors_total", SHAPE_LABEL, new String[]{entry.getKey()}, entry.getValue().errors.sum());
+        }
+    }
+
+    // ===== Phần còn lại của DataSource chuyển thẳng xuống pool ===== //
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedDataSource[" + delegate + "]";
+    }
+}
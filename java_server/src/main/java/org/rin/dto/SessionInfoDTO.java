@@ -0,0 +1,27 @@
+package org.rin.dto;
+
+public class SessionInfoDTO {
+    private String nodeId; // node đang giữ kết nối
+    private String sessionId;
+    private String username;
+    private String ip;
+    private int port;
+    public SessionInfoDTO(String nodeId, String sessionId, String username, String ip, int port) {
+        this.nodeId = nodeId;
+        this.sessionId = sessionId;
+        this.username = username;
+        this.ip = ip;
+        this.port = port;
+    }
+    public String getNodeId() { return nodeId; }
+    public String getSessionId() { return sessionId; }
+    public String getUsername() { return username; }
+    public String getIp() { return ip; }
+    public int getPort() { return port; }
+
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+    public void setSessionId(String sessionId) { this.sessionId = sessionId; }
+    public void setUsername(String username) { this.username = username; }
+    public void setIp(String ip) { this.ip = ip; }
+    public void setPort(int port) { this.port = port; }
+}
@@ -0,0 +1,19 @@
+package org.rin.dto;
+
+import org.rin.log.UserChangeLog;
+
+import java.util.List;
+
+public class UserChangesDTO {
+    private long seq; // seq mới nhất của change log, lần sau gọi với after=seq
+    private List<UserChangeLog.Change> changes;
+    public UserChangesDTO(long seq, List<UserChangeLog.Change> changes) {
+        this.seq = seq;
+        this.changes = changes;
+    }
+    public long getSeq() { return seq; }
+    public List<UserChangeLog.Change> getChanges() { return changes; }
+
+    public void setSeq(long seq) { this.seq = seq; }
+    public void setChanges(List<UserChangeLog.Change> changes) { this.changes = changes; }
+}
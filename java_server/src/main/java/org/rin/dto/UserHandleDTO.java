@@ -5,13 +5,16 @@ import org.rin.model.User;
 public class UserHandleDTO {
     private User user;
     private String action; // e.g., "create", "update", "delete"
+    private Long seq; // seq trong change log, null khi change log tắt
     public UserHandleDTO(User user, String action) {
         this.user = user;
         this.action = action;
     }
     public User getUser() { return user; }
     public String getAction() { return action; }
+    public Long getSeq() { return seq; }
 
     public void setUser(User user) { this.user = user; }
     public void setAction(String action) { this.action = action; }
+    public void setSeq(Long seq) { this.seq = seq; }
 }
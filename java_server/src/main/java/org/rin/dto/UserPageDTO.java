@@ -0,0 +1,19 @@
+package org.rin.dto;
+
+import org.rin.model.User;
+
+import java.util.List;
+
+public class UserPageDTO {
+    private List<User> items;
+    private Integer nextCursor; // null = hết dữ liệu
+    public UserPageDTO(List<User> items, Integer nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+    public List<User> getItems() { return items; }
+    public Integer getNextCursor() { return nextCursor; }
+
+    public void setItems(List<User> items) { this.items = items; }
+    public void setNextCursor(Integer nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -0,0 +1,196 @@
+package org.rin.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Log append-only trên các segment file memory-mapped, mỗi record gắn một sequence tăng dần.
+ * Record: [int length + 1][long seq][payload] - length ghi SAU CÙNG, 0 nghĩa là hết dữ liệu,
+ * nên process chết giữa chừng chỉ làm mất record đang ghi dở.
+ * Segment đặt tên theo seq đầu tiên, giữ tối đa maxSegments segment (cũ nhất bị xóa khi sang segment mới).
+ */
+public final class MappedLog implements Closeable {
+
+    private static final String SUFFIX = ".seg";
+    private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+    /**
+     * Nhận một record khi đọc lại log
+     */
+    public interface RecordConsumer {
+        void accept(long seq, byte[] payload);
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long baseSeq;
+        final MappedByteBuffer buffer;
+        int writePos;
+        long lastSeq = -1;
+
+        Segment(Path path, long baseSeq, MappedByteBuffer buffer) {
+            this.path = path;
+            this.baseSeq = baseSeq;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final List<Segment> segments = new ArrayList<>();
+
+    public MappedLog(Path dir, int segmentBytes, int maxSegments) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(maxSegments, 1);
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long baseSeq = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            Segment segment = new Segment(file, baseSeq, map(file));
+            // Quét tới record cuối cùng ghi trọn vẹn
+            MappedByteBuffer buffer = segment.buffer;
+            int pos = 0;
+            while (pos + RECORD_HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(pos) - 1;
+                if (length < 0 || pos + RECORD_HEADER + length > buffer.capacity()) {
+                    break;
+                }
+                segment.lastSeq = buffer.getLong(pos + Integer.BYTES);
+                pos += RECORD_HEADER + length;
+            }
+            segment.writePos = pos;
+            segments.add(segment);
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping vẫn hợp lệ sau khi đóng channel
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    /**
+     * seq phải lớn hơn seq của record trước đó
+     */
+    public synchronized void append(long seq, byte[] payload) throws IOException {
+        int size = RECORD_HEADER + payload.length;
+        if (size > segmentBytes) {
+            throw new IOException("Record of " + payload.length + " bytes does not fit a " + segmentBytes + " byte segment");
+        }
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.writePos + size > segmentBytes) {
+            segment = roll(seq);
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int pos = segment.writePos;
+        buffer.putLong(pos + Integer.BYTES, seq);
+        buffer.put(pos + RECORD_HEADER, payload);
+        buffer.putInt(pos, payload.length + 1);
+        segment.writePos = pos + size;
+        segment.lastSeq = seq;
+    }
+
+    private Segment roll(long baseSeq) throws IOException {
+        Path file = dir.resolve(String.format("%020d%s", baseSeq, SUFFIX));
+        Segment segment = new Segment(file, baseSeq, map(file));
+        segments.add(segment);
+        while (segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.remove(0).path);
+        }
+        return segment;
+    }
+
+    /**
+     * Đọc lần lượt các record có seq > afterSeq
+     */
+    public synchronized void readFrom(long afterSeq, RecordConsumer consumer) {
+        for (int i = 0; i < segments.size(); i++) {
+            // Bỏ qua segment mà mọi record đều <= afterSeq
+            if (i + 1 < segments.size() && segments.get(i + 1).baseSeq <= afterSeq + 1) {
+                continue;
+            }
+            Segment segment = segments.get(i);
+            MappedByteBuffer buffer = segment.buffer;
+            int pos = 0;
+            while (pos < segment.writePos) {
+                int length = buffer.getInt(pos) - 1;
+                long seq = buffer.getLong(pos + Integer.BYTES);
+                if (seq > afterSeq) {
+                    byte[] payload = new byte[length];
+                    buffer.get(pos + RECORD_HEADER, payload);
+                    consumer.accept(seq, payload);
+                }
+                pos += RECORD_HEADER + length;
+            }
+        }
+    }
+
+    /**
+     * Xóa các segment mà mọi record đều có seq <= seq (đã nằm trong snapshot). Segment đang ghi luôn được giữ.
+     */
+    public synchronized void deleteUpTo(long seq) throws IOException {
+        while (segments.size() > 1 && segments.get(1).baseSeq <= seq + 1) {
+            Files.deleteIfExists(segments.remove(0).path);
+        }
+    }
+
+    /**
+     * seq của record cũ nhất còn giữ, -1 nếu log rỗng
+     */
+    public synchronized long firstSeq() {
+        for (Segment segment : segments) {
+            if (segment.writePos > 0) {
+                return segment.buffer.getLong(Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * seq của record mới nhất, -1 nếu log rỗng
+     */
+    public synchronized long lastSeq() {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (segments.get(i).lastSeq >= 0) {
+                return segments.get(i).lastSeq;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ép dữ liệu xuống đĩa (mặc định để OS tự flush page)
+     */
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        segments.clear();
+    }
+}
@@ -0,0 +1,248 @@
+package org.rin.log;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.rin.config.JsonConfig;
+import org.rin.dto.UserChangesDTO;
+import org.rin.dto.UserHandleDTO;
+import org.rin.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Change log của User: mọi UserHandleDTO từ UserController được ghi vào MappedLog (kèm seq),
+ * đồng thời áp vào danh sách user trong bộ nhớ.
+ * Cứ snapshotEvery event thì ghi snapshot đã gộp (snapshot-&lt;seq&gt;.json) và xóa các segment log nằm trước nó.
+ * Khởi động: đọc snapshot mới nhất rồi áp phần log phía sau - không cần MySQL.
+ * Client mới lấy snapshot() rồi chỉ cần changesAfter(seq) của snapshot đó.
+ */
+public final class UserChangeLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(UserChangeLog.class);
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".json";
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    /**
+     * Một event trong log
+     */
+    public record Change(long seq, String action, User user) {}
+
+    /**
+     * Danh sách user tại thời điểm seq
+     */
+    public record Snapshot(long seq, List<User> users) {}
+
+    private static final ObjectWriter CHANGE_WRITER = JsonConfig.writerFor(Change.class);
+    private static final ObjectReader CHANGE_READER = JsonConfig.readerFor(Change.class);
+    private static final ObjectWriter SNAPSHOT_WRITER = JsonConfig.writerFor(Snapshot.class);
+    private static final ObjectReader SNAPSHOT_READER = JsonConfig.readerFor(Snapshot.class);
+
+    private final Path dir;
+    private final MappedLog changes;
+    private final int snapshotEvery;
+    private final TreeMap<Integer, User> users = new TreeMap<>(); // guarded by this
+    private long lastSeq; // guarded by this
+    private long snapshotSeq; // seq của snapshot mới nhất trên đĩa, guarded by this
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "user-change-log-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public UserChangeLog(Path dir, int segmentBytes, int snapshotEvery) throws IOException {
+        this.dir = dir;
+        this.snapshotEvery = snapshotEvery;
+        Files.createDirectories(dir);
+        // Segment chỉ bị xóa khi đã có snapshot bao phủ
+        this.changes = new MappedLog(dir.resolve("changes"), segmentBytes, Integer.MAX_VALUE);
+        bootstrap();
+    }
+
+    private void bootstrap() throws IOException {
+        Path latest = latestSnapshot();
+        if (latest != null) {
+            Snapshot snapshot = SNAPSHOT_READER.readValue(latest.toFile());
+            for (User user : snapshot.users()) {
+                users.put(user.getId(), user);
+            }
+            snapshotSeq = snapshot.seq();
+            lastSeq = snapshot.seq();
+        }
+
+        long first = changes.firstSeq();
+        if (first > lastSeq + 1) {
+            log.warn("⚠️ User change log starts at {} but snapshot ends at {}, events in between are lost", first, lastSeq);
+        }
+        List<Change> tail = new ArrayList<>();
+        changes.readFrom(lastSeq, (seq, payload) -> tail.add(decode(payload)));
+        for (Change change : tail) {
+            apply(change);
+            lastSeq = change.seq();
+        }
+        log.info("📒 User change log loaded: {} users at seq {} ({} events after snapshot)", users.size(), lastSeq, tail.size());
+    }
+
+    /**
+     * Ghi các event theo thứ tự (gán seq vào từng event), trả về seq của event cuối
+     */
+    public long append(List<UserHandleDTO> events) {
+        boolean snapshotDue;
+        synchronized (this) {
+            for (UserHandleDTO event : events) {
+                Change change = new Change(lastSeq + 1, event.getAction(), event.getUser());
+                try {
+                    changes.append(change.seq(), CHANGE_WRITER.writeValueAsBytes(change));
+                } catch (IOException e) {
+                    log.error("❌ Failed to append user change {}: {}", change.seq(), e.getMessage());
+                    continue;
+                }
+                apply(change);
+                lastSeq = change.seq();
+                event.setSeq(change.seq()); // client so với seq của snapshot để bỏ event đã có
+            }
+            snapshotDue = lastSeq - snapshotSeq >= snapshotEvery;
+        }
+        if (snapshotDue && snapshotRunning.compareAndSet(false, true)) {
+            snapshotExecutor.execute(() -> {
+                try {
+                    writeSnapshot();
+                } finally {
+                    snapshotRunning.set(false);
+                }
+            });
+        }
+        return lastSeq();
+    }
+
+    /**
+     * Log mới (chưa có event/snapshot): lấy danh sách ban đầu từ nguồn khác (vd. DB) và ghi snapshot seq 0
+     */
+    public void seedIfEmpty(Supplier<List<User>> source) {
+        synchronized (this) {
+            if (lastSeq != 0 || !users.isEmpty()) {
+                return;
+            }
+            List<User> initial = source.get();
+            if (initial == null || initial.isEmpty()) {
+                return;
+            }
+            for (User user : initial) {
+                users.put(user.getId(), user);
+            }
+        }
+        writeSnapshot();
+    }
+
+    private void apply(Change change) {
+        User user = change.user();
+        if (user == null) {
+            return;
+        }
+        if ("delete".equals(change.action())) {
+            users.remove(user.getId());
+        } else {
+            users.put(user.getId(), user);
+        }
+    }
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Bản copy danh sách user hiện tại kèm seq
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(lastSeq, new ArrayList<>(users.values()));
+    }
+
+    /**
+     * Các event sau seq kèm seq mới nhất (đọc cùng một lần khóa - seq trả về khớp đúng event cuối trong danh sách),
+     * null nếu phần đó đã bị gộp vào snapshot (client phải lấy snapshot mới)
+     */
+    public synchronized UserChangesDTO changesAfter(long seq) {
+        if (seq >= lastSeq) {
+            return new UserChangesDTO(lastSeq, List.of());
+        }
+        long first = changes.firstSeq();
+        if (seq < 0 || first < 0 || first > seq + 1) {
+            return null;
+        }
+        List<Change> result = new ArrayList<>();
+        changes.readFrom(seq, (s, payload) -> result.add(decode(payload)));
+        return new UserChangesDTO(lastSeq, result);
+    }
+
+    /**
+     * Ghi snapshot (file tạm rồi rename nguyên tử), xóa snapshot cũ và các segment log đã được bao phủ
+     */
+    public void writeSnapshot() {
+        Snapshot snapshot = snapshot();
+        try {
+            Path file = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, snapshot.seq(), SNAPSHOT_SUFFIX));
+            Path tmp = dir.resolve(file.getFileName() + ".tmp");
+            SNAPSHOT_WRITER.writeValue(tmp.toFile(), snapshot);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            synchronized (this) {
+                snapshotSeq = Math.max(snapshotSeq, snapshot.seq());
+            }
+            changes.deleteUpTo(snapshot.seq());
+            deleteOldSnapshots();
+            log.info("📸 User snapshot at seq {} ({} users)", snapshot.seq(), snapshot.users().size());
+        } catch (IOException e) {
+            log.error("❌ Failed to write user snapshot: {}", e.getMessage());
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private Path latestSnapshot() throws IOException {
+        List<Path> all = snapshots();
+        return all.isEmpty() ? null : all.get(all.size() - 1);
+    }
+
+    private void deleteOldSnapshots() throws IOException {
+        List<Path> all = snapshots();
+        for (int i = 0; i < all.size() - SNAPSHOTS_KEPT; i++) {
+            Files.deleteIfExists(all.get(i));
+        }
+    }
+
+    private static Change decode(byte[] payload) {
+        try {
+            return CHANGE_READER.readValue(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted user change record", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        snapshotExecutor.shutdown();
+        changes.close();
+    }
+}
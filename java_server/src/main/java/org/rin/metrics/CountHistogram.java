@@ -0,0 +1,56 @@
+package org.rin.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram cho số lượng (số người nhận của một lần fan-out, số dòng...), bucket cố định 0 .. 100000 thêm +Inf.
+ * Cùng cách ghi với LatencyHistogram: LongAdder mỗi bucket, không khóa.
+ */
+public final class CountHistogram {
+
+    // Cận trên của từng bucket, bucket cuối là +Inf
+    static final long[] BOUNDS = {
+            0, 1, 2, 5, 10, 25, 50, 100, 250, 500,
+            1_000, 2_500, 5_000, 10_000, 25_000, 100_000
+    };
+
+    private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+
+    public CountHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < BOUNDS.length && value > BOUNDS[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sum.add(value);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            copy[i] = counts[i].sum();
+        }
+        return new Snapshot(copy, sum.sum());
+    }
+
+    /**
+     * Số đếm theo bucket tại một thời điểm
+     */
+    public record Snapshot(long[] counts, long sum) {
+
+        public long count() {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.rin.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bộ đếm chỉ tăng, ghi không khóa bằng LongAdder
+ */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    public long value() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,122 @@
+package org.rin.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram độ trễ với các bucket cố định (50µs .. 10s, thêm +Inf), ghi không khóa bằng LongAdder.
+ * Số đếm cộng dồn từ lúc khởi động; muốn số liệu theo cửa sổ thì lấy hai snapshot rồi minus.
+ */
+public final class LatencyHistogram {
+
+    // Cận trên của từng bucket (micro giây), bucket cuối là +Inf
+    static final long[] BOUNDS_MICROS = {
+            50, 100, 250, 500,
+            1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000
+    };
+
+    private final LongAdder[] counts = new LongAdder[BOUNDS_MICROS.length + 1];
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = nanos / 1_000;
+        int i = 0;
+        while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sumMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            copy[i] = counts[i].sum();
+        }
+        return new Snapshot(copy, sumMicros.sum(), maxMicros.get());
+    }
+
+    /**
+     * Số đếm theo bucket tại một thời điểm
+     */
+    public record Snapshot(long[] counts, long sumMicros, long maxMicros) {
+
+        public long count() {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            return total;
+        }
+
+        /**
+         * Phần phát sinh sau prev (max giữ nguyên vì không trừ được)
+         */
+        public Snapshot minus(Snapshot prev) {
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                diff[i] = counts[i] - prev.counts[i];
+            }
+            return new Snapshot(diff, sumMicros - prev.sumMicros, maxMicros);
+        }
+
+        public double meanMillis() {
+            long count = count();
+            return count == 0 ? 0 : sumMicros / 1000.0 / count;
+        }
+
+        /**
+         * Percentile ước lượng (ms), nội suy tuyến tính trong bucket chứa nó
+         */
+        public double percentileMillis(double p) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            double rank = p * count;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0 && seen + counts[i] >= rank) {
+                    long lower = i == 0 ? 0 : BOUNDS_MICROS[i - 1];
+                    long upper = i < BOUNDS_MICROS.length ? BOUNDS_MICROS[i] : Math.max(maxMicros, lower);
+                    double fraction = (rank - seen) / counts[i];
+                    // Không vượt quá giá trị lớn nhất đã thấy
+                    return Math.min(lower + (upper - lower) * fraction, Math.max(maxMicros, lower)) / 1000.0;
+                }
+                seen += counts[i];
+            }
+            return maxMicros / 1000.0;
+        }
+
+        /**
+         * Dạng gọn để trả JSON
+         */
+        public Map<String, Object> summary() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("count", count());
+            out.put("meanMs", round(meanMillis()));
+            out.put("p50Ms", round(percentileMillis(0.50)));
+            out.put("p95Ms", round(percentileMillis(0.95)));
+            out.put("p99Ms", round(percentileMillis(0.99)));
+            out.put("maxMs", round(maxMicros / 1000.0));
+            return out;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1000) / 1000.0;
+        }
+    }
+}
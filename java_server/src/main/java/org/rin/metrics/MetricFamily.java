@@ -0,0 +1,118 @@
+package org.rin.metrics;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Một metric theo tên + các series theo giá trị label.
+ * labels(...) của series đã có chỉ là một lần tra map (một label: không cấp phát) - series nên được giữ lại
+ * ở chỗ gọi khi giá trị label cố định. Số series bị chặn ở maxSeries, phần vượt gộp vào label "other"
+ * để label sinh động (topic, SQL...) không làm phình bộ nhớ.
+ */
+public final class MetricFamily<T> {
+
+    static final String OVERFLOW = "other";
+
+    /**
+     * Kiểu metric theo Prometheus
+     */
+    public enum Type {
+        COUNTER, GAUGE, HISTOGRAM;
+
+        private final String text = name().toLowerCase();
+
+        String text() {
+            return text;
+        }
+    }
+
+    /**
+     * Một series: giá trị label + metric
+     */
+    record Series<T>(String[] labelValues, T metric) {}
+
+    private final String name;
+    private final String help;
+    private final Type type;
+    private final String[] labelNames;
+    private final Supplier<T> factory;
+    private final int maxSeries;
+    private final Map<String, Series<T>> series = new ConcurrentHashMap<>();
+
+    MetricFamily(String name, String help, Type type, String[] labelNames, Supplier<T> factory, int maxSeries) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labelNames = labelNames;
+        this.factory = factory;
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * Series duy nhất của metric không có label
+     */
+    public T get() {
+        return labels();
+    }
+
+    public T labels(String value) {
+        Series<T> found = series.get(value);
+        if (found != null) {
+            return found.metric();
+        }
+        if (labelNames.length != 1) {
+            throw new IllegalArgumentException(name + " expects labels " + String.join(",", labelNames));
+        }
+        return create(value, new String[]{value});
+    }
+
+    public T labels(String... values) {
+        if (values.length != labelNames.length) {
+            throw new IllegalArgumentException(name + " expects labels " + String.join(",", labelNames));
+        }
+        if (values.length == 1) {
+            return labels(values[0]);
+        }
+        if (values.length == 0) {
+            return create("", values);
+        }
+        String key = String.join("\u0001", values);
+        Series<T> found = series.get(key);
+        if (found != null) {
+            return found.metric();
+        }
+        return create(key, values.clone());
+    }
+
+    private T create(String key, String[] values) {
+        if (series.size() >= maxSeries) {
+            String[] overflow = new String[values.length];
+            Arrays.fill(overflow, OVERFLOW);
+            return series.computeIfAbsent("\u0000" + OVERFLOW, k -> new Series<>(overflow, factory.get())).metric();
+        }
+        return series.computeIfAbsent(key, k -> new Series<>(values, factory.get())).metric();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    String help() {
+        return help;
+    }
+
+    Type type() {
+        return type;
+    }
+
+    String[] labelNames() {
+        return labelNames;
+    }
+
+    Collection<Series<T>> series() {
+        return series.values();
+    }
+}
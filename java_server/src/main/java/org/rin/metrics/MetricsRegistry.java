@@ -0,0 +1,89 @@
+package org.rin.metrics;
+
+import org.rin.config.EnvConfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry metric dùng chung cho cả node, xuất ra Prometheus text ở /metrics.
+ * - counter/latency/histogram: metric ghi trên hot path, giữ series lại ở chỗ gọi
+ * - gauge/collector: đọc số liệu sẵn có (pool DB, số session...) lúc scrape, không tốn gì trên hot path
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    // Số series tối đa của mỗi metric có label
+    private final int maxSeries = EnvConfig.getInt("METRICS_MAX_SERIES", 1000);
+
+    private final Map<String, MetricFamily<?>> families = new LinkedHashMap<>(); // guarded by this
+    private final List<Consumer<PrometheusText>> collectors = new ArrayList<>(); // guarded by this
+
+    private MetricsRegistry() {}
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public MetricFamily<Counter> counter(String name, String help, String... labelNames) {
+        return family(name, help, MetricFamily.Type.COUNTER, labelNames, Counter::new);
+    }
+
+    public MetricFamily<LatencyHistogram> latency(String name, String help, String... labelNames) {
+        return family(name, help, MetricFamily.Type.HISTOGRAM, labelNames, LatencyHistogram::new);
+    }
+
+    public MetricFamily<CountHistogram> histogram(String name, String help, String... labelNames) {
+        return family(name, help, MetricFamily.Type.HISTOGRAM, labelNames, CountHistogram::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> MetricFamily<T> family(String name, String help, MetricFamily.Type type,
+                                                    String[] labelNames, Supplier<T> factory) {
+        // Đăng ký lại cùng tên trả về metric đã có
+        MetricFamily<?> existing = families.get(name);
+        if (existing != null) {
+            if (existing.type() != type) {
+                throw new IllegalArgumentException("Metric " + name + " already registered as " + existing.type());
+            }
+            return (MetricFamily<T>) existing;
+        }
+        MetricFamily<T> family = new MetricFamily<>(name, help, type, labelNames, factory, maxSeries);
+        families.put(name, family);
+        return family;
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value) {
+        collector(out -> out.single(name, help, MetricFamily.Type.GAUGE, value.getAsDouble()));
+    }
+
+    /**
+     * Collector tự ghi metric của nó lúc scrape
+     */
+    public synchronized void collector(Consumer<PrometheusText> collector) {
+        collectors.add(collector);
+    }
+
+    public String scrape() {
+        List<MetricFamily<?>> familySnapshot;
+        List<Consumer<PrometheusText>> collectorSnapshot;
+        synchronized (this) {
+            familySnapshot = new ArrayList<>(families.values());
+            collectorSnapshot = new ArrayList<>(collectors);
+        }
+        PrometheusText out = new PrometheusText();
+        for (MetricFamily<?> family : familySnapshot) {
+            out.family(family);
+        }
+        for (Consumer<PrometheusText> collector : collectorSnapshot) {
+            collector.accept(out);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package org.rin.metrics;
+
+import java.math.BigDecimal;
+
+/**
+ * Ghi metric theo Prometheus text format 0.0.4 (https://prometheus.io/docs/instrumenting/exposition_formats/).
+ * Histogram độ trễ xuất theo giây, bucket cộng dồn kèm _sum/_count.
+ */
+public final class PrometheusText {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] NO_LABELS = new String[0];
+    private static final String[] LATENCY_LE = le(LatencyHistogram.BOUNDS_MICROS, 6);
+    private static final String[] COUNT_LE = le(CountHistogram.BOUNDS, 0);
+
+    private final StringBuilder out = new StringBuilder(8 * 1024);
+
+    private static String[] le(long[] bounds, int scale) {
+        String[] le = new String[bounds.length + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            le[i] = BigDecimal.valueOf(bounds[i], scale).stripTrailingZeros().toPlainString();
+        }
+        le[bounds.length] = "+Inf";
+        return le;
+    }
+
+    public PrometheusText header(String name, String help, MetricFamily.Type type) {
+        out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type.text()).append('\n');
+        return this;
+    }
+
+    public PrometheusText sample(String name, String[] labelNames, String[] labelValues, double value) {
+        return sample(name, labelNames, labelValues, null, null, value);
+    }
+
+    private PrometheusText sample(String name, String[] labelNames, String[] labelValues,
+                                  String extraName, String extraValue, double value) {
+        out.append(name);
+        if (labelNames.length > 0 || extraName != null) {
+            out.append('{');
+            for (int i = 0; i < labelNames.length; i++) {
+                label(i > 0, labelNames[i], labelValues[i]);
+            }
+            if (extraName != null) {
+                label(labelNames.length > 0, extraName, extraValue);
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+        return this;
+    }
+
+    private void label(boolean comma, String name, String value) {
+        if (comma) {
+            out.append(',');
+        }
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Metric một giá trị không label (dùng trong collector)
+     */
+    public PrometheusText single(String name, String help, MetricFamily.Type type, double value) {
+        header(name, help, type);
+        return sample(name, NO_LABELS, NO_LABELS, value);
+    }
+
+    public PrometheusText latency(String name, String[] labelNames, String[] labelValues, LatencyHistogram.Snapshot snapshot) {
+        long cumulative = 0;
+        long[] counts = snapshot.counts();
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            sample(name + "_bucket", labelNames, labelValues, "le", LATENCY_LE[i], cumulative);
+        }
+        sample(name + "_sum", labelNames, labelValues, snapshot.sumMicros() / 1_000_000.0);
+        return sample(name + "_count", labelNames, labelValues, cumulative);
+    }
+
+    public PrometheusText histogram(String name, String[] labelNames, String[] labelValues, CountHistogram.Snapshot snapshot) {
+        long cumulative = 0;
+        long[] counts = snapshot.counts();
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            sample(name + "_bucket", labelNames, labelValues, "le", COUNT_LE[i], cumulative);
+        }
+        sample(name + "_sum", labelNames, labelValues, snapshot.sum());
+        return sample(name + "_count", labelNames, labelValues, cumulative);
+    }
+
+    /**
+     * Ghi cả family (mọi series) theo kiểu của nó
+     */
+    void family(MetricFamily<?> family) {
+        header(family.name(), family.help(), family.type());
+        String[] labelNames = family.labelNames();
+        for (MetricFamily.Series<?> series : family.series()) {
+            Object metric = series.metric();
+            String[] values = series.labelValues();
+            if (metric instanceof Counter counter) {
+                sample(family.name(), labelNames, values, counter.value());
+            } else if (metric instanceof LatencyHistogram histogram) {
+                latency(family.name(), labelNames, values, histogram.snapshot());
+            } else if (metric instanceof CountHistogram histogram) {
+                histogram(family.name(), labelNames, values, histogram.snapshot());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
@@ -13,6 +13,7 @@ public class User {
     private int id;
     private String name;
     private String phone;
+    private Integer version; // optimistic locking, null = không rõ / không kiểm tra
     public User() {}
 
     public User(int id, String name, String phone) {
@@ -21,11 +22,18 @@ public class User {
         this.phone = phone;
     }
 
+    public User(int id, String name, String phone, Integer version) {
+        this(id, name, phone);
+        this.version = version;
+    }
+
     // Getter / Setter
     public int getId() { return id; }
     public String getName() { return name; }
     public String getPhone() { return phone; }
+    public Integer getVersion() { return version; }
 
     public void setName(String name) { this.name = name; }
     public void setPhone(String phone) { this.phone = phone; }
+    public void setVersion(Integer version) { this.version = version; }
 }
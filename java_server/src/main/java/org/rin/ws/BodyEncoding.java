@@ -0,0 +1,45 @@
+package org.rin.ws;
+
+import org.rin.config.JsonConfig;
+
+import java.io.IOException;
+
+/**
+ * Encoding body của MESSAGE frame, client chọn lúc CONNECT qua header "body-encoding"
+ */
+public enum BodyEncoding {
+    JSON("application/json"),
+    CBOR("application/cbor"); // nhỏ hơn JSON, encode nhanh hơn
+
+    private final String contentType;
+
+    BodyEncoding(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Encode object gốc, hoặc chuyển từ JSON khi chỉ còn body (message nhận từ node khác)
+     */
+    byte[] encode(Object value, byte[] json) throws IOException {
+        Object source = value != null ? value : JsonConfig.readTree(json);
+        return this == CBOR ? JsonConfig.toCbor(source) : JsonConfig.toBytes(source);
+    }
+
+    /**
+     * Giá trị header không hợp lệ/không có -> JSON như trước
+     */
+    public static BodyEncoding fromHeader(String value) {
+        if (value != null) {
+            for (BodyEncoding encoding : values()) {
+                if (encoding.name().equalsIgnoreCase(value.trim())) {
+                    return encoding;
+                }
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,192 @@
+package org.rin.ws;
+
+import org.rin.config.EnvConfig;
+import org.rin.dto.UserHandleDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tầng gom change event giữa controller và WSConfig.
+ * Event của mỗi topic được giữ lại tối đa maxDelayMillis (hoặc tới khi đủ maxBatchSize),
+ * các event cùng user id được gộp lại, sau đó gửi MỘT frame dạng mảng UserHandleDTO[].
+ */
+public class ChangeEventPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeEventPipeline.class);
+
+    /**
+     * Thứ tự event trong frame
+     */
+    public enum Ordering {
+        STRICT,      // không gộp, giữ nguyên thứ tự phát sinh
+        FIRST_SEEN,  // gộp theo user id, giữ vị trí lần xuất hiện đầu tiên
+        LAST_SEEN    // gộp theo user id, chuyển xuống vị trí lần xuất hiện cuối
+    }
+
+    /**
+     * maxDelayMillis <= 0: không gom, gửi ngay như trước
+     */
+    public record TopicPolicy(long maxDelayMillis, int maxBatchSize, Ordering ordering) {}
+
+    // Singleton instance
+    private static ChangeEventPipeline instance;
+
+    private final WSConfig wsConfig = WSConfig.getInstance();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "change-event-pipeline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final TopicPolicy defaultPolicy = new TopicPolicy(
+            EnvConfig.getLong("WS_EVENT_MAX_DELAY_MS", 50),
+            EnvConfig.getInt("WS_EVENT_MAX_BATCH", 500),
+            EnvConfig.getEnum("WS_EVENT_ORDERING", Ordering.class, Ordering.FIRST_SEEN));
+    private final Map<String, TopicPolicy> policies = new ConcurrentHashMap<>();
+    private final Map<String, TopicBuffer> buffers = new ConcurrentHashMap<>();
+
+    private ChangeEventPipeline() {}
+
+    public static synchronized ChangeEventPipeline getInstance() {
+        if (instance == null) {
+            instance = new ChangeEventPipeline();
+        }
+        return instance;
+    }
+
+    /**
+     * Cấu hình riêng cho một topic, áp dụng cho các event publish sau đó
+     */
+    public void configure(String topic, TopicPolicy policy) {
+        policies.put(topic, policy);
+        TopicBuffer old = buffers.remove(topic);
+        if (old != null) {
+            old.flush();
+        }
+    }
+
+    public void publish(String topic, UserHandleDTO event) {
+        publishAll(topic, List.of(event));
+    }
+
+    public void publishAll(String topic, List<UserHandleDTO> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        TopicPolicy policy = policies.getOrDefault(topic, defaultPolicy);
+        if (policy.maxDelayMillis() <= 0) {
+            send(topic, events);
+            return;
+        }
+        buffers.computeIfAbsent(topic, t -> new TopicBuffer(t, policy)).add(events);
+    }
+
+    /**
+     * Gửi ngay mọi event đang chờ (dùng khi shutdown)
+     */
+    public void flushAll() {
+        for (TopicBuffer buffer : buffers.values()) {
+            buffer.flush();
+        }
+    }
+
+    public void shutdown() {
+        flushAll();
+        scheduler.shutdown();
+    }
+
+    private void send(String topic, List<UserHandleDTO> events) {
+        try {
+            wsConfig.buildAndSendToTopic(topic, events);
+        } catch (Exception e) {
+            log.error("❌ Failed to publish {} events to {}: {}", events.size(), topic, e.getMessage());
+        }
+    }
+
+    /**
+     * Gộp 2 event liên tiếp của cùng một user, null = triệt tiêu nhau
+     */
+    static UserHandleDTO merge(UserHandleDTO previous, UserHandleDTO next) {
+        if ("add".equals(previous.getAction())) {
+            if ("delete".equals(next.getAction())) {
+                return null; // client chưa từng thấy user này
+            }
+            return new UserHandleDTO(next.getUser(), "add");
+        }
+        return next;
+    }
+
+    private final class TopicBuffer {
+        private final String topic;
+        private final TopicPolicy policy;
+
+        private final List<UserHandleDTO> strict = new ArrayList<>();
+        private final LinkedHashMap<Integer, UserHandleDTO> byUser = new LinkedHashMap<>();
+        private ScheduledFuture<?> scheduledFlush;
+
+        TopicBuffer(String topic, TopicPolicy policy) {
+            this.topic = topic;
+            this.policy = policy;
+        }
+
+        synchronized void add(List<UserHandleDTO> events) {
+            for (UserHandleDTO event : events) {
+                if (policy.ordering() == Ordering.STRICT) {
+                    strict.add(event);
+                    continue;
+                }
+                int id = event.getUser().getId();
+                UserHandleDTO previous = byUser.get(id);
+                UserHandleDTO merged = previous == null ? event : merge(previous, event);
+                if (merged == null || policy.ordering() == Ordering.LAST_SEEN) {
+                    byUser.remove(id);
+                }
+                if (merged != null) {
+                    byUser.put(id, merged);
+                }
+            }
+
+            if (size() >= policy.maxBatchSize()) {
+                flush();
+            } else if (scheduledFlush == null && size() > 0) {
+                // Độ trễ tối đa tính từ event đầu tiên của batch
+                scheduledFlush = scheduler.schedule(this::flush, policy.maxDelayMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void flush() {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (size() == 0) {
+                return;
+            }
+
+            List<UserHandleDTO> batch;
+            if (policy.ordering() == Ordering.STRICT) {
+                batch = new ArrayList<>(strict);
+                strict.clear();
+            } else {
+                batch = new ArrayList<>(byUser.values());
+                byUser.clear();
+            }
+            // Gửi trong lock để các batch của cùng topic không bị đảo thứ tự
+            send(topic, batch);
+        }
+
+        private int size() {
+            return policy.ordering() == Ordering.STRICT ? strict.size() : byUser.size();
+        }
+    }
+}
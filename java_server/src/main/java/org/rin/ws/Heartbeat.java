@@ -0,0 +1,117 @@
+package org.rin.ws;
+
+import org.eclipse.jetty.websocket.api.Session;
+
+import java.util.function.Consumer;
+
+/**
+ * Trạng thái heartbeat của một session, chạy trên HeartbeatWheel.
+ * - outgoing: server gửi EOL nếu không có frame nào được ghi trong khoảng này
+ * - incoming: không nhận được gì quá incoming + grace -> session chết. grace mặc định 0: session bị gỡ trong vòng
+ *   một chu kỳ heartbeat (cộng tối đa một tick của wheel) kể từ lần đọc cuối; grace > 0 để chịu thêm độ trễ mạng
+ * - ping: session không thương lượng heartbeat gửi đi thì dùng WebSocket ping để giữ kết nối
+ */
+final class Heartbeat implements HeartbeatWheel.Task {
+
+    private final String sessionId;
+    private final Session session;
+    private final OutboundQueue queue;
+    private final long outgoingMillis;  // 0 = không gửi heartbeat
+    private final long incomingMillis;  // 0 = không kiểm tra
+    private final long graceMillis;
+    private final long pingMillis;
+    private final Consumer<String> onDead;
+
+    private volatile long lastReadMillis = System.currentTimeMillis();
+    private long lastPingMillis = System.currentTimeMillis();
+    private HeartbeatWheel.Timeout timeout;
+
+    Heartbeat(String sessionId, Session session, OutboundQueue queue, long outgoingMillis, long incomingMillis,
+              long graceMillis, long pingMillis, Consumer<String> onDead) {
+        this.sessionId = sessionId;
+        this.session = session;
+        this.queue = queue;
+        this.outgoingMillis = outgoingMillis;
+        this.incomingMillis = incomingMillis;
+        this.graceMillis = Math.max(graceMillis, 0);
+        this.pingMillis = pingMillis;
+        this.onDead = onDead;
+    }
+
+    /**
+     * Thương lượng theo STOMP 1.2: mỗi chiều lấy max của hai bên, 0 ở một bên = tắt chiều đó.
+     * Trả về {server gửi, server nhận}
+     */
+    static long[] negotiate(String clientHeader, long serverSend, long serverReceive) {
+        long clientSend = 0;
+        long clientReceive = 0;
+        if (clientHeader != null) {
+            int comma = clientHeader.indexOf(',');
+            if (comma > 0) {
+                try {
+                    clientSend = Long.parseLong(clientHeader.substring(0, comma).trim());
+                    clientReceive = Long.parseLong(clientHeader.substring(comma + 1).trim());
+                } catch (NumberFormatException ignored) {
+                    clientSend = 0;
+                    clientReceive = 0;
+                }
+            }
+        }
+        long outgoing = serverSend == 0 || clientReceive <= 0 ? 0 : Math.max(serverSend, clientReceive);
+        long incoming = serverReceive == 0 || clientSend <= 0 ? 0 : Math.max(serverReceive, clientSend);
+        return new long[]{outgoing, incoming};
+    }
+
+    void start(HeartbeatWheel wheel, long initialDelayMillis) {
+        timeout = wheel.schedule(this, initialDelayMillis);
+    }
+
+    void cancel() {
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Có dữ liệu từ client (frame hoặc heartbeat EOL)
+     */
+    void touch() {
+        lastReadMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public long run(long now) {
+        if (!session.isOpen()) {
+            onDead.accept(sessionId);
+            return 0;
+        }
+
+        long next = Long.MAX_VALUE;
+        if (incomingMillis > 0) {
+            long deadline = lastReadMillis + incomingMillis + graceMillis;
+            if (now > deadline) {
+                onDead.accept(sessionId);
+                return 0;
+            }
+            next = deadline - now + 1;
+        }
+
+        if (outgoingMillis > 0) {
+            long due = queue.lastWriteMillis() + outgoingMillis;
+            if (now >= due) {
+                queue.sendText("\n");
+                due = now + outgoingMillis;
+            }
+            next = Math.min(next, due - now);
+        } else if (pingMillis > 0) {
+            long due = lastPingMillis + pingMillis;
+            if (now >= due) {
+                queue.sendPing();
+                lastPingMillis = now;
+                due = now + pingMillis;
+            }
+            next = Math.min(next, due - now);
+        }
+        return next == Long.MAX_VALUE ? 0 : next;
+    }
+}
@@ -0,0 +1,147 @@
+package org.rin.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel cho heartbeat: mỗi tick chỉ xử lý các timer của một bucket,
+ * chi phí schedule/cancel O(1) bất kể số session. Các task chạy trên thread của wheel nên phải nhanh, không block.
+ */
+final class HeartbeatWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatWheel.class);
+
+    /**
+     * Trả về số ms tới lần chạy tiếp theo, <= 0 để dừng
+     */
+    interface Task {
+        long run(long nowMillis);
+    }
+
+    static final class Timeout {
+        private final Task task;
+        private long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Task task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final ArrayDeque<Timeout>[] buckets;
+    // Timer mới từ thread khác, chuyển vào bucket ở đầu mỗi tick
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startMillis;
+    private long tick;
+    private volatile boolean running = true;
+
+    @SuppressWarnings("unchecked")
+    HeartbeatWheel(long tickMillis, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1; // làm tròn lên lũy thừa của 2
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = (ArrayDeque<Timeout>[]) new ArrayDeque<?>[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startMillis = System.currentTimeMillis();
+        this.worker = Thread.ofPlatform().daemon().name("heartbeat-wheel").start(this::loop);
+    }
+
+    Timeout schedule(Task task, long delayMillis) {
+        Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(delayMillis, 0));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void loop() {
+        while (running) {
+            long nextTickAt = startMillis + (tick + 1) * tickMillis;
+            long sleep = nextTickAt - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null) {
+                place(timeout);
+            }
+            expire(System.currentTimeMillis());
+            tick++;
+        }
+    }
+
+    private void place(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        long ticks = Math.max((timeout.deadline - startMillis) / tickMillis, tick);
+        timeout.rounds = (ticks - tick) / buckets.length;
+        buckets[(int) (ticks & mask)].add(timeout);
+    }
+
+    private void expire(long now) {
+        ArrayDeque<Timeout> bucket = buckets[(int) (tick & mask)];
+        // Task chạy lại được đặt sau vòng lặp để không rơi lại vào chính bucket đang duyệt
+        ArrayDeque<Timeout> rescheduled = null;
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+                continue;
+            }
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            it.remove();
+
+            long next;
+            try {
+                next = timeout.task.run(now);
+            } catch (Exception e) {
+                log.error("❌ Heartbeat task failed: {}", e.getMessage());
+                continue;
+            }
+            if (next > 0 && !timeout.cancelled) {
+                timeout.deadline = now + Math.max(next, tickMillis);
+                if (rescheduled == null) {
+                    rescheduled = new ArrayDeque<>();
+                }
+                rescheduled.add(timeout);
+            }
+        }
+        if (rescheduled != null) {
+            tick++; // tính vị trí từ tick kế tiếp
+            for (Timeout timeout : rescheduled) {
+                place(timeout);
+            }
+            tick--;
+        }
+    }
+}
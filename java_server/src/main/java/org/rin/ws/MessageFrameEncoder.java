@@ -0,0 +1,154 @@
+package org.rin.ws;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dựng byte cho MESSAGE frame:
+ * - message-id = "&lt;node&gt;-&lt;thời điểm khởi động&gt;-&lt;counter&gt;", tăng đơn điệu, không khóa, không dùng SecureRandom
+ * - header destination / content-type / subscription encode một lần rồi cache
+ * - frame ghi vào direct buffer lấy từ pool, trả lại khi gửi xong
+ */
+final class MessageFrameEncoder {
+
+    private static final byte[] COMMAND_AND_SUBSCRIPTION = "MESSAGE\nsubscription:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_ID = "\nmessage-id:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DESTINATION = "destination:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_TYPE = "\ncontent-type:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_LENGTH = "\ncontent-length:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEQ = "\nseq:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REPLAY_GAP = "\nreplay-gap:true".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MAX_LONG_DIGITS = 19;
+
+    // Thời điểm khởi động nằm trong id để node restart với cùng CLUSTER_NODE_ID không lặp lại id cũ
+    private final byte[] messageIdPrefix;
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final int maxCachedHeaders;
+    private final Map<String, byte[]> destinationHeaders = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> contentTypeHeaders = new ConcurrentHashMap<>();
+    // "MESSAGE\nsubscription:<id>\nmessage-id:<node>-<epoch>-" theo subscription id
+    private final Map<String, byte[]> subscriptionHeaders = new ConcurrentHashMap<>();
+
+    private final DirectBufferPool framePool;
+    private final DirectBufferPool prefixPool;
+
+    MessageFrameEncoder(String nodeId, int maxCachedHeaders, int frameBufferSize, int maxPooledBuffers) {
+        String prefix = nodeId + "-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+        this.messageIdPrefix = StompMessageFrame.escapeHeader(prefix).getBytes(StandardCharsets.UTF_8);
+        this.maxCachedHeaders = maxCachedHeaders;
+        this.framePool = new DirectBufferPool(frameBufferSize, maxPooledBuffers);
+        this.prefixPool = new DirectBufferPool(256, maxPooledBuffers);
+    }
+
+    /**
+     * Phần dùng chung của frame: "destination:...\ncontent-type:...[\nseq:...]\ncontent-length:N\n\n&lt;body&gt;\0"
+     */
+    StompMessageFrame encode(String destination, String contentType, byte[] body, String seq) {
+        byte[] seqHeader = seq != null ? StompMessageFrame.escapeHeader(seq).getBytes(StandardCharsets.UTF_8) : null;
+        return encode(destination, contentType, body, seqHeader, false);
+    }
+
+    /**
+     * Frame rỗng báo client không thể replay từ vị trí nó yêu cầu - client phải tải lại toàn bộ rồi tiếp tục từ seq
+     */
+    StompMessageFrame encodeGap(String destination, String seq) {
+        return encode(destination, "text/plain", EMPTY, StompMessageFrame.escapeHeader(seq).getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    private StompMessageFrame encode(String destination, String contentType, byte[] body, byte[] seq, boolean gap) {
+        byte[] destinationHeader = cached(destinationHeaders, destination, DESTINATION);
+        byte[] contentTypeHeader = cached(contentTypeHeaders, contentType, CONTENT_TYPE);
+
+        int size = destinationHeader.length + contentTypeHeader.length
+                + (seq != null ? SEQ.length + seq.length : 0) + (gap ? REPLAY_GAP.length : 0)
+                + CONTENT_LENGTH.length + MAX_LONG_DIGITS + 2 + body.length + 1;
+        ByteBuffer buffer = framePool.acquire(size);
+        buffer.put(destinationHeader).put(contentTypeHeader);
+        if (seq != null) {
+            buffer.put(SEQ).put(seq);
+        }
+        if (gap) {
+            buffer.put(REPLAY_GAP);
+        }
+        buffer.put(CONTENT_LENGTH);
+        putDecimal(buffer, body.length);
+        buffer.put((byte) '\n').put((byte) '\n').put(body).put((byte) 0).flip();
+        return new StompMessageFrame(destination, buffer, this);
+    }
+
+    void release(ByteBuffer frameBuffer) {
+        framePool.release(frameBuffer);
+    }
+
+    /**
+     * Prefix riêng của một lần giao: "MESSAGE\nsubscription:&lt;id&gt;\nmessage-id:&lt;id mới&gt;\n".
+     * Trả lại bằng releasePrefix sau khi ghi xong.
+     */
+    ByteBuffer prefix(String subscriptionId) {
+        byte[] header = subscriptionHeaders.get(subscriptionId);
+        if (header == null) {
+            byte[] sub = StompMessageFrame.escapeHeader(subscriptionId).getBytes(StandardCharsets.UTF_8);
+            header = new byte[COMMAND_AND_SUBSCRIPTION.length + sub.length + MESSAGE_ID.length + messageIdPrefix.length];
+            int pos = 0;
+            System.arraycopy(COMMAND_AND_SUBSCRIPTION, 0, header, pos, COMMAND_AND_SUBSCRIPTION.length);
+            pos += COMMAND_AND_SUBSCRIPTION.length;
+            System.arraycopy(sub, 0, header, pos, sub.length);
+            pos += sub.length;
+            System.arraycopy(MESSAGE_ID, 0, header, pos, MESSAGE_ID.length);
+            pos += MESSAGE_ID.length;
+            System.arraycopy(messageIdPrefix, 0, header, pos, messageIdPrefix.length);
+            put(subscriptionHeaders, subscriptionId, header);
+        }
+
+        ByteBuffer buffer = prefixPool.acquire(header.length + MAX_LONG_DIGITS + 1);
+        buffer.put(header);
+        putDecimal(buffer, nextId.getAndIncrement());
+        buffer.put((byte) '\n').flip();
+        return buffer;
+    }
+
+    void releasePrefix(ByteBuffer prefix) {
+        prefixPool.release(prefix);
+    }
+
+    private byte[] cached(Map<String, byte[]> cache, String value, byte[] name) {
+        byte[] header = cache.get(value);
+        if (header == null) {
+            byte[] escaped = StompMessageFrame.escapeHeader(value).getBytes(StandardCharsets.UTF_8);
+            header = new byte[name.length + escaped.length];
+            System.arraycopy(name, 0, header, 0, name.length);
+            System.arraycopy(escaped, 0, header, name.length, escaped.length);
+            put(cache, value, header);
+        }
+        return header;
+    }
+
+    private void put(Map<String, byte[]> cache, String key, byte[] header) {
+        // Destination động (vd. /user/{username}/...) có thể rất nhiều - quá giới hạn thì xóa cả cache
+        if (cache.size() >= maxCachedHeaders) {
+            cache.clear();
+        }
+        cache.put(key, header);
+    }
+
+    /**
+     * Ghi số không âm dạng thập phân ASCII, không tạo String
+     */
+    private static void putDecimal(ByteBuffer buffer, long value) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+}
@@ -0,0 +1,379 @@
+package org.rin.ws;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.rin.metrics.Counter;
+import org.rin.metrics.MetricFamily;
+import org.rin.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hàng đợi gửi có giới hạn cho một WebSocket session.
+ * Thread gọi (REST handler, broadcast...) chỉ enqueue rồi trả về ngay, việc ghi dùng async send của Jetty:
+ * callback của frame trước sẽ kích hoạt frame tiếp theo, mỗi lúc chỉ có một message đang ghi.
+ */
+public final class OutboundQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+
+    // Tổng của mọi session cho /metrics - số liệu theo session mất đi khi session đóng
+    private static final MetricFamily<Counter> FRAMES = MetricsRegistry.getInstance().counter(
+            "ws_outbound_frames_total", "Outbound WebSocket frames by result", "result");
+    private static final Counter SENT_TOTAL = FRAMES.labels("sent");
+    private static final Counter DROPPED_TOTAL = FRAMES.labels("dropped");
+    private static final Counter COALESCED_TOTAL = FRAMES.labels("coalesced");
+    private static final Counter FAILED_TOTAL = FRAMES.labels("failed");
+
+    /**
+     * Cách xử lý khi hàng đợi đầy
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,  // bỏ frame cũ nhất
+        COALESCE,     // thay frame cũ cùng subscription + destination bằng frame mới (chỉ topic latest-value), không có thì bỏ frame cũ nhất
+        DISCONNECT    // đóng session (slow consumer)
+    }
+
+    /**
+     * Một đơn vị gửi trong hàng đợi
+     */
+    interface Message {
+        /** Key để gộp khi tràn, null = không gộp */
+        Object coalesceKey();
+
+        void write(Session session, WriteCallback callback);
+
+        /** Frame bị bỏ không gửi (tràn hàng đợi, session đã đóng) */
+        default void discard() {}
+    }
+
+    /**
+     * Frame cùng key chỉ gộp được khi message mới thay thế hoàn toàn message cũ (trạng thái mới nhất).
+     * Topic gửi delta (thêm/sửa/xóa từng user...) không được gộp - mất delta là client lệch dữ liệu.
+     */
+    private record CoalesceKey(String subscriptionId, String destination) {}
+
+    public record Stats(String sessionId, int depth, int capacity, int highWatermark,
+                        long sent, long dropped, long coalesced, long failed) {}
+
+    private final String sessionId;
+    private final Session session;
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean inFlight;
+    private volatile boolean closed;
+    private volatile boolean flushBeforeClose; // closeAfterFlush đã xếp lệnh đóng, frame trước đó vẫn phải gửi
+    private volatile long lastWriteMillis = System.currentTimeMillis();
+
+    // Metrics
+    private volatile int highWatermark;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private final WriteCallback writeCallback = new WriteCallback() {
+        @Override
+        public void writeSuccess() {
+            sent.increment();
+            SENT_TOTAL.increment();
+            lastWriteMillis = System.currentTimeMillis();
+            inFlight = false;
+            drain();
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            failed.increment();
+            FAILED_TOTAL.increment();
+            // Session hỏng thì mọi frame sau cũng lỗi - chỉ warn lần đầu
+            if (failed.sum() == 1) {
+                log.warn("❌ Failed to send to session {}: {}", sessionId, x.getMessage());
+            } else {
+                log.debug("❌ Failed to send to session {}: {}", sessionId, x.getMessage());
+            }
+            inFlight = false;
+            drain();
+        }
+    };
+
+    public OutboundQueue(String sessionId, Session session, int capacity, OverflowPolicy policy) {
+        this.sessionId = sessionId;
+        this.session = session;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public void sendText(String frame) {
+        offer(new Message() {
+            @Override
+            public Object coalesceKey() {
+                return null;
+            }
+
+            @Override
+            public void write(Session session, WriteCallback callback) {
+                session.getRemote().sendString(frame, callback);
+            }
+        });
+    }
+
+    public void sendFrame(StompMessageFrame frame, String subscriptionId) {
+        sendFrame(frame, subscriptionId, false);
+    }
+
+    /**
+     * latestValue = true: frame mang trạng thái mới nhất của destination, COALESCE được phép thay frame cũ
+     * của cùng subscription. Các frame khác không bao giờ bị gộp.
+     */
+    public void sendFrame(StompMessageFrame frame, String subscriptionId, boolean latestValue) {
+        CoalesceKey key = latestValue ? new CoalesceKey(subscriptionId, frame.destination()) : null;
+        frame.retain();
+        offer(new Message() {
+            // Mỗi lần enqueue release đúng một lần dù gửi xong, lỗi hay bị bỏ
+            private final AtomicBoolean released = new AtomicBoolean();
+
+            @Override
+            public Object coalesceKey() {
+                return key;
+            }
+
+            @Override
+            public void write(Session session, WriteCallback callback) {
+                try {
+                    frame.writeTo(session, subscriptionId, new WriteCallback() {
+                        @Override
+                        public void writeSuccess() {
+                            discard();
+                            callback.writeSuccess();
+                        }
+
+                        @Override
+                        public void writeFailed(Throwable x) {
+                            discard();
+                            callback.writeFailed(x);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    discard();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void discard() {
+                if (released.compareAndSet(false, true)) {
+                    frame.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * WebSocket ping, đi chung hàng đợi để không ghi chồng lên frame đang gửi
+     */
+    public void sendPing() {
+        offer(new Message() {
+            @Override
+            public Object coalesceKey() {
+                return null;
+            }
+
+            @Override
+            public void write(Session session, WriteCallback callback) {
+                session.getRemote().sendPing(ByteBuffer.allocate(0), callback);
+            }
+        });
+    }
+
+    /**
+     * Đóng session sau khi đã gửi hết các frame đang chờ (ví dụ ERROR/RECEIPT trước khi close)
+     */
+    public void closeAfterFlush(int statusCode, String reason) {
+        flushBeforeClose = true;
+        offer(new Message() {
+            @Override
+            public Object coalesceKey() {
+                return null;
+            }
+
+            @Override
+            public void write(Session session, WriteCallback callback) {
+                closed = true;
+                session.close(statusCode, reason, callback);
+            }
+        });
+    }
+
+    /**
+     * Enqueue frame, trả về false nếu frame bị bỏ
+     */
+    boolean offer(Message message) {
+        if (closed) {
+            return reject(message);
+        }
+
+        boolean disconnect = false;
+        synchronized (queue) {
+            // close() chen vào sau lần kiểm tra trên: không để frame kẹt lại trong hàng đợi đã dọn
+            if (closed) {
+                return reject(message);
+            }
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST -> {
+                        dropOldest();
+                    }
+                    case COALESCE -> {
+                        if (removeSameKey(message.coalesceKey())) {
+                            coalesced.increment();
+                            COALESCED_TOTAL.increment();
+                        } else {
+                            dropOldest();
+                        }
+                    }
+                    case DISCONNECT -> disconnect = true;
+                }
+            }
+            if (!disconnect) {
+                queue.addLast(message);
+                if (queue.size() > highWatermark) {
+                    highWatermark = queue.size();
+                }
+            }
+        }
+
+        if (disconnect) {
+            message.discard();
+            evict();
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    private boolean reject(Message message) {
+        dropped.increment();
+        DROPPED_TOTAL.increment();
+        message.discard();
+        return false;
+    }
+
+    private void dropOldest() {
+        Message oldest = queue.pollFirst();
+        if (oldest != null) {
+            oldest.discard();
+        }
+        dropped.increment();
+        DROPPED_TOTAL.increment();
+    }
+
+    private boolean removeSameKey(Object key) {
+        if (key == null) {
+            return false;
+        }
+        Iterator<Message> it = queue.iterator();
+        while (it.hasNext()) {
+            Message queued = it.next();
+            if (key.equals(queued.coalesceKey())) {
+                it.remove();
+                queued.discard();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ghi frame tiếp theo nếu không có frame nào đang ghi.
+     * Dùng wip counter thay cho đệ quy khi Jetty gọi callback đồng bộ.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            if (!inFlight) {
+                if (session.isOpen()) {
+                    Message next;
+                    synchronized (queue) {
+                        next = queue.pollFirst();
+                    }
+                    if (next != null) {
+                        inFlight = true;
+                        try {
+                            next.write(session, writeCallback);
+                        } catch (Exception e) {
+                            writeCallback.writeFailed(e);
+                        }
+                    }
+                } else if (closed) {
+                    // Socket đã đóng: frame còn lại không gửi được nữa, giữ lại chỉ chiếm buffer
+                    discardPending(0);
+                }
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+
+    /**
+     * Session đã đóng/bị gỡ: offer sau đó bị bỏ ngay, frame đang chờ bị bỏ (trả buffer về pool).
+     * Nếu closeAfterFlush đang chờ (RECEIPT/ERROR trước khi đóng) thì vẫn gửi nốt, phần còn lại bị bỏ khi socket đóng.
+     */
+    public void close() {
+        closed = true;
+        if (flushBeforeClose) {
+            drain();
+        } else {
+            discardPending(0);
+        }
+    }
+
+    private int discardPending(int alreadyDropped) {
+        synchronized (queue) {
+            int depth = queue.size();
+            if (depth + alreadyDropped > 0) {
+                dropped.add(depth + alreadyDropped);
+                DROPPED_TOTAL.add(depth + alreadyDropped);
+            }
+            queue.forEach(Message::discard);
+            queue.clear();
+            return depth;
+        }
+    }
+
+    private void evict() {
+        closed = true;
+        int depth = discardPending(1);
+        log.warn("🐢 Slow consumer {} evicted ({} frames pending)", sessionId, depth);
+        session.close(StatusCode.POLICY_VIOLATION, "Slow consumer");
+    }
+
+    /**
+     * Thời điểm ghi thành công gần nhất - heartbeat chỉ gửi khi session im lặng đủ lâu
+     */
+    public long lastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public int depth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(sessionId, depth(), capacity, highWatermark,
+                sent.sum(), dropped.sum(), coalesced.sum(), failed.sum());
+    }
+}
@@ -0,0 +1,58 @@
+package org.rin.ws;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Các MESSAGE frame của MỘT lần gửi: mỗi body encoding chỉ encode và dựng frame một lần cho mọi người nhận.
+ * Chỉ dùng trong vòng lặp fan-out của một thread.
+ */
+final class PayloadFrames {
+
+    private final String destination;
+    private final String seq; // token replay, null nếu topic không được lưu
+    private final String contentType;
+    private final byte[] body;
+    private final Object value; // object gốc, null khi message nhận từ node khác
+    private final MessageFrameEncoder encoder;
+    private final StompMessageFrame[] frames = new StompMessageFrame[BodyEncoding.values().length];
+
+    PayloadFrames(MessageFrameEncoder encoder, String destination, String seq, String contentType, byte[] body, Object value) {
+        this.encoder = encoder;
+        this.destination = destination;
+        this.seq = seq;
+        this.contentType = contentType;
+        this.body = body;
+        this.value = value;
+    }
+
+    StompMessageFrame frameFor(BodyEncoding encoding) {
+        // Chỉ body JSON mới chuyển encoding được, loại khác gửi nguyên bản
+        int slot = BodyEncoding.JSON.contentType().equals(contentType) ? encoding.ordinal() : BodyEncoding.JSON.ordinal();
+        StompMessageFrame frame = frames[slot];
+        if (frame == null) {
+            if (slot == BodyEncoding.JSON.ordinal()) {
+                frame = encoder.encode(destination, contentType, body, seq);
+            } else {
+                try {
+                    frame = encoder.encode(destination, encoding.contentType(), encoding.encode(value, body), seq);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot encode body as " + encoding, e);
+                }
+            }
+            frames[slot] = frame;
+        }
+        return frame;
+    }
+
+    /**
+     * Bỏ tham chiếu của người dựng sau vòng fan-out - buffer về pool khi mọi session đã gửi xong
+     */
+    void release() {
+        for (StompMessageFrame frame : frames) {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    }
+}
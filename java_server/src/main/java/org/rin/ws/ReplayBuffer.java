@@ -0,0 +1,264 @@
+package org.rin.ws;
+
+import org.rin.log.MappedLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lưu các message gần nhất của từng topic kèm sequence để client reconnect chỉ nhận phần bị lỡ.
+ * - Mỗi topic có một ring trong bộ nhớ, tùy chọn ghi thêm vào MappedLog để giữ được lâu hơn ring
+ * - Ring bị chặn theo số message và theo byte (mỗi topic + tổng cả node): vượt thì bỏ message cũ nhất của topic
+ *   đang publish - topic im lặng giữ nguyên, topic ồn tự nhường chỗ
+ * - Token sequence gửi cho client dạng "&lt;epoch&gt;.&lt;seq&gt;": epoch đổi khi node khởi động lại không có spill,
+ *   nên token của node/lần chạy khác luôn bị coi là mất dữ liệu (client phải tải lại toàn bộ)
+ * - Gán sequence và fan-out chạy dưới lock của topic, SUBSCRIBE resume cũng vậy: không thể lỡ hay đảo thứ tự message
+ */
+final class ReplayBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayBuffer.class);
+    private static final String SUBSCRIBER = "replay";
+
+    /**
+     * Nhận kết quả resume của một subscription
+     */
+    interface ResumeSink {
+        void message(String seq, String contentType, byte[] body);
+
+        /** Không còn đủ dữ liệu để replay, seq là vị trí hiện tại của topic */
+        void gap(String seq);
+    }
+
+    /**
+     * Gửi message đã được gán seq
+     */
+    interface Delivery {
+        void deliver(String seq);
+    }
+
+    private record Entry(long seq, String contentType, byte[] body) {}
+
+    private final String epoch;
+    private final int capacity;
+    private final int maxTopics;
+    private final long topicMaxBytes;
+    private final long maxBytes;
+    private final AtomicLong totalBytes = new AtomicLong(); // byte body trong ring của mọi topic
+    private final Set<String> patterns;
+    private final TopicRouter patternRouter = new TopicRouter(10_000);
+    private final Path spillDir; // null = chỉ giữ trong bộ nhớ
+    private final int spillSegmentBytes;
+    private final int spillSegments;
+    private final Map<String, TopicLog> topics = new ConcurrentHashMap<>();
+
+    ReplayBuffer(String nodeId, int capacity, Set<String> patterns, int maxTopics, long topicMaxBytes, long maxBytes,
+                 Path spillDir, int spillSegmentBytes, int spillSegments) {
+        // Có spill thì sequence tiếp tục sau khi restart, epoch giữ nguyên theo node
+        this.epoch = spillDir != null ? nodeId : nodeId + "-" + Long.toString(System.currentTimeMillis(), 36);
+        this.capacity = capacity;
+        this.maxTopics = maxTopics;
+        this.topicMaxBytes = topicMaxBytes;
+        this.maxBytes = maxBytes;
+        this.patterns = capacity > 0 ? Set.copyOf(patterns) : Set.of();
+        this.spillDir = spillDir;
+        this.spillSegmentBytes = spillSegmentBytes;
+        this.spillSegments = spillSegments;
+        for (String pattern : this.patterns) {
+            patternRouter.subscribe(pattern, SUBSCRIBER, pattern);
+        }
+    }
+
+    boolean enabled() {
+        return !patterns.isEmpty();
+    }
+
+    /**
+     * Pattern các topic được lưu - node cần nhận mọi message của chúng từ cluster, kể cả khi chưa ai subscribe
+     */
+    Set<String> patterns() {
+        return patterns;
+    }
+
+    /**
+     * Tổng byte body đang giữ trong ring của mọi topic
+     */
+    long bytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Log của một destination cụ thể, null nếu destination không được lưu (hoặc là pattern wildcard)
+     */
+    TopicLog topic(String destination) {
+        TopicLog topic = topics.get(destination);
+        if (topic != null) {
+            return topic;
+        }
+        if (destination.contains("*") || patternRouter.match(destination).isEmpty()) {
+            return null;
+        }
+        if (topics.size() >= maxTopics) {
+            log.warn("⚠️ Replay topic limit {} reached, not recording {}", maxTopics, destination);
+            return null;
+        }
+        return topics.computeIfAbsent(destination, TopicLog::new);
+    }
+
+    final class TopicLog {
+        private final String destination;
+        private final Entry[] ring = new Entry[capacity];
+        private final ReentrantLock lock = new ReentrantLock();
+        private MappedLog spill; // guarded by lock
+        private long nextSeq = 1; // guarded by lock
+        private long ringStart; // seq cũ nhất còn trong ring (sau restart/bị bỏ vì byte budget chỉ còn trong spill), guarded by lock
+        private long ringBytes; // guarded by lock
+
+        private TopicLog(String destination) {
+            this.destination = destination;
+            if (spillDir != null) {
+                try {
+                    spill = new MappedLog(spillDir.resolve(URLEncoder.encode(destination, StandardCharsets.UTF_8)),
+                            spillSegmentBytes, spillSegments);
+                    nextSeq = Math.max(spill.lastSeq(), 0) + 1;
+                } catch (IOException e) {
+                    log.error("❌ Cannot open replay spill for {}: {}", destination, e.getMessage());
+                }
+            }
+            ringStart = nextSeq;
+        }
+
+        /**
+         * Gán seq, lưu message rồi gọi delivery - tất cả dưới lock của topic
+         */
+        void publish(String contentType, byte[] body, Delivery delivery) {
+            lock.lock();
+            try {
+                long seq = nextSeq++;
+                int slot = (int) (seq % ring.length);
+                if (ring[slot] != null) {
+                    // Ring đầy: ghi đè message cũ nhất
+                    release(ring[slot]);
+                    ringStart = Math.max(ringStart, ring[slot].seq() + 1);
+                }
+                ring[slot] = new Entry(seq, contentType, body);
+                ringBytes += body.length;
+                totalBytes.addAndGet(body.length);
+                trim(seq);
+                if (spill != null) {
+                    try {
+                        spill.append(seq, encode(contentType, body));
+                    } catch (IOException e) {
+                        // Log có lỗ thì không dùng để replay nữa, chỉ còn ring
+                        log.error("❌ Replay spill failed for {}, disabling: {}", destination, e.getMessage());
+                        spill = null;
+                    }
+                }
+                delivery.deliver(token(seq));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Bỏ message cũ nhất tới khi topic và cả node về dưới budget - luôn giữ message vừa ghi (seq)
+         */
+        private void trim(long seq) {
+            while (ringStart < seq && (ringBytes > topicMaxBytes || totalBytes.get() > maxBytes)) {
+                int slot = (int) (ringStart % ring.length);
+                Entry oldest = ring[slot];
+                if (oldest != null && oldest.seq() == ringStart) {
+                    release(oldest);
+                    ring[slot] = null;
+                }
+                ringStart++;
+            }
+        }
+
+        private void release(Entry entry) {
+            ringBytes -= entry.body().length;
+            totalBytes.addAndGet(-entry.body().length);
+        }
+
+        /**
+         * Đăng ký subscription rồi replay các message sau resumeFrom, không message mới nào chen vào giữa.
+         * Quá maxMessages message bị lỡ thì báo gap thay vì replay (tránh tràn hàng đợi gửi).
+         */
+        <T> T resume(String resumeFrom, int maxMessages, Supplier<T> subscribe, ResumeSink sink) {
+            lock.lock();
+            try {
+                T result = subscribe.get();
+                if (result == null) {
+                    return null;
+                }
+                long last = nextSeq - 1;
+                long after = parse(resumeFrom);
+                if (after == last) {
+                    return result;
+                }
+                if (after < 0 || after > last || last - after > maxMessages) {
+                    sink.gap(token(last));
+                    return result;
+                }
+
+                long oldestInRing = Math.max(ringStart, nextSeq - ring.length);
+                if (after + 1 >= oldestInRing) {
+                    for (long seq = after + 1; seq <= last; seq++) {
+                        Entry entry = ring[(int) (seq % ring.length)];
+                        sink.message(token(seq), entry.contentType(), entry.body());
+                    }
+                } else if (spill != null && spill.firstSeq() > 0 && spill.firstSeq() <= after + 1) {
+                    spill.readFrom(after, (seq, payload) -> {
+                        ByteBuffer buffer = ByteBuffer.wrap(payload);
+                        byte[] contentType = new byte[buffer.getShort()];
+                        buffer.get(contentType);
+                        byte[] body = new byte[buffer.remaining()];
+                        buffer.get(body);
+                        sink.message(token(seq), new String(contentType, StandardCharsets.UTF_8), body);
+                    });
+                } else {
+                    sink.gap(token(last));
+                }
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private String token(long seq) {
+        return epoch + "." + seq;
+    }
+
+    /**
+     * seq trong token, -1 nếu token không hợp lệ hoặc thuộc epoch khác
+     */
+    private long parse(String token) {
+        int dot = token.lastIndexOf('.');
+        if (dot < 0 || !token.substring(0, dot).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(dot + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // [short contentType length][contentType][body]
+    private static byte[] encode(String contentType, byte[] body) {
+        byte[] type = contentType.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Short.BYTES + type.length + body.length)
+                .putShort((short) type.length).put(type).put(body).array();
+    }
+}
@@ -0,0 +1,222 @@
+package org.rin.ws;
+
+import org.rin.config.EnvConfig;
+import org.rin.metrics.Counter;
+import org.rin.metrics.MetricFamily;
+import org.rin.metrics.MetricsRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control cho SEND: token bucket theo session, theo username và theo destination.
+ * Mỗi SEND kéo theo fan-out tới mọi subscriber, nên một client gửi dồn có thể làm cả node khuếch đại tải -
+ * SEND vượt giới hạn bị từ chối trước khi đụng tới body/router.
+ * Bucket của session nằm trên SessionRegistry.Entry; bucket username/destination nằm trong map,
+ * bucket đã hồi đầy được dọn định kỳ. Rate = 0 tắt giới hạn của scope đó.
+ * Map đầy (WS_SEND_LIMIT_MAX_KEYS) thì dọn bucket rảnh ngay khi thêm key mới; vẫn đầy thì chỉ key mới bị từ chối,
+ * key đã có bucket không bị ảnh hưởng.
+ */
+final class SendAdmission {
+
+    /**
+     * Xử lý SEND bị từ chối
+     */
+    enum RejectPolicy {
+        ERROR, // gửi STOMP ERROR cho client
+        DROP   // bỏ im lặng
+    }
+
+    /**
+     * Giới hạn bị vượt
+     */
+    enum Scope {
+        SESSION, USER, DESTINATION;
+
+        private final String label = name().toLowerCase();
+
+        String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Giới hạn của một scope, rate = 0 là tắt
+     */
+    record Limit(int rate, int burst) {
+        static final Limit NONE = new Limit(0, 0);
+
+        boolean enabled() {
+            return rate > 0;
+        }
+
+        TokenBucket newBucket(long nowNanos) {
+            return new TokenBucket(rate, burst, nowNanos);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("ratePerSecond", rate);
+            out.put("burst", burst);
+            return out;
+        }
+    }
+
+    private final Limit sessionLimit;
+    private final Limit userLimit;
+    private final Limit destinationLimit;
+    private final RejectPolicy policy = EnvConfig.getEnum("WS_SEND_REJECT_POLICY", RejectPolicy.class, RejectPolicy.ERROR);
+    // Giới hạn số key của mỗi map để destination sinh động không làm phình bộ nhớ
+    private final int maxKeys;
+    // Khoảng cách tối thiểu giữa hai lần dọn khi map đầy - bị spam key mới cũng không quét map mỗi SEND
+    private static final long FULL_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Buckets users;
+    private final Buckets destinations;
+
+    private final Counter admitted = MetricsRegistry.getInstance()
+            .counter("ws_send_admitted_total", "STOMP SEND frames admitted by rate limiting").get();
+    private final Counter[] rejected = new Counter[Scope.values().length];
+
+    SendAdmission() {
+        this(limit("WS_SEND_SESSION", 20, 40), limit("WS_SEND_USER", 50, 100),
+                limit("WS_SEND_DESTINATION", 1000, 2000), EnvConfig.getInt("WS_SEND_LIMIT_MAX_KEYS", 100_000));
+    }
+
+    SendAdmission(Limit sessionLimit, Limit userLimit, Limit destinationLimit, int maxKeys) {
+        this.sessionLimit = sessionLimit;
+        this.userLimit = userLimit;
+        this.destinationLimit = destinationLimit;
+        this.maxKeys = maxKeys;
+        this.users = new Buckets(userLimit);
+        this.destinations = new Buckets(destinationLimit);
+        MetricFamily<Counter> rejections = MetricsRegistry.getInstance()
+                .counter("ws_send_rejected_total", "STOMP SEND frames rejected by rate limiting", "scope");
+        for (Scope scope : Scope.values()) {
+            rejected[scope.ordinal()] = rejections.labels(scope.label());
+        }
+        MetricsRegistry.getInstance().gauge("ws_send_limit_tracked_keys",
+                "Username and destination buckets currently tracked", () -> users.map.size() + destinations.map.size());
+    }
+
+    private static Limit limit(String prefix, int rate, int burst) {
+        int r = EnvConfig.getInt(prefix + "_RATE", rate);
+        return new Limit(r, EnvConfig.getInt(prefix + "_BURST", Math.max(burst, r)));
+    }
+
+    /**
+     * Bucket cho một session mới, null nếu không giới hạn theo session
+     */
+    TokenBucket newSessionBucket() {
+        return sessionLimit.enabled() ? sessionLimit.newBucket(System.nanoTime()) : null;
+    }
+
+    RejectPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * null nếu cho qua, ngược lại là scope bị vượt (không cấp phát khi key đã có bucket).
+     * Token đã lấy ở scope trước không được trả lại khi scope sau từ chối.
+     */
+    Scope admit(TokenBucket sessionBucket, String username, String destination) {
+        return admit(sessionBucket, username, destination, System.nanoTime());
+    }
+
+    Scope admit(TokenBucket sessionBucket, String username, String destination, long now) {
+        if (sessionBucket != null && !sessionBucket.tryAcquire(now)) {
+            return reject(Scope.SESSION);
+        }
+        if (userLimit.enabled() && !users.tryAcquire(username, now)) {
+            return reject(Scope.USER);
+        }
+        if (destinationLimit.enabled() && !destinations.tryAcquire(destination, now)) {
+            return reject(Scope.DESTINATION);
+        }
+        admitted.increment();
+        return null;
+    }
+
+    private Scope reject(Scope scope) {
+        rejected[scope.ordinal()].increment();
+        return scope;
+    }
+
+    /**
+     * Bỏ bucket đã hồi đầy. Thread đang giữ bucket vừa bị bỏ có thể lọt thêm một SEND - chấp nhận được.
+     */
+    void evictIdle() {
+        evictIdle(System.nanoTime());
+    }
+
+    void evictIdle(long now) {
+        users.evictIdle(now);
+        destinations.evictIdle(now);
+    }
+
+    /**
+     * Bucket theo key của một scope
+     */
+    private final class Buckets {
+        private final Limit limit;
+        private final Map<String, TokenBucket> map = new ConcurrentHashMap<>();
+        private final AtomicLong lastFullSweep = new AtomicLong(System.nanoTime() - FULL_SWEEP_INTERVAL_NANOS);
+
+        private Buckets(Limit limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * false nếu key hết token, hoặc key chưa có bucket mà map vẫn đầy sau khi dọn bucket rảnh
+         */
+        boolean tryAcquire(String key, long now) {
+            TokenBucket bucket = map.get(key);
+            if (bucket == null) {
+                if (map.size() >= maxKeys && !sweepWhenFull(now)) {
+                    return false;
+                }
+                // Nhiều thread cùng thêm có thể vượt maxKeys một chút - chấp nhận được
+                bucket = map.computeIfAbsent(key, k -> limit.newBucket(now));
+            }
+            return bucket.tryAcquire(now);
+        }
+
+        /**
+         * Dọn bucket rảnh (tối đa mỗi FULL_SWEEP_INTERVAL_NANOS một lần), true nếu map còn chỗ
+         */
+        private boolean sweepWhenFull(long now) {
+            long last = lastFullSweep.get();
+            if (now - last >= FULL_SWEEP_INTERVAL_NANOS && lastFullSweep.compareAndSet(last, now)) {
+                evictIdle(now);
+            }
+            return map.size() < maxKeys;
+        }
+
+        void evictIdle(long now) {
+            map.values().removeIf(bucket -> bucket.isFull(now));
+        }
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> rejectedByScope = new LinkedHashMap<>();
+        for (Scope scope : Scope.values()) {
+            rejectedByScope.put(scope.label(), rejected[scope.ordinal()].value());
+        }
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put(Scope.SESSION.label(), sessionLimit.toMap());
+        limits.put(Scope.USER.label(), userLimit.toMap());
+        limits.put(Scope.DESTINATION.label(), destinationLimit.toMap());
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("policy", policy);
+        out.put("admitted", admitted.value());
+        out.put("rejected", rejectedByScope);
+        out.put("trackedUsers", users.map.size());
+        out.put("trackedDestinations", destinations.map.size());
+        out.put("limits", limits);
+        return out;
+    }
+}
@@ -0,0 +1,102 @@
+package org.rin.ws;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.rin.config.JsonConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Relay SEND không parse/serialize lại body: ghép nguyên byte body của frame vào envelope
+ * {"from":...,"timestamp":...,"content":&lt;body&gt;} - cùng định dạng với SendPayload serialize bằng Jackson.
+ * Body JSON chỉ được quét token (streaming, không dựng cây) để chắc envelope vẫn là JSON hợp lệ;
+ * body không phải JSON thành chuỗi "content" như trước.
+ */
+final class SendRelay {
+
+    private static final byte[] FROM_FIELD = "{\"from\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP_FIELD = ",\"timestamp\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_FIELD = ",\"content\":".getBytes(StandardCharsets.US_ASCII);
+
+    private record Timestamp(long millis, byte[] ascii) {}
+
+    // Nhiều SEND trong cùng một ms dùng chung chuỗi số của timestamp
+    private static volatile Timestamp lastTimestamp = new Timestamp(0, "0".getBytes(StandardCharsets.US_ASCII));
+
+    private SendRelay() {}
+
+    /**
+     * {"from":"&lt;username&gt;" - dựng một lần cho mỗi session
+     */
+    static byte[] envelopePrefix(String username) {
+        byte[] name = JsonStringEncoder.getInstance().quoteAsUTF8(username);
+        byte[] prefix = new byte[FROM_FIELD.length + name.length + 1];
+        int pos = put(prefix, 0, FROM_FIELD, 0, FROM_FIELD.length);
+        pos = put(prefix, pos, name, 0, name.length);
+        prefix[pos] = '"';
+        return prefix;
+    }
+
+    /**
+     * Envelope cho body của frame: JSON hợp lệ thì ghép nguyên byte, ngược lại ghép dạng chuỗi
+     */
+    static byte[] envelope(byte[] prefix, StompFrame frame, boolean json) {
+        if (json && isWellFormed(frame.rawBuffer(), frame.bodyOffset(), frame.bodyLength())) {
+            return envelope(prefix, frame.rawBuffer(), frame.bodyOffset(), frame.bodyLength(), false);
+        }
+        byte[] text = JsonStringEncoder.getInstance().quoteAsUTF8(frame.bodyAsString());
+        return envelope(prefix, text, 0, text.length, true);
+    }
+
+    private static byte[] envelope(byte[] prefix, byte[] content, int offset, int length, boolean quoted) {
+        byte[] timestamp = timestamp();
+        int quotes = quoted ? 2 : 0;
+        byte[] out = new byte[prefix.length + TIMESTAMP_FIELD.length + timestamp.length + CONTENT_FIELD.length + length + quotes + 1];
+        int pos = put(out, 0, prefix, 0, prefix.length);
+        pos = put(out, pos, TIMESTAMP_FIELD, 0, TIMESTAMP_FIELD.length);
+        pos = put(out, pos, timestamp, 0, timestamp.length);
+        pos = put(out, pos, CONTENT_FIELD, 0, CONTENT_FIELD.length);
+        if (quoted) {
+            out[pos++] = '"';
+        }
+        pos = put(out, pos, content, offset, length);
+        if (quoted) {
+            out[pos++] = '"';
+        }
+        out[pos] = '}';
+        return out;
+    }
+
+    private static int put(byte[] out, int pos, byte[] src, int offset, int length) {
+        System.arraycopy(src, offset, out, pos, length);
+        return pos + length;
+    }
+
+    private static byte[] timestamp() {
+        long now = System.currentTimeMillis();
+        Timestamp cached = lastTimestamp;
+        if (cached.millis() != now) {
+            cached = new Timestamp(now, Long.toString(now).getBytes(StandardCharsets.US_ASCII));
+            lastTimestamp = cached;
+        }
+        return cached.ascii();
+    }
+
+    /**
+     * Đúng MỘT giá trị JSON (có thể kèm khoảng trắng) - chỉ đọc token, không decode chuỗi/số
+     */
+    static boolean isWellFormed(byte[] buf, int offset, int length) {
+        try (JsonParser parser = JsonConfig.getMapper().getFactory().createParser(buf, offset, length)) {
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.rin.ws;
+
+import io.javalin.websocket.WsContext;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registry duy nhất cho session + subscription của node này (thay cho các map rời wsClients/users/decoders/queues).
+ * - Đọc trên đường fan-out (tìm session, match destination) không khóa
+ * - subscribe/unsubscribe/connect/remove của một session chạy nguyên tử dưới lock riêng của session đó,
+ *   nên subscribe đến muộn không thể để lại subscription "mồ côi" sau khi session đã bị gỡ
+ */
+final class SessionRegistry {
+
+    /**
+     * Toàn bộ trạng thái của một kết nối WebSocket
+     */
+    static final class Entry {
+        private final WsContext ctx;
+        private final OutboundQueue queue;
+        private final StompDecoder decoder = new StompDecoder();
+        private final TokenBucket sendBucket; // null nếu không giới hạn SEND theo session
+        private volatile UserSession user; // null tới khi CONNECT
+        private volatile Heartbeat heartbeat;
+        private boolean removed; // guarded by this
+
+        private Entry(WsContext ctx, OutboundQueue queue, TokenBucket sendBucket) {
+            this.ctx = ctx;
+            this.queue = queue;
+            this.sendBucket = sendBucket;
+        }
+
+        WsContext ctx() { return ctx; }
+        OutboundQueue queue() { return queue; }
+        StompDecoder decoder() { return decoder; }
+        TokenBucket sendBucket() { return sendBucket; }
+        UserSession user() { return user; }
+        Heartbeat heartbeat() { return heartbeat; }
+    }
+
+    private final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+    // username -> các session (nhiều thiết bị/tab) của user đó
+    private final Map<String, Set<String>> sessionsByUsername = new ConcurrentHashMap<>();
+    private final TopicRouter router;
+    private final Supplier<TokenBucket> sendBuckets;
+
+    SessionRegistry(TopicRouter router) {
+        this(router, () -> null);
+    }
+
+    SessionRegistry(TopicRouter router, Supplier<TokenBucket> sendBuckets) {
+        this.router = router;
+        this.sendBuckets = sendBuckets;
+    }
+
+    Entry get(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Entry của kết nối, tạo khi nhận message đầu tiên
+     */
+    Entry open(WsContext ctx, Function<WsContext, OutboundQueue> queueFactory) {
+        Entry entry = sessions.get(ctx.sessionId());
+        if (entry != null) {
+            return entry;
+        }
+        return sessions.computeIfAbsent(ctx.sessionId(), id -> new Entry(ctx, queueFactory.apply(ctx), sendBuckets.get()));
+    }
+
+    /**
+     * Gắn user (CONNECT) vào session, false nếu session đã bị gỡ
+     */
+    boolean connect(Entry entry, UserSession user, Heartbeat heartbeat) {
+        String sessionId = entry.ctx.sessionId();
+        synchronized (entry) {
+            if (entry.removed) {
+                return false;
+            }
+            // CONNECT lại trên cùng kết nối: bỏ subscription/index của lần trước
+            UserSession previous = entry.user;
+            if (previous != null) {
+                dropSubscriptions(sessionId, previous);
+                unindex(previous.getUsername(), sessionId);
+            }
+            Heartbeat previousHeartbeat = entry.heartbeat;
+            if (previousHeartbeat != null) {
+                previousHeartbeat.cancel();
+            }
+            entry.user = user;
+            entry.heartbeat = heartbeat;
+            index(user.getUsername(), sessionId);
+            return true;
+        }
+    }
+
+    /**
+     * Trả về destination đã thay {username}, null nếu session chưa CONNECT hoặc đã bị gỡ
+     */
+    String subscribe(String sessionId, String topic, String subscriptionId) {
+        Entry entry = sessions.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            UserSession user = entry.user;
+            if (entry.removed || user == null) {
+                return null;
+            }
+            String processedTopic = topic.replace("{username}", user.getUsername());
+
+            // Id đã dùng cho topic khác -> hủy topic cũ trước
+            String previousTopic = user.unsubscribeById(subscriptionId);
+            if (previousTopic != null) {
+                router.unsubscribe(previousTopic, sessionId, subscriptionId);
+            }
+            user.subscribeToTopic(processedTopic, subscriptionId);
+            router.subscribe(processedTopic, sessionId, subscriptionId);
+            return processedTopic;
+        }
+    }
+
+    /**
+     * Hủy subscription theo id, trả về topic đã hủy
+     */
+    String unsubscribe(String sessionId, String subscriptionId) {
+        Entry entry = sessions.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            UserSession user = entry.user;
+            if (entry.removed || user == null) {
+                return null;
+            }
+            String topic = user.unsubscribeById(subscriptionId);
+            if (topic != null) {
+                router.unsubscribe(topic, sessionId, subscriptionId);
+            }
+            return topic;
+        }
+    }
+
+    /**
+     * Gỡ session: mọi subscription, index username, heartbeat, frame đang chờ gửi.
+     * Trả về entry đã gỡ, null nếu đã gỡ trước đó
+     */
+    Entry remove(String sessionId) {
+        Entry entry = sessions.remove(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            entry.removed = true;
+            UserSession user = entry.user;
+            if (user != null) {
+                dropSubscriptions(sessionId, user);
+                unindex(user.getUsername(), sessionId);
+            }
+            Heartbeat heartbeat = entry.heartbeat;
+            if (heartbeat != null) {
+                heartbeat.cancel();
+            }
+        }
+        // Sau khi gỡ khỏi router: fan-out còn đang giữ entry chỉ offer vào hàng đợi đã đóng
+        entry.queue.close();
+        return entry;
+    }
+
+    private void dropSubscriptions(String sessionId, UserSession user) {
+        for (Map.Entry<String, String> subscription : user.getSubscriptions().entrySet()) {
+            router.unsubscribe(subscription.getValue(), sessionId, subscription.getKey());
+        }
+        user.unsubscribeFromAllTopics();
+    }
+
+    private void index(String username, String sessionId) {
+        sessionsByUsername.compute(username, (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(sessionId);
+            return ids;
+        });
+    }
+
+    private void unindex(String username, String sessionId) {
+        // Xóa luôn entry khi user không còn session nào
+        sessionsByUsername.computeIfPresent(username, (k, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    Collection<Entry> entries() {
+        return sessions.values();
+    }
+
+    /**
+     * Session id của một user, null nếu user không có session ở node này
+     */
+    Set<String> sessionsOf(String username) {
+        return sessionsByUsername.get(username);
+    }
+
+    /**
+     * Username đang có session ở node này (bản copy)
+     */
+    Set<String> usernames() {
+        return Set.copyOf(sessionsByUsername.keySet());
+    }
+
+    Map<String, Integer> countsByUsername() {
+        Map<String, Integer> counts = new HashMap<>(sessionsByUsername.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : sessionsByUsername.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        return counts;
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    int userCount() {
+        return sessionsByUsername.size();
+    }
+
+    /**
+     * Tổng số subscription của mọi session (duyệt toàn bộ - chỉ dùng lúc scrape metric)
+     */
+    int subscriptionCount() {
+        int total = 0;
+        for (Entry entry : sessions.values()) {
+            UserSession user = entry.user;
+            if (user != null) {
+                total += user.getSubscriptions().size();
+            }
+        }
+        return total;
+    }
+}
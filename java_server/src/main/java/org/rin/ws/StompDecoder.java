@@ -0,0 +1,155 @@
+package org.rin.ws;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Parser STOMP 1.2 một lượt trên byte[].
+ * - Nhiều frame trong một WebSocket message, EOL giữa các frame (heart-beat) được bỏ qua
+ * - Body theo content-length (binary, có thể chứa NUL) hoặc tới NUL đầu tiên
+ * - Frame bị cắt giữa chừng được giữ lại và ghép với message kế tiếp; dòng lệnh được kiểm tra ngay cả khi chưa trọn,
+ *   dữ liệu không thể là command STOMP bị từ chối luôn thay vì gom tới maxFrameSize
+ * Mỗi session dùng một decoder riêng (Jetty gọi onMessage tuần tự theo session).
+ */
+public final class StompDecoder {
+
+    public static final int DEFAULT_MAX_FRAME_SIZE = 1024 * 1024;
+
+    private final int maxFrameSize;
+    private final StompFrame frame = new StompFrame();
+
+    // Phần frame chưa hoàn chỉnh từ message trước
+    private byte[] pending;
+
+    public StompDecoder() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public StompDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public void decode(byte[] data, int offset, int length, Consumer<StompFrame> handler) {
+        byte[] buf = data;
+        int pos = offset;
+        int end = offset + length;
+
+        if (pending != null) {
+            // Chỉ copy khi có frame bị cắt ngang
+            buf = Arrays.copyOf(pending, pending.length + length);
+            System.arraycopy(data, offset, buf, pending.length, length);
+            pos = 0;
+            end = buf.length;
+            pending = null;
+        }
+
+        while (true) {
+            pos = skipEols(buf, pos, end);
+            if (pos == end) {
+                return;
+            }
+
+            int next = parseFrame(buf, pos, end);
+            if (next < 0) {
+                if (end - pos > maxFrameSize) {
+                    throw new StompProtocolException("Frame too large");
+                }
+                pending = Arrays.copyOfRange(buf, pos, end);
+                return;
+            }
+            if (next - pos > maxFrameSize) {
+                throw new StompProtocolException("Frame too large");
+            }
+            handler.accept(frame);
+            pos = next;
+        }
+    }
+
+    /**
+     * Bỏ dữ liệu dở dang (dùng khi lỗi protocol hoặc session đóng)
+     */
+    public void reset() {
+        pending = null;
+    }
+
+    /**
+     * Parse một frame bắt đầu tại pos, trả về vị trí sau NUL hoặc -1 nếu chưa đủ dữ liệu
+     */
+    private int parseFrame(byte[] buf, int pos, int end) {
+        int lineEnd = indexOf(buf, (byte) '\n', pos, end);
+        if (lineEnd < 0) {
+            if (!StompFrame.Command.isPrefix(buf, pos, trimCr(buf, pos, end))) {
+                throw new StompProtocolException("Invalid STOMP frame");
+            }
+            return -1;
+        }
+        StompFrame.Command command = StompFrame.Command.match(buf, pos, trimCr(buf, pos, lineEnd));
+        if (command == null) {
+            throw new StompProtocolException("Invalid STOMP frame");
+        }
+        frame.reset(buf, command);
+        pos = lineEnd + 1;
+
+        // Headers
+        while (true) {
+            lineEnd = indexOf(buf, (byte) '\n', pos, end);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            int contentEnd = trimCr(buf, pos, lineEnd);
+            if (contentEnd == pos) {
+                pos = lineEnd + 1;
+                break;
+            }
+            int colon = indexOf(buf, (byte) ':', pos, contentEnd);
+            if (colon < 0) {
+                throw new StompProtocolException("Malformed header");
+            }
+            frame.addHeader(pos, colon, colon + 1, contentEnd);
+            pos = lineEnd + 1;
+        }
+
+        // Body
+        int contentLength = frame.intHeader("content-length");
+        if (contentLength >= 0) {
+            if (contentLength > maxFrameSize) {
+                throw new StompProtocolException("Frame too large");
+            }
+            if (end - pos < contentLength + 1) {
+                return -1;
+            }
+            if (buf[pos + contentLength] != 0) {
+                throw new StompProtocolException("Frame body does not match content-length");
+            }
+            frame.setBody(pos, contentLength);
+            return pos + contentLength + 1;
+        }
+
+        int nul = indexOf(buf, (byte) 0, pos, end);
+        if (nul < 0) {
+            return -1;
+        }
+        frame.setBody(pos, nul - pos);
+        return nul + 1;
+    }
+
+    private static int skipEols(byte[] buf, int pos, int end) {
+        while (pos < end && (buf[pos] == '\n' || buf[pos] == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int trimCr(byte[] buf, int start, int lineEnd) {
+        return lineEnd > start && buf[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
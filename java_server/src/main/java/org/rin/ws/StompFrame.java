@@ -0,0 +1,211 @@
+package org.rin.ws;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * View của một STOMP frame đã parse - header/body chỉ là offset trên buffer gốc, không copy.
+ * Object được StompDecoder dùng lại cho frame tiếp theo nên không được giữ lại sau khi xử lý xong.
+ */
+public final class StompFrame {
+
+    public enum Command {
+        CONNECT, STOMP, SUBSCRIBE, UNSUBSCRIBE, SEND, DISCONNECT, ACK, NACK, BEGIN, COMMIT, ABORT;
+
+        private static final Command[] ALL = values();
+
+        private final byte[] bytes = name().getBytes(StandardCharsets.US_ASCII);
+
+        static Command match(byte[] buf, int start, int end) {
+            for (Command command : ALL) {
+                if (Arrays.equals(command.bytes, 0, command.bytes.length, buf, start, end)) {
+                    return command;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Dòng lệnh chưa trọn (chưa có EOL) vẫn có thể thành một command hợp lệ
+         */
+        static boolean isPrefix(byte[] buf, int start, int end) {
+            for (Command command : ALL) {
+                if (end - start <= command.bytes.length
+                        && Arrays.equals(command.bytes, 0, end - start, buf, start, end)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private byte[] buf;
+    private Command command;
+
+    // Mỗi header chiếm 4 int: nameStart, nameEnd, valueStart, valueEnd
+    private int[] headers = new int[4 * 8];
+    private int headerCount;
+
+    private int bodyOffset;
+    private int bodyLength;
+
+    void reset(byte[] buf, Command command) {
+        this.buf = buf;
+        this.command = command;
+        this.headerCount = 0;
+        this.bodyOffset = 0;
+        this.bodyLength = 0;
+    }
+
+    void addHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        int i = headerCount * 4;
+        if (i + 4 > headers.length) {
+            headers = Arrays.copyOf(headers, headers.length * 2);
+        }
+        headers[i] = nameStart;
+        headers[i + 1] = nameEnd;
+        headers[i + 2] = valueStart;
+        headers[i + 3] = valueEnd;
+        headerCount++;
+    }
+
+    void setBody(int offset, int length) {
+        this.bodyOffset = offset;
+        this.bodyLength = length;
+    }
+
+    public Command command() {
+        return command;
+    }
+
+    /**
+     * Giá trị header (đã unescape), header lặp lại thì lấy cái đầu tiên theo STOMP 1.2
+     */
+    public String header(String name) {
+        int i = indexOfHeader(name);
+        if (i < 0) {
+            return null;
+        }
+        int start = headers[i + 2];
+        int end = headers[i + 3];
+        // CONNECT/STOMP không escape header
+        if (command == Command.CONNECT || command == Command.STOMP) {
+            return new String(buf, start, end - start, StandardCharsets.UTF_8);
+        }
+        return unescape(buf, start, end);
+    }
+
+    /**
+     * Đọc header dạng số không cần tạo String, -1 nếu không có
+     */
+    int intHeader(String name) {
+        int i = indexOfHeader(name);
+        if (i < 0) {
+            return -1;
+        }
+        int start = headers[i + 2];
+        int end = headers[i + 3];
+        if (start == end) {
+            throw new StompProtocolException("Invalid " + name + " header");
+        }
+        long value = 0;
+        for (int p = start; p < end; p++) {
+            int digit = buf[p] - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > Integer.MAX_VALUE) {
+                throw new StompProtocolException("Invalid " + name + " header");
+            }
+        }
+        return (int) value;
+    }
+
+    private int indexOfHeader(String name) {
+        int length = name.length();
+        for (int h = 0; h < headerCount; h++) {
+            int i = h * 4;
+            int nameStart = headers[i];
+            if (headers[i + 1] - nameStart != length) {
+                continue;
+            }
+            boolean match = true;
+            for (int c = 0; c < length; c++) {
+                if (buf[nameStart + c] != name.charAt(c)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int bodyLength() {
+        return bodyLength;
+    }
+
+    // Buffer gốc + offset body, cho SendRelay ghép body mà không copy ra mảng riêng
+    byte[] rawBuffer() {
+        return buf;
+    }
+
+    int bodyOffset() {
+        return bodyOffset;
+    }
+
+    /**
+     * Body dạng read-only view trên buffer gốc (hỗ trợ body binary)
+     */
+    public ByteBuffer body() {
+        return ByteBuffer.wrap(buf, bodyOffset, bodyLength).asReadOnlyBuffer();
+    }
+
+    /**
+     * Body dạng stream trên buffer gốc, để parser đọc thẳng từ byte
+     */
+    public InputStream bodyStream() {
+        return new ByteArrayInputStream(buf, bodyOffset, bodyLength);
+    }
+
+    public String bodyAsString() {
+        return new String(buf, bodyOffset, bodyLength, StandardCharsets.UTF_8);
+    }
+
+    private static String unescape(byte[] buf, int start, int end) {
+        int backslash = -1;
+        for (int p = start; p < end; p++) {
+            if (buf[p] == '\\') {
+                backslash = p;
+                break;
+            }
+        }
+        if (backslash < 0) {
+            return new String(buf, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] out = new byte[end - start];
+        int len = backslash - start;
+        System.arraycopy(buf, start, out, 0, len);
+        for (int p = backslash; p < end; p++) {
+            byte b = buf[p];
+            if (b != '\\') {
+                out[len++] = b;
+                continue;
+            }
+            if (++p == end) {
+                throw new StompProtocolException("Invalid header escape");
+            }
+            out[len++] = switch (buf[p]) {
+                case 'r' -> '\r';
+                case 'n' -> '\n';
+                case 'c' -> ':';
+                case '\\' -> '\\';
+                default -> throw new StompProtocolException("Invalid header escape");
+            };
+        }
+        return new String(out, 0, len, StandardCharsets.UTF_8);
+    }
+}
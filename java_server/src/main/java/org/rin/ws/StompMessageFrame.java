@@ -0,0 +1,106 @@
+package org.rin.ws;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * STOMP MESSAGE frame đã encode sẵn cho một lần broadcast.
+ * Header dùng chung + body chỉ encode một lần, mỗi session chỉ ghi thêm prefix subscription/message-id.
+ * Buffer có thể lấy từ pool của MessageFrameEncoder nên dùng đếm tham chiếu:
+ * người dựng frame giữ 1 tham chiếu, mỗi lần enqueue retain, gửi xong hoặc bị bỏ thì release.
+ */
+public final class StompMessageFrame {
+
+    private final ByteBuffer buffer;
+    // "destination:...\ncontent-type:...\ncontent-length:N\n\n<body>\0" - read-only, dùng chung cho mọi recipient
+    private final ByteBuffer shared;
+    private final String destination;
+    private final MessageFrameEncoder encoder;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    StompMessageFrame(String destination, ByteBuffer buffer, MessageFrameEncoder encoder) {
+        this.destination = destination;
+        this.buffer = buffer;
+        this.shared = buffer.asReadOnlyBuffer();
+        this.encoder = encoder;
+    }
+
+    void retain() {
+        refs.incrementAndGet();
+    }
+
+    /**
+     * Tham chiếu cuối cùng trả buffer về pool
+     */
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            encoder.release(buffer);
+        }
+    }
+
+    /**
+     * View mới trên phần dùng chung - không copy body
+     */
+    public ByteBuffer sharedSlice() {
+        return shared.duplicate();
+    }
+
+    public int sharedLength() {
+        return shared.remaining();
+    }
+
+    public String destination() {
+        return destination;
+    }
+
+    /**
+     * Gửi async cho một session dưới dạng một WebSocket message (2 fragment: prefix + phần dùng chung).
+     * Chỉ được gọi từ writer của OutboundQueue nên các fragment không bị xen với frame khác.
+     */
+    public void writeTo(Session session, String subscriptionId, WriteCallback callback) {
+        RemoteEndpoint remote = session.getRemote();
+        ByteBuffer prefix = encoder.prefix(subscriptionId);
+        remote.sendPartialBytes(prefix, false, new WriteCallback() {
+            @Override
+            public void writeSuccess() {
+                encoder.releasePrefix(prefix);
+                remote.sendPartialBytes(sharedSlice(), true, callback);
+            }
+
+            @Override
+            public void writeFailed(Throwable x) {
+                encoder.releasePrefix(prefix);
+                callback.writeFailed(x);
+            }
+        });
+    }
+
+    /**
+     * Escape header value theo STOMP 1.2 (\\, \n, \r, :)
+     */
+    static String escapeHeader(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = switch (c) {
+                case '\\' -> "\\\\";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case ':' -> "\\c";
+                default -> null;
+            };
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) sb.append(replacement);
+                else sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : value;
+    }
+}
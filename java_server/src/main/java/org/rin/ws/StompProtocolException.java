@@ -0,0 +1,12 @@
+package org.rin.ws;
+
+/**
+ * Frame STOMP sai cú pháp - message được gửi lại cho client qua ERROR frame
+ */
+public class StompProtocolException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public StompProtocolException(String message) {
+        super(message);
+    }
+}
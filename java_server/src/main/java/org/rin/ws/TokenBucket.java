@@ -0,0 +1,45 @@
+package org.rin.ws;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket không khóa: thay vì đếm token, giữ thời điểm bucket đầy trở lại (GCRA).
+ * Lấy một token = dời mốc đó thêm một interval bằng CAS, từ chối nếu mốc vượt quá now + burst * interval.
+ * tryAcquire không cấp phát, không khóa.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    // Thời điểm (nanoTime) bucket đầy lại; <= now nghĩa là đang đầy
+    private final AtomicLong fullAt;
+
+    /**
+     * Bucket đầy tại thời điểm nowNanos (cùng nguồn thời gian với tryAcquire)
+     */
+    TokenBucket(int permitsPerSecond, int burst, long nowNanos) {
+        this.intervalNanos = 1_000_000_000L / Math.max(1, permitsPerSecond);
+        this.capacityNanos = intervalNanos * Math.max(1, burst);
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            if (next - nowNanos > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Bucket đã hồi đầy - bỏ đi rồi tạo lại cũng không đổi hành vi
+     */
+    boolean isFull(long nowNanos) {
+        return fullAt.get() - nowNanos <= 0;
+    }
+}
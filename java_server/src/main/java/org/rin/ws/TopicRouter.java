@@ -0,0 +1,222 @@
+package org.rin.ws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Router destination dạng trie theo segment ("/topic/manager/users" -> "", "topic", "manager", "users").
+ * Pattern hỗ trợ wildcard:
+ * - "*"  khớp đúng một segment   (/topic/manager/users/*)
+ * - "**" khớp 0 hoặc nhiều segment (/topic/users/**)
+ * Đọc (match) không khóa: trie dùng ConcurrentHashMap, ghi (subscribe/unsubscribe) tuần tự qua một lock.
+ * Kết quả match cho từng destination cụ thể được cache kèm version, mỗi lần ghi tăng version nên cache cũ tự hết hạn.
+ * Map của node chỉ tạo khi cần (lá không có children, node trung gian không có subscriber) - mỗi subscription
+ * riêng (topic theo user/phòng) chỉ tốn một node lá và một map.
+ * Subscriber định danh bằng (session, subscription id): một session SUBSCRIBE cùng destination với hai id khác nhau
+ * là hai subscription, mỗi cái nhận MESSAGE riêng như STOMP 1.2 quy định.
+ */
+public final class TopicRouter {
+
+    private static final String SINGLE = "*";
+    private static final String MULTI = "**";
+
+    /**
+     * Một subscription khớp destination: gửi cho session nào, với subscription header nào
+     */
+    public record Subscriber(String sessionId, String subscriptionId) {}
+
+    private static final class Node {
+        // null khi rỗng, chỉ gán dưới writeLock; match đọc không khóa
+        volatile Map<String, Node> children;
+        volatile Set<Subscriber> subscribers;
+
+        Node child(String segment) {
+            Map<String, Node> map = children;
+            return map != null ? map.get(segment) : null;
+        }
+
+        boolean isEmpty() {
+            return children == null && subscribers == null;
+        }
+    }
+
+    private record CachedMatch(long version, List<Subscriber> subscribers) {}
+
+    private final int maxCachedDestinations;
+    private final Node root = new Node();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Tăng SAU khi ghi xong: match đọc được version mới chắc chắn thấy trie đã cập nhật
+    private final AtomicLong version = new AtomicLong();
+    private final Map<String, CachedMatch> matchCache = new ConcurrentHashMap<>();
+    // Pattern đang có ít nhất một subscriber, cập nhật cùng trie - không phải duyệt trie để lấy danh sách
+    private final Set<String> patterns = ConcurrentHashMap.newKeySet();
+
+    public TopicRouter(int maxCachedDestinations) {
+        this.maxCachedDestinations = maxCachedDestinations;
+    }
+
+    public void subscribe(String pattern, String sessionId, String subscriptionId) {
+        writeLock.lock();
+        try {
+            Node node = root;
+            for (String segment : split(pattern)) {
+                if (node.children == null) {
+                    node.children = new ConcurrentHashMap<>();
+                }
+                node = node.children.computeIfAbsent(segment, k -> new Node());
+            }
+            if (node.subscribers == null) {
+                node.subscribers = ConcurrentHashMap.newKeySet();
+                patterns.add(pattern);
+            }
+            node.subscribers.add(new Subscriber(sessionId, subscriptionId));
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void unsubscribe(String pattern, String sessionId, String subscriptionId) {
+        writeLock.lock();
+        try {
+            String[] segments = split(pattern);
+            if (remove(root, segments, 0, pattern, new Subscriber(sessionId, subscriptionId))) {
+                version.incrementAndGet();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Xóa subscriber và tỉa các node rỗng trên đường đi
+    private boolean remove(Node node, String[] segments, int i, String pattern, Subscriber subscriber) {
+        if (i == segments.length) {
+            Set<Subscriber> subscribers = node.subscribers;
+            if (subscribers == null || !subscribers.remove(subscriber)) {
+                return false;
+            }
+            if (subscribers.isEmpty()) {
+                node.subscribers = null;
+                patterns.remove(pattern);
+            }
+            return true;
+        }
+        Node child = node.child(segments[i]);
+        if (child == null) {
+            return false;
+        }
+        boolean removed = remove(child, segments, i + 1, pattern, subscriber);
+        if (removed && child.isEmpty()) {
+            node.children.remove(segments[i]);
+            if (node.children.isEmpty()) {
+                node.children = null;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Các subscription khớp destination cụ thể - chi phí theo độ sâu destination, không theo tổng số subscription
+     */
+    public List<Subscriber> match(String destination) {
+        long current = version.get();
+        CachedMatch cached = matchCache.get(destination);
+        if (cached != null && cached.version() == current) {
+            return cached.subscribers();
+        }
+
+        // Có ghi xen vào lúc duyệt thì entry mang version cũ, lần sau tự tính lại
+        Set<Subscriber> out = new LinkedHashSet<>();
+        collect(root, split(destination), 0, out);
+        List<Subscriber> result = out.isEmpty() ? List.of() : List.copyOf(out);
+        if (matchCache.size() >= maxCachedDestinations) {
+            matchCache.clear();
+        }
+        matchCache.put(destination, new CachedMatch(current, result));
+        return result;
+    }
+
+    private void collect(Node node, String[] segments, int i, Set<Subscriber> out) {
+        Node multi = node.child(MULTI);
+        if (i == segments.length) {
+            addAll(node, out);
+            if (multi != null) {
+                // "**" khớp 0 segment
+                collect(multi, segments, i, out);
+            }
+            return;
+        }
+
+        Node exact = node.child(segments[i]);
+        if (exact != null) {
+            collect(exact, segments, i + 1, out);
+        }
+        Node single = node.child(SINGLE);
+        if (single != null) {
+            collect(single, segments, i + 1, out);
+        }
+        if (multi != null) {
+            // "**" ăn từ 0 tới hết các segment còn lại
+            for (int j = i; j <= segments.length; j++) {
+                collect(multi, segments, j, out);
+            }
+        }
+    }
+
+    private static void addAll(Node node, Set<Subscriber> out) {
+        Set<Subscriber> subscribers = node.subscribers;
+        if (subscribers != null) {
+            out.addAll(subscribers);
+        }
+    }
+
+    /**
+     * Các pattern đang có subscriber (view chỉ đọc, cập nhật theo subscribe/unsubscribe)
+     */
+    public Set<String> patterns() {
+        return Collections.unmodifiableSet(patterns);
+    }
+
+    /**
+     * pattern -> các session đang subscribe (bản copy để hiển thị)
+     */
+    public Map<String, Set<String>> snapshot() {
+        Map<String, Set<String>> out = new HashMap<>();
+        snapshot(root, new ArrayList<>(), out);
+        return out;
+    }
+
+    private void snapshot(Node node, List<String> path, Map<String, Set<String>> out) {
+        Set<Subscriber> subscribers = node.subscribers;
+        if (subscribers != null && !subscribers.isEmpty()) {
+            Set<String> sessions = new HashSet<>();
+            for (Subscriber subscriber : subscribers) {
+                sessions.add(subscriber.sessionId());
+            }
+            out.put(String.join("/", path), Collections.unmodifiableSet(sessions));
+        }
+        Map<String, Node> children = node.children;
+        if (children == null) {
+            return;
+        }
+        for (Map.Entry<String, Node> entry : children.entrySet()) {
+            path.add(entry.getKey());
+            snapshot(entry.getValue(), path, out);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    static String[] split(String destination) {
+        // split một ký tự không dùng regex
+        return destination.split("/", -1);
+    }
+}
@@ -1,7 +1,12 @@
 package org.rin.ws;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UserSession {
     private String sessionId;
@@ -9,7 +14,13 @@ public class UserSession {
     private int port;
     private String username;
     private boolean isActive;
-    private Set<String> subscribedTopics;
+    // Encoding body của MESSAGE gửi cho session này, chọn lúc CONNECT
+    private volatile BodyEncoding bodyEncoding = BodyEncoding.JSON;
+    // {"from":"<username>" của envelope SEND, dựng lần đầu session gửi
+    private byte[] sendEnvelopePrefix;
+
+    // Bảng subscription riêng của session: subscription id -> topic (một topic có thể có nhiều id)
+    private final Map<String, String> topicsBySubscriptionId = new ConcurrentHashMap<>();
 
     public UserSession(String sessionId, String ip, int port, String username, boolean isActive) {
         this.sessionId = sessionId;
@@ -17,27 +28,56 @@ public class UserSession {
         this.port = port;
         this.username = username;
         this.isActive = isActive;
-        this.subscribedTopics = new HashSet<>();
     }
 
-    public void subscribeToTopic(String topic) {
-        subscribedTopics.add(topic);
+    /**
+     * Subscription định danh bằng id: cùng topic với id khác là subscription thứ hai, id cũ vẫn giữ.
+     * Id đã dùng cho topic khác thì chuyển sang topic mới
+     */
+    public void subscribeToTopic(String topic, String subscriptionId) {
+        topicsBySubscriptionId.put(subscriptionId, topic);
     }
 
-    public void unsubscribeFromTopic(String topic) {
-        subscribedTopics.remove(topic);
+    /**
+     * Hủy subscription theo id, trả về topic đã hủy (null nếu id không tồn tại)
+     */
+    public String unsubscribeById(String subscriptionId) {
+        return topicsBySubscriptionId.remove(subscriptionId);
     }
 
     public void unsubscribeFromAllTopics() {
-        subscribedTopics.clear();
+        topicsBySubscriptionId.clear();
     }
 
     public boolean isSubscribedToTopic(String topic) {
-        return subscribedTopics.contains(topic);
+        return topicsBySubscriptionId.containsValue(topic);
+    }
+
+    /**
+     * Các subscription id của topic (thường 0 hoặc 1) - duyệt bảng của riêng session này
+     */
+    public List<String> getSubscriptionIds(String topic) {
+        List<String> ids = null;
+        for (Map.Entry<String, String> subscription : topicsBySubscriptionId.entrySet()) {
+            if (subscription.getValue().equals(topic)) {
+                if (ids == null) {
+                    ids = new ArrayList<>(1);
+                }
+                ids.add(subscription.getKey());
+            }
+        }
+        return ids != null ? ids : List.of();
+    }
+
+    /**
+     * subscription id -> topic (view chỉ đọc)
+     */
+    public Map<String, String> getSubscriptions() {
+        return Collections.unmodifiableMap(topicsBySubscriptionId);
     }
 
     public Set<String> getSubscribedTopics() {
-        return new HashSet<>(subscribedTopics);
+        return Collections.unmodifiableSet(new HashSet<>(topicsBySubscriptionId.values()));
     }
 
     // Getters and Setters
@@ -47,4 +87,16 @@ public class UserSession {
     public String getUsername() { return username; }
     public boolean isActive() { return isActive; }
     public void setActive(boolean active) { isActive = active; }
-}
\ No newline at end of file
+    public BodyEncoding getBodyEncoding() { return bodyEncoding; }
+    public void setBodyEncoding(BodyEncoding bodyEncoding) { this.bodyEncoding = bodyEncoding; }
+
+    byte[] sendEnvelopePrefix() {
+        byte[] prefix = sendEnvelopePrefix;
+        if (prefix == null) {
+            // Race chỉ làm dựng lại mảng giống hệt
+            prefix = SendRelay.envelopePrefix(username);
+            sendEnvelopePrefix = prefix;
+        }
+        return prefix;
+    }
+}
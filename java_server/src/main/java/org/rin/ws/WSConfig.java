@@ -1,22 +1,31 @@
 package org.rin.ws;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.JsonElement;
 import io.javalin.websocket.WsContext;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import org.eclipse.jetty.websocket.api.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.rin.cluster.ClusterBroker;
+import org.rin.config.ClusterConfig;
+import org.rin.config.EnvConfig;
+import org.rin.config.JsonConfig;
+import org.rin.dto.SessionInfoDTO;
+import org.rin.metrics.CountHistogram;
+import org.rin.metrics.Counter;
+import org.rin.metrics.LatencyHistogram;
+import org.rin.metrics.MetricFamily;
+import org.rin.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Lớp quản lý WebSocket connections với STOMP protocol
@@ -26,32 +35,135 @@ public class WSConfig {
     public static final String WS_PATH = "/ws";
     private static final Logger log = LoggerFactory.getLogger(WSConfig.class);
 
+    /**
+     * Body của MESSAGE sinh từ SEND của client
+     */
+    record SendPayload(String from, long timestamp, Object content) {}
+
     // Singleton instance
     private static WSConfig instance;
 
-    // Data structures
-    private final Map<String, WsContext> wsClients = new ConcurrentHashMap<>();
-    private final Map<String, UserSession> users = new ConcurrentHashMap<>();
-    private final Map<String, Set<String>> topicSubscriptions = new ConcurrentHashMap<>();
-    private final Map<String, String> subscriptionIds = new ConcurrentHashMap<>();
-
-
-    // Scheduler cho heartbeat/ping
+    // Destination -> subscription, hỗ trợ wildcard * và **
+    private final TopicRouter router = new TopicRouter(EnvConfig.getInt("WS_ROUTER_CACHE_SIZE", 10_000));
+    // Token bucket cho SEND theo session / username / destination
+    private final SendAdmission sendAdmission = new SendAdmission();
+    // Session, user, decoder, hàng đợi gửi, heartbeat và index username của mọi kết nối
+    private final SessionRegistry registry = new SessionRegistry(router, sendAdmission::newSessionBucket);
+
+    // Cấu hình hàng đợi gửi của mỗi session
+    private final int outboundCapacity = EnvConfig.getInt("WS_OUTBOUND_QUEUE_CAPACITY", 1024);
+    private final OutboundQueue.OverflowPolicy overflowPolicy = EnvConfig.getEnum(
+            "WS_OUTBOUND_OVERFLOW_POLICY", OutboundQueue.OverflowPolicy.class, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+    // Topic latest-value (message mới thay thế hoàn toàn message cũ) - chỉ các topic này được COALESCE gộp.
+    // Mặc định rỗng: /topic/manager/users gửi delta từng user, gộp theo destination sẽ làm mất thay đổi
+    private final TopicRouter latestValueTopics = latestValueTopics(EnvConfig.getString("WS_COALESCE_TOPICS", ""));
+
+    // SEND: ghép nguyên body vào envelope (true) hay parse rồi serialize lại qua Jackson (false)
+    private final boolean sendRelay = EnvConfig.getBoolean("WS_SEND_RELAY", true);
+
+    // Chuyển message sang các node khác, nhận message của node khác qua deliverLocal
+    private final ClusterBroker cluster = ClusterConfig.getBroker();
+    // Subscription/session thay đổi -> công bố lại cho cluster ở lần tick tiếp theo
+    private final AtomicBoolean clusterStateDirty = new AtomicBoolean();
+
+    // message-id theo node + header cache + pool direct buffer cho MESSAGE frame
+    private final MessageFrameEncoder frameEncoder = new MessageFrameEncoder(cluster.nodeId(),
+            EnvConfig.getInt("WS_HEADER_CACHE_SIZE", 10_000),
+            EnvConfig.getInt("WS_FRAME_BUFFER_SIZE", 16 * 1024),
+            EnvConfig.getInt("WS_FRAME_POOL_SIZE", 256));
+
+    // Message gần nhất của các topic được lưu, client resume bằng header "resume-from" khi SUBSCRIBE
+    private final ReplayBuffer replayBuffer = createReplayBuffer();
+
+    // Heartbeat STOMP: server gửi mỗi sendMs, muốn nhận mỗi receiveMs (thương lượng với client lúc CONNECT)
+    private final long heartbeatSendMillis = EnvConfig.getLong("WS_HEARTBEAT_SEND_MS", 10_000);
+    private final long heartbeatReceiveMillis = EnvConfig.getLong("WS_HEARTBEAT_RECEIVE_MS", 10_000);
+    // Thời gian chờ thêm sau chu kỳ nhận trước khi gỡ session, 0 = gỡ ngay khi lỡ một heartbeat
+    private final long heartbeatGraceMillis = EnvConfig.getLong("WS_HEARTBEAT_GRACE_MS", 0);
+    // Session không nhận heartbeat STOMP thì ping WebSocket với chu kỳ này
+    private final long pingMillis = EnvConfig.getLong("WS_PING_INTERVAL_MS", 30_000);
+    private final HeartbeatWheel heartbeatWheel = new HeartbeatWheel(
+            EnvConfig.getLong("WS_HEARTBEAT_TICK_MS", 100), EnvConfig.getInt("WS_HEARTBEAT_WHEEL_SIZE", 512));
+
+    // Metric của WebSocket, xuất ở /metrics
+    private final Counter[] inboundFrames = inboundFrameCounters();
+    private final Counter protocolErrors = MetricsRegistry.getInstance()
+            .counter("ws_protocol_errors_total", "Inbound frames rejected as invalid STOMP").get();
+    private final MetricFamily<CountHistogram> fanOutRecipients = MetricsRegistry.getInstance()
+            .histogram("ws_fanout_recipients", "Local recipients per topic fan-out", "topic");
+    private final MetricFamily<LatencyHistogram> fanOutDuration = MetricsRegistry.getInstance()
+            .latency("ws_fanout_duration_seconds", "Time to queue one message for all local subscribers", "topic");
+    private final Counter fanOutFailures = MetricsRegistry.getInstance()
+            .counter("ws_fanout_failures_total", "Recipients that could not be queued during fan-out").get();
+
+    // Scheduler cho cleanup/cluster state
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
     private WSConfig() {
-        scheduler.scheduleAtFixedRate(() -> {
-            for (WsContext ctx : wsClients.values()) {
-                try {
-                    if (ctx.session.isOpen()) {
-                        ctx.sendPing(ByteBuffer.allocate(0));
-                    }
-                } catch (Exception ignored) {}
+        cluster.start(new ClusterBroker.Listener() {
+            @Override
+            public void onRemoteMessage(String destination, String contentType, byte[] body) {
+                // Destination /user/... chỉ đi qua onRemoteUserMessage, không giao theo router
+                if (!isUserDestination(destination)) {
+                    deliverLocal(destination, contentType, body);
+                }
             }
-        }, 0, 30, TimeUnit.SECONDS);
+
+            @Override
+            public void onRemoteUserMessage(String username, String destination, String contentType, byte[] body) {
+                deliverToUser(username, destination, contentType, body, null);
+            }
+        });
+        if (replayBuffer.enabled()) {
+            clusterStateDirty.set(true); // công bố interest của các topic replay ngay từ đầu
+        }
+        long clusterInterval = EnvConfig.getLong("CLUSTER_STATE_INTERVAL_MS", 100);
+        scheduler.scheduleWithFixedDelay(this::publishClusterState, clusterInterval, clusterInterval, TimeUnit.MILLISECONDS);
 
         // Cleanup every 5 minutes
         scheduler.scheduleAtFixedRate(this::cleanupInactiveConnections, 5, 5, TimeUnit.MINUTES);
+        scheduler.scheduleAtFixedRate(sendAdmission::evictIdle, 1, 1, TimeUnit.MINUTES);
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("ws_sessions", "Open WebSocket sessions on this node", registry::size);
+        metrics.gauge("ws_users", "Distinct connected usernames on this node", registry::userCount);
+        metrics.gauge("ws_subscriptions", "STOMP subscriptions on this node", registry::subscriptionCount);
+        metrics.gauge("ws_replay_bytes", "Message bytes held in replay rings", replayBuffer::bytes);
+    }
+
+    private static Counter[] inboundFrameCounters() {
+        MetricFamily<Counter> family = MetricsRegistry.getInstance()
+                .counter("ws_inbound_frames_total", "Inbound STOMP frames by command", "command");
+        StompFrame.Command[] commands = StompFrame.Command.values();
+        Counter[] counters = new Counter[commands.length];
+        for (StompFrame.Command command : commands) {
+            counters[command.ordinal()] = family.labels(command.name());
+        }
+        return counters;
+    }
+
+    private static TopicRouter latestValueTopics(String patterns) {
+        TopicRouter topics = new TopicRouter(1_000);
+        for (String pattern : patterns.split(",")) {
+            if (!pattern.isBlank()) {
+                topics.subscribe(pattern.trim(), "coalesce", pattern.trim());
+            }
+        }
+        return topics;
+    }
+
+    private ReplayBuffer createReplayBuffer() {
+        String spillDir = EnvConfig.getString("WS_REPLAY_SPILL_DIR", "");
+        // Mặc định chỉ lưu topic do server publish - topic client SEND được thì ai cũng có thể làm đầy buffer
+        return new ReplayBuffer(cluster.nodeId(),
+                EnvConfig.getInt("WS_REPLAY_CAPACITY", 256),
+                Set.of(EnvConfig.getString("WS_REPLAY_TOPICS", "/topic/manager/users").split(",")),
+                EnvConfig.getInt("WS_REPLAY_MAX_TOPICS", 1024),
+                EnvConfig.getLong("WS_REPLAY_TOPIC_MAX_BYTES", 1024 * 1024),
+                EnvConfig.getLong("WS_REPLAY_MAX_BYTES", 64 * 1024 * 1024),
+                spillDir.isBlank() ? null : Path.of(spillDir),
+                EnvConfig.getInt("WS_REPLAY_SPILL_SEGMENT_BYTES", 8 * 1024 * 1024),
+                EnvConfig.getInt("WS_REPLAY_SPILL_SEGMENTS", 4));
     }
 
     public static synchronized WSConfig getInstance() {
@@ -65,328 +177,390 @@ public class WSConfig {
      * Xử lý khi client ngắt kết nối
      */
     public void onDisconnect(WsContext ctx) {
-        String sessionId = ctx.sessionId();
-        UserSession user = users.get(sessionId);
-        if (user != null) {
-            log.info("❌ Disconnected: {}", user.getUsername());
-            unsubscribeFromAllTopics(sessionId);
+        SessionRegistry.Entry entry = removeSession(ctx.sessionId());
+        if (entry != null && entry.user() != null) {
+            log.info("❌ Disconnected: {}", entry.user().getUsername());
         }
-        wsClients.remove(sessionId);
-        users.remove(sessionId);
     }
 
     /**
-     * Xử lý message từ client - CHỈ XỬ LÝ STOMP
+     * Gỡ session cùng mọi subscription của nó trong một bước
      */
-    public void onMessage(WsContext ctx, String message) {
-//        log.info("Received message: {}", message);
+    private SessionRegistry.Entry removeSession(String sessionId) {
+        SessionRegistry.Entry entry = registry.remove(sessionId);
+        if (entry != null) {
+            clusterStateDirty.set(true);
+        }
+        return entry;
+    }
 
-        // CHỈ XỬ LÝ STOMP FRAMES
-        if (isStompFrame(message)) {
-            handleStompFrame(ctx, message);
-        } else {
-            // Nếu không phải STOMP frame, gửi lỗi
-            sendStompError(ctx, "Invalid STOMP frame");
+    /**
+     * Gửi pattern đang subscribe + danh sách session của node này cho cluster (chỉ khi có thay đổi)
+     */
+    private void publishClusterState() {
+        if (!clusterStateDirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            // Topic replay phải nhận đủ message kể cả khi không có ai subscribe ở node này
+            // router.patterns() giữ sẵn, không dựng lại map pattern -> session như snapshot()
+            Set<String> interest = new HashSet<>(router.patterns());
+            interest.addAll(replayBuffer.patterns());
+            // Message riêng của user đi theo username, không theo pattern /user/...
+            interest.removeIf(WSConfig::isUserDestination);
+            cluster.updateInterest(interest);
+            cluster.updateUsers(registry.usernames());
+            cluster.updateSessions(getLocalSessions());
+        } catch (Exception e) {
+            log.error("❌ Failed to publish cluster state: {}", e.getMessage());
         }
     }
 
-    private boolean isStompFrame(String message) {
-        return message.startsWith("CONNECT") ||
-                message.startsWith("STOMP") ||
-                message.startsWith("SUBSCRIBE") ||
-                message.startsWith("UNSUBSCRIBE") ||
-                message.startsWith("SEND") ||
-                message.startsWith("DISCONNECT");
+    private static boolean isUserDestination(String destination) {
+        return destination.equals("/user") || destination.startsWith("/user/");
+    }
+
+    /**
+     * Xử lý message từ client - CHỈ XỬ LÝ STOMP
+     */
+    public void onMessage(WsContext ctx, String message) {
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        onMessage(ctx, data, 0, data.length);
     }
 
-    private void handleStompFrame(WsContext ctx, String frame) {
-        if (frame.startsWith("CONNECT") || frame.startsWith("STOMP")) {
-            handleStompConnect(ctx, frame);
-        } else if (frame.startsWith("SUBSCRIBE")) {
-            handleStompSubscribe(ctx, frame);
-        } else if (frame.startsWith("UNSUBSCRIBE")) {
-            handleStompUnsubscribe(ctx, frame);
-        } else if (frame.startsWith("SEND")) {
-            handleStompSend(ctx, frame);
-        } else if (frame.startsWith("DISCONNECT")) {
-            handleStompDisconnect(ctx, frame);
+    /**
+     * Xử lý message dạng binary - body có thể là binary theo content-length
+     */
+    public void onMessage(WsContext ctx, byte[] data, int offset, int length) {
+        SessionRegistry.Entry entry = registry.open(ctx, this::newOutboundQueue);
+        Heartbeat heartbeat = entry.heartbeat();
+        if (heartbeat != null) {
+            heartbeat.touch();
+        }
+        StompDecoder decoder = entry.decoder();
+        try {
+            // Một WebSocket message có thể chứa nhiều frame
+            decoder.decode(data, offset, length, frame -> handleStompFrame(entry, frame));
+        } catch (StompProtocolException e) {
+            protocolErrors.increment();
+            decoder.reset();
+            sendStompError(entry, e.getMessage());
         }
     }
 
-    private void handleStompConnect(WsContext ctx, String frame) {
+    private void handleStompFrame(SessionRegistry.Entry entry, StompFrame frame) {
+        inboundFrames[frame.command().ordinal()].increment();
+        switch (frame.command()) {
+            case CONNECT, STOMP -> handleStompConnect(entry, frame);
+            case SUBSCRIBE -> handleStompSubscribe(entry, frame);
+            case UNSUBSCRIBE -> handleStompUnsubscribe(entry, frame);
+            case SEND -> handleStompSend(entry, frame);
+            case DISCONNECT -> handleStompDisconnect(entry, frame);
+            default -> sendStompError(entry, "Unsupported STOMP command: " + frame.command());
+        }
+    }
+
+    private void handleStompConnect(SessionRegistry.Entry entry, StompFrame frame) {
+        WsContext ctx = entry.ctx();
         String sessionId = ctx.sessionId();
         InetSocketAddress remote = (InetSocketAddress) ctx.session.getRemoteAddress();
         String ip = remote.getAddress().getHostAddress();
         String username = ctx.queryParam("username");
 
         if (username == null || username.trim().isEmpty()) {
-            sendStompError(ctx, "Username is required");
-            ctx.session.close();
+            sendStompError(entry, "Username is required");
+            entry.queue().closeAfterFlush(StatusCode.POLICY_VIOLATION, "Username is required");
             return;
         }
 
         // Tạo user session
         UserSession user = new UserSession(sessionId, ip, remote.getPort(), username, true);
-        users.put(sessionId, user);
-        wsClients.put(sessionId, ctx);
+        user.setBodyEncoding(BodyEncoding.fromHeader(frame.header("body-encoding")));
+
+        long[] heartBeat = Heartbeat.negotiate(frame.header("heart-beat"), heartbeatSendMillis, heartbeatReceiveMillis);
+        Heartbeat heartbeat = new Heartbeat(sessionId, ctx.session, entry.queue(),
+                heartBeat[0], heartBeat[1], heartbeatGraceMillis, pingMillis, this::evictDeadSession);
+        if (!registry.connect(entry, user, heartbeat)) {
+            return; // session đã bị gỡ trong lúc CONNECT
+        }
+        clusterStateDirty.set(true);
+        startHeartbeat(heartbeat, heartBeat[0], heartBeat[1]);
 
-        // Gửi STOMP CONNECTED frame
+        // Gửi STOMP CONNECTED frame, kèm heartbeat, encoding và nén đã chọn cho session
         String connectedFrame = "CONNECTED\n" +
                 "version:1.2\n" +
-                "heart-beat:0,0\n" +
+                "heart-beat:" + heartbeatSendMillis + "," + heartbeatReceiveMillis + "\n" +
                 "user-name:" + username + "\n" +
+                "body-encoding:" + user.getBodyEncoding().name().toLowerCase() + "\n" +
+                (isDeflateNegotiated(ctx) ? "compression:permessage-deflate\n" : "") +
                 "\n\u0000";
 
-        ctx.send(connectedFrame);
+        send(entry, connectedFrame);
         log.info("✅ STOMP Connected: {} ({})", username, ip);
     }
 
-//    private void handleStompSubscribe(WsContext ctx, String frame) {
-//        String destination = extractHeaderValue(frame, "destination");
-//        String subscriptionId = extractHeaderValue(frame, "id");
-//
-//        if (destination != null && subscriptionId != null) {
-//            String sessionId = ctx.sessionId();
-//            subscribeToTopic(sessionId, destination);
-//
-//            // Lưu subscription ID
-//            String key = sessionId + ":" + subscriptionId;
-//            subscriptionIds.put(key, destination);
-//        }
-//    }
-
-    private void handleStompSubscribe(WsContext ctx, String frame) {
-        String destination = extractHeaderValue(frame, "destination");
-        String subscriptionId = extractHeaderValue(frame, "id");
+    private void startHeartbeat(Heartbeat heartbeat, long outgoingMillis, long incomingMillis) {
+        // Lần chạy đầu lệch ngẫu nhiên trong một chu kỳ để các session không bị ping cùng lúc
+        long period = outgoingMillis > 0 ? outgoingMillis : incomingMillis > 0 ? incomingMillis : pingMillis;
+        heartbeat.start(heartbeatWheel, period > 0 ? ThreadLocalRandom.current().nextLong(period) : 0);
+    }
 
-        if (destination != null && subscriptionId != null) {
-            String sessionId = ctx.sessionId();
-            subscribeToTopic(sessionId, destination);
+    /**
+     * Không nhận được heartbeat/frame trong thời gian cho phép hoặc socket đã đóng -> bỏ khỏi fan-out ngay
+     */
+    private void evictDeadSession(String sessionId) {
+        SessionRegistry.Entry entry = removeSession(sessionId);
+        if (entry == null) {
+            return;
+        }
+        log.warn("💀 Heartbeat timeout: {}", entry.user() != null ? entry.user().getUsername() : sessionId);
+        if (entry.ctx().session.isOpen()) {
+            entry.ctx().session.disconnect();
+        }
+    }
 
-            // Lưu subscription ID toi
-            String key = sessionId + ":" + subscriptionId;
-            subscriptionIds.put(key, destination);
+    /**
+     * permessage-deflate được thương lượng lúc handshake WebSocket (client đề nghị, server chấp nhận)
+     */
+    private static boolean isDeflateNegotiated(WsContext ctx) {
+        for (ExtensionConfig extension : ctx.session.getUpgradeResponse().getExtensions()) {
+            if ("permessage-deflate".equals(extension.getName())) {
+                return true;
+            }
         }
+        return false;
     }
 
-    private void handleStompUnsubscribe(WsContext ctx, String frame) {
-        String subscriptionId = extractHeaderValue(frame, "id");
+    private void handleStompSubscribe(SessionRegistry.Entry entry, StompFrame frame) {
+        String destination = frame.header("destination");
+        String subscriptionId = frame.header("id");
 
-        if (subscriptionId != null) {
-            String sessionId = ctx.sessionId();
-            String key = sessionId + ":" + subscriptionId;
-            String destination = subscriptionIds.get(key);
+        if (destination != null && subscriptionId != null) {
+            String sessionId = entry.ctx().sessionId();
+            String resumeFrom = frame.header("resume-from");
+            UserSession user = entry.user();
+            String resumeTopic = resumeFrom != null && user != null ? destination.replace("{username}", user.getUsername()) : null;
+            ReplayBuffer.TopicLog replay = resumeTopic != null ? replayBuffer.topic(resumeTopic) : null;
+
+            String topic;
+            if (replay == null) {
+                topic = registry.subscribe(sessionId, destination, subscriptionId);
+            } else {
+                // Subscribe + replay dưới lock của topic: không lỡ, không đảo thứ tự so với message mới
+                topic = replay.resume(resumeFrom, outboundCapacity / 2,
+                        () -> registry.subscribe(sessionId, destination, subscriptionId),
+                        new ReplayBuffer.ResumeSink() {
+                            @Override
+                            public void message(String seq, String contentType, byte[] body) {
+                                PayloadFrames frames = new PayloadFrames(frameEncoder, resumeTopic, seq, contentType, body, null);
+                                try {
+                                    entry.queue().sendFrame(frames.frameFor(user.getBodyEncoding()), subscriptionId);
+                                } finally {
+                                    frames.release();
+                                }
+                            }
+
+                            @Override
+                            public void gap(String seq) {
+                                StompMessageFrame gapFrame = frameEncoder.encodeGap(resumeTopic, seq);
+                                entry.queue().sendFrame(gapFrame, subscriptionId);
+                                gapFrame.release();
+                            }
+                        });
+            }
+            if (topic != null) {
+                clusterStateDirty.set(true);
+                log.info("📌 {} subscribed to: {}", entry.user().getUsername(), topic);
+            }
+        }
+    }
 
+    private void handleStompUnsubscribe(SessionRegistry.Entry entry, StompFrame frame) {
+        String subscriptionId = frame.header("id");
+
+        if (subscriptionId != null) {
+            String destination = registry.unsubscribe(entry.ctx().sessionId(), subscriptionId);
             if (destination != null) {
-                unsubscribeFromTopic(sessionId, destination);
-                subscriptionIds.remove(key);
+                clusterStateDirty.set(true);
                 log.info("📌 STOMP Unsubscribe: {} (id: {})", destination, subscriptionId);
             }
         }
     }
 
-    private void handleStompSend(WsContext ctx, String frame) {
-        String destination = extractHeaderValue(frame, "destination");
-        String content = extractBodyContent(frame);
-        String contentType = extractHeaderValue(frame, "content-type");
+    private void handleStompSend(SessionRegistry.Entry entry, StompFrame frame) {
+        String destination = frame.header("destination");
+        String contentType = frame.header("content-type");
 
-        if (destination != null && content != null) {
+        if (destination != null) {
             try {
-                UserSession user = users.get(ctx.sessionId());
+                UserSession user = entry.user();
                 String username = user != null ? user.getUsername() : "unknown";
 
-                // Tạo payload object để gửi
-                Map<String, Object> payload = new HashMap<>();
-                payload.put("from", username);
-                payload.put("timestamp", System.currentTimeMillis());
+                // Chặn trước khi đụng tới body và fan-out
+                SendAdmission.Scope exceeded = sendAdmission.admit(entry.sendBucket(), username, destination);
+                if (exceeded != null) {
+                    log.debug("🚦 SEND from {} to {} rejected: {} rate limit", username, destination, exceeded.label());
+                    if (sendAdmission.policy() == SendAdmission.RejectPolicy.ERROR) {
+                        sendStompError(entry, "Rate limit exceeded (" + exceeded.label() + ")");
+                    }
+                    return;
+                }
+
+                if (sendRelay) {
+                    // Ghép nguyên byte body vào envelope, không dựng cây JSON
+                    byte[] prefix = user != null ? user.sendEnvelopePrefix() : SendRelay.envelopePrefix(username);
+                    relayToTopic(destination, SendRelay.envelope(prefix, frame, "application/json".equals(contentType)));
+                    log.debug("📤 User {} sent message to topic: {}", username, destination);
+                    return;
+                }
 
                 // Xử lý content type
+                Object content;
                 if ("application/json".equals(contentType)) {
                     try {
-                        // Parse JSON content nếu là JSON
-                        JsonElement jsonContent = JsonParser.parseString(content);
-                        payload.put("content", jsonContent);
+                        // Parse JSON content thẳng từ byte của frame
+                        content = JsonConfig.readTree(frame.bodyStream());
                     } catch (Exception e) {
                         // Fallback: dùng raw content nếu parse lỗi
-                        payload.put("content", content);
+                        content = frame.bodyAsString();
                     }
                 } else {
                     // Text content
-                    payload.put("content", content);
+                    content = frame.bodyAsString();
                 }
+                SendPayload payload = new SendPayload(username, System.currentTimeMillis(), content);
 
                 // GỬI BẰNG buildAndSendToTopic - không dùng createStompMessage nữa
                 buildAndSendToTopic(destination, payload);
 
-                log.info("📤 User {} sent message to topic: {}", username, destination);
+                log.debug("📤 User {} sent message to topic: {}", username, destination);
 
             } catch (Exception e) {
                 log.error("❌ Failed to process SEND frame", e);
-                sendStompError(ctx, "Failed to process message: " + e.getMessage());
+                sendStompError(entry, "Failed to process message: " + e.getMessage());
             }
         }
     }
 
-    private void handleStompDisconnect(WsContext ctx, String frame) {
-        String sessionId = ctx.sessionId();
-        UserSession user = users.get(sessionId);
+    private void handleStompDisconnect(SessionRegistry.Entry entry, StompFrame frame) {
+        UserSession user = entry.user();
 
         if (user != null) {
             log.info("🔌 STOMP Disconnect: {}", user.getUsername());
 
             // Gửi receipt nếu có
-            String receiptId = extractHeaderValue(frame, "receipt");
+            String receiptId = frame.header("receipt");
             if (receiptId != null) {
                 String receiptFrame = "RECEIPT\nreceipt-id:" + receiptId + "\n\n\u0000";
-                ctx.send(receiptFrame);
+                send(entry, receiptFrame);
             }
 
             // Cleanup
-            unsubscribeFromAllTopics(sessionId);
-            wsClients.remove(sessionId);
-            users.remove(sessionId);
-            ctx.session.close();
+            entry.queue().closeAfterFlush(StatusCode.NORMAL, null);
+            removeSession(entry.ctx().sessionId());
         }
     }
 
-    private String extractHeaderValue(String frame, String headerName) {
-        String[] lines = frame.split("\n");
-        for (String line : lines) {
-            if (line.startsWith(headerName + ":")) {
-                return line.substring(headerName.length() + 1).trim();
-            }
-        }
-        return null;
+    private void sendStompError(SessionRegistry.Entry entry, String message) {
+        String errorFrame = "ERROR\nmessage:" + message + "\n\n\u0000";
+        send(entry, errorFrame);
     }
 
-    private String extractBodyContent(String frame) {
-        String[] lines = frame.split("\n");
-        for (int i = 0; i < lines.length; i++) {
-            if (lines[i].equals("") && i + 1 < lines.length) {
-                return lines[i + 1];
-            }
-        }
-        return null;
+    /**
+     * Gửi text frame qua hàng đợi của session - không block thread gọi
+     */
+    private void send(SessionRegistry.Entry entry, String frame) {
+        entry.queue().sendText(frame);
     }
 
-
-    private void sendStompError(WsContext ctx, String message) {
-        String errorFrame = "ERROR\nmessage:" + message + "\n\n\u0000";
-        ctx.send(errorFrame);
+    private OutboundQueue newOutboundQueue(WsContext ctx) {
+        return new OutboundQueue(ctx.sessionId(), ctx.session, outboundCapacity, overflowPolicy);
     }
 
-    private void subscribeToTopic(String sessionId, String topic) {
-        UserSession user = users.get(sessionId);
-        if (user != null) {
-            String processedTopic = topic.replace("{username}", user.getUsername());
-            user.subscribeToTopic(processedTopic);
-
-            topicSubscriptions.computeIfAbsent(processedTopic, k -> ConcurrentHashMap.newKeySet())
-                    .add(sessionId);
-
-            log.info("📌 {} subscribed to: {}", user.getUsername(), processedTopic);
-        }
+    public void buildAndSendToTopic(String topic, Object jsonData) throws JsonProcessingException {
+        // Serialize MỘT lần, dùng chung cho subscriber local và các node khác
+        byte[] body = JsonConfig.toBytes(jsonData);
+        deliverLocal(topic, "application/json", body, jsonData);
+        cluster.publish(topic, "application/json", body);
     }
 
-    private void unsubscribeFromTopic(String sessionId, String topic) {
-        UserSession user = users.get(sessionId);
-        if (user != null) {
-            String processedTopic = topic.replace("{username}", user.getUsername());
-            user.unsubscribeFromTopic(processedTopic);
-
-            Set<String> subscribers = topicSubscriptions.get(processedTopic);
-            if (subscribers != null) {
-                subscribers.remove(sessionId);
-                if (subscribers.isEmpty()) {
-                    topicSubscriptions.remove(processedTopic);
-                }
-            }
+    /**
+     * Body đã là JSON hoàn chỉnh (envelope của SEND relay) - gửi thẳng, không serialize
+     */
+    private void relayToTopic(String topic, byte[] body) {
+        deliverLocal(topic, "application/json", body);
+        cluster.publish(topic, "application/json", body);
+    }
 
-            log.info("📌 {} unsubscribed from: {}", user.getUsername(), processedTopic);
-        }
+    /**
+     * Giao message cho subscriber của node này (message tạo ở đây hoặc nhận từ node khác)
+     */
+    private void deliverLocal(String topic, String contentType, byte[] body) {
+        deliverLocal(topic, contentType, body, null);
     }
 
-    private void unsubscribeFromAllTopics(String sessionId) {
-        UserSession user = users.get(sessionId);
-        if (user != null) {
-            Set<String> topics = user.getSubscribedTopics();
-            for (String topic : topics) {
-                Set<String> subscribers = topicSubscriptions.get(topic);
-                if (subscribers != null) {
-                    subscribers.remove(sessionId);
-                    if (subscribers.isEmpty()) {
-                        topicSubscriptions.remove(topic);
-                    }
-                }
-            }
-            user.unsubscribeFromAllTopics();
-            subscriptionIds.keySet().removeIf(key -> key.startsWith(sessionId + ":"));
+    private void deliverLocal(String topic, String contentType, byte[] body, Object value) {
+        ReplayBuffer.TopicLog replay = replayBuffer.topic(topic);
+        if (replay == null) {
+            fanOut(topic, null, contentType, body, value);
+            return;
         }
+        // Gán seq và fan-out dưới lock của topic để SUBSCRIBE resume không chen vào giữa
+        replay.publish(contentType, body, seq -> fanOut(topic, seq, contentType, body, value));
     }
 
-    public void buildAndSendToTopic(String topic, Object jsonData) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        String jsonString = mapper.writeValueAsString(jsonData);
+    private void fanOut(String topic, String seq, String contentType, byte[] body, Object value) {
+        long start = System.nanoTime();
+        // Router trả về cả subscription id của từng session (kể cả khi khớp qua wildcard)
+        List<TopicRouter.Subscriber> subscribers = router.match(topic);
+        if (subscribers.isEmpty()) {
+            fanOutRecipients.labels(topic).record(0);
+            return;
+        }
 
-        // Lấy danh sách subscribers để thêm subscription headers
-        Set<String> subscribers = topicSubscriptions.get(topic);
+        // Body + header của mỗi encoding chỉ encode MỘT lần cho cả broadcast
+        PayloadFrames frames = new PayloadFrames(frameEncoder, topic, seq, contentType, body, value);
+        boolean latestValue = overflowPolicy == OutboundQueue.OverflowPolicy.COALESCE
+                && !latestValueTopics.match(topic).isEmpty();
 
-        if (subscribers != null && !subscribers.isEmpty()) {
-            for (String sessionId : subscribers) {
-                WsContext ctx = wsClients.get(sessionId);
-                if (ctx != null && ctx.session.isOpen()) {
+        int sentCount = 0;
+        try {
+            for (TopicRouter.Subscriber subscriber : subscribers) {
+                SessionRegistry.Entry entry = registry.get(subscriber.sessionId());
+                if (entry != null) {
                     try {
-                        // Tìm subscription ID cho session này
-                        String subscriptionId = findSubscriptionId(sessionId, topic);
-
-                        // Tạo STOMP message với subscription header - GIỐNG SPRING BOOT
-                        String stompMessage = "MESSAGE\n" +
-                                "destination:" + topic + "\n" +
-                                "content-type:application/json\n" +
-                                "message-id:" + UUID.randomUUID() + "\n" +
-                                "subscription:" + subscriptionId + "\n" +
-                                "content-length:" + jsonString.getBytes(StandardCharsets.UTF_8).length + "\n" +
-                                "\n" +
-                                jsonString + "\n" +
-                                "\0";
-//                        log.info(stompMessage);
-
-                        ctx.send(stompMessage);
-                        log.info("✅ Sent to {} with subscription: {}", topic, subscriptionId);
+                        UserSession user = entry.user();
+                        BodyEncoding encoding = user != null ? user.getBodyEncoding() : BodyEncoding.JSON;
+                        entry.queue().sendFrame(frames.frameFor(encoding), subscriber.subscriptionId(), latestValue);
+                        sentCount++;
                     } catch (Exception e) {
-                        log.error("❌ Failed to send to session {}: {}", sessionId, e.getMessage());
+                        fanOutFailures.increment();
+                        log.debug("❌ Failed to send to session {}: {}", subscriber.sessionId(), e.getMessage());
                     }
                 }
             }
+        } finally {
+            frames.release();
         }
-    }
-
-    /**
-     * Tìm subscription ID cho session và topic - optimized
-     */
-    private String findSubscriptionId(String sessionId, String topic) {
-        return subscriptionIds.entrySet().stream()
-                .filter(entry -> entry.getKey().startsWith(sessionId + ":") &&
-                        entry.getValue().equals(topic))
-                .findFirst()
-                .map(entry -> entry.getKey().split(":")[1])
-                .orElse("sub-" + Math.abs(topic.hashCode() % 1000)); // Fallback
+        fanOutRecipients.labels(topic).record(sentCount);
+        fanOutDuration.labels(topic).recordNanos(System.nanoTime() - start);
+        log.debug("✅ Queued to {}: {} recipients", topic, sentCount);
     }
 
     private void sendToTopic(String topic, String stompMessage) {
-        Set<String> subscribers = topicSubscriptions.get(topic);
-        if (subscribers != null && !subscribers.isEmpty()) {
+        List<TopicRouter.Subscriber> subscribers = router.match(topic);
+        if (!subscribers.isEmpty()) {
             int sentCount = 0;
-            for (String sessionId : subscribers) {
-                WsContext ctx = wsClients.get(sessionId);
-                if (ctx != null && ctx.session.isOpen()) {
+            for (TopicRouter.Subscriber subscriber : subscribers) {
+                SessionRegistry.Entry entry = registry.get(subscriber.sessionId());
+                if (entry != null && entry.ctx().session.isOpen()) {
                     try {
-                        ctx.send(stompMessage);
+                        send(entry, stompMessage);
                         sentCount++;
                     } catch (Exception ignored) {}
                 }
             }
-            log.info("📤 Sent to topic '{}': {} recipients", topic, sentCount);
+            log.debug("📤 Sent to topic '{}': {} recipients", topic, sentCount);
         }
     }
 
@@ -394,25 +568,149 @@ public class WSConfig {
 
 
     /**
-     * Gửi message đến specific user
+     * Gửi message đến mọi session của user qua topic "/user/{username}"
      */
+    public void sendToUser(String username, Object data) throws JsonProcessingException {
+        sendToUser(username, "", data);
+    }
+
     /**
-     * Gửi message đến specific user - dùng buildAndSendToTopic
+     * Gửi message đến mọi session (thiết bị) của user.
+     * Session nhận nếu đã subscribe "/user/{username}" + destination hoặc "/user" + destination.
      */
-    public void sendToUser(String username, Object data) throws JsonProcessingException {
-        String userTopic = "/user/" + username;
-        buildAndSendToTopic(userTopic, data);
+    public void sendToUser(String username, String destination, Object data) throws JsonProcessingException {
+        byte[] body = JsonConfig.toBytes(data);
+        deliverToUser(username, destination, "application/json", body, data);
+        // Node khác đang có session của user giao lại bằng deliverToUser (cả "/user/{username}..." lẫn "/user...")
+        cluster.publishToUser(username, destination, "application/json", body);
+    }
+
+    /**
+     * Chỉ duyệt session của user này qua index, không quét toàn bộ session
+     */
+    private void deliverToUser(String username, String destination, String contentType, byte[] body, Object value) {
+        Set<String> sessionIds = registry.sessionsOf(username);
+        if (sessionIds == null) {
+            return;
+        }
+
+        String userTopic = "/user/" + username + destination;
+        String sharedTopic = destination.isEmpty() ? null : "/user" + destination;
+        // Frame dựng lazy, tối đa một lần cho mỗi dạng destination và encoding
+        PayloadFrames userFrames = new PayloadFrames(frameEncoder, userTopic, null, contentType, body, value);
+        PayloadFrames sharedFrames = sharedTopic != null
+                ? new PayloadFrames(frameEncoder, sharedTopic, null, contentType, body, value) : null;
+
+        int sentCount = 0;
+        try {
+            for (String sessionId : sessionIds) {
+                SessionRegistry.Entry entry = registry.get(sessionId);
+                UserSession user = entry != null ? entry.user() : null;
+                if (user == null) {
+                    continue;
+                }
+                OutboundQueue queue = entry.queue();
+                for (String subscriptionId : user.getSubscriptionIds(userTopic)) {
+                    queue.sendFrame(userFrames.frameFor(user.getBodyEncoding()), subscriptionId);
+                    sentCount++;
+                }
+                if (sharedTopic != null) {
+                    for (String subscriptionId : user.getSubscriptionIds(sharedTopic)) {
+                        queue.sendFrame(sharedFrames.frameFor(user.getBodyEncoding()), subscriptionId);
+                        sentCount++;
+                    }
+                }
+            }
+        } finally {
+            userFrames.release();
+            if (sharedFrames != null) {
+                sharedFrames.release();
+            }
+        }
+        log.debug("✅ Queued to user {}: {} deliveries", username, sentCount);
     }
 
     public Map<String, Set<String>> getTopicSubscriptions() {
-        return new ConcurrentHashMap<>(topicSubscriptions);
+        return router.snapshot();
     }
 
     public List<UserSession> getActiveUsers() {
-        return new ArrayList<>(users.values());
+        List<UserSession> active = new ArrayList<>(registry.size());
+        for (SessionRegistry.Entry entry : registry.entries()) {
+            if (entry.user() != null) {
+                active.add(entry.user());
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Session đang kết nối trên toàn cluster (node này + các node khác)
+     */
+    public List<SessionInfoDTO> getClusterUsers() {
+        List<SessionInfoDTO> sessions = getLocalSessions();
+        sessions.addAll(cluster.remoteSessions());
+        return sessions;
+    }
+
+    /**
+     * username -> số session trên toàn cluster, phần local đọc thẳng từ index
+     */
+    public Map<String, Integer> getSessionCountsByUser() {
+        Map<String, Integer> counts = registry.countsByUsername();
+        for (SessionInfoDTO session : cluster.remoteSessions()) {
+            counts.merge(session.getUsername(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Số session của một user trên toàn cluster
+     */
+    public int getSessionCount(String username) {
+        Set<String> local = registry.sessionsOf(username);
+        int count = local != null ? local.size() : 0;
+        for (SessionInfoDTO session : cluster.remoteSessions()) {
+            if (session.getUsername().equals(username)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<SessionInfoDTO> getLocalSessions() {
+        List<SessionInfoDTO> sessions = new ArrayList<>(registry.size());
+        for (UserSession user : getActiveUsers()) {
+            sessions.add(new SessionInfoDTO(cluster.nodeId(), user.getSessionId(), user.getUsername(),
+                    user.getIp(), user.getPort()));
+        }
+        return sessions;
+    }
+
+    /**
+     * Số liệu WebSocket cho /metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("sessions", registry.size());
+        out.put("sendAdmission", sendAdmission.metrics());
+        return out;
+    }
+
+    /**
+     * Thống kê hàng đợi gửi của từng session (depth, dropped, coalesced...)
+     */
+    public List<OutboundQueue.Stats> getOutboundQueueStats() {
+        List<OutboundQueue.Stats> stats = new ArrayList<>(registry.size());
+        for (SessionRegistry.Entry entry : registry.entries()) {
+            stats.add(entry.queue().stats());
+        }
+        return stats;
     }
 
     public void shutdown() {
+        cluster.shutdown();
+        heartbeatWheel.shutdown();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -426,14 +724,10 @@ public class WSConfig {
      * Cleanup inactive connections định kỳ
      */
     public void cleanupInactiveConnections() {
-        Iterator<Map.Entry<String, WsContext>> iterator = wsClients.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, WsContext> entry = iterator.next();
-            if (!entry.getValue().session.isOpen()) {
-                log.info("🧹 Cleaning up inactive connection: {}", entry.getKey());
-                iterator.remove();
-                users.remove(entry.getKey());
-                unsubscribeFromAllTopics(entry.getKey());
+        for (SessionRegistry.Entry entry : registry.entries()) {
+            if (!entry.ctx().session.isOpen()) {
+                log.info("🧹 Cleaning up inactive connection: {}", entry.ctx().sessionId());
+                removeSession(entry.ctx().sessionId());
             }
         }
     }
@@ -0,0 +1,279 @@
+package org.rin.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Các node TcpClusterBroker thật trên localhost, port ngẫu nhiên
+ */
+class TcpClusterBrokerTest {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+    private static final long TIMEOUT_MS = 10_000;
+
+    private final List<TcpClusterBroker> brokers = new ArrayList<>();
+
+    /**
+     * Ghi lại message nhận được dạng "topic /dest" / "user name/dest"
+     */
+    private static final class Recorder implements ClusterBroker.Listener {
+        final List<String> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onRemoteMessage(String destination, String contentType, byte[] body) {
+            received.add("topic " + destination);
+        }
+
+        @Override
+        public void onRemoteUserMessage(String username, String destination, String contentType, byte[] body) {
+            received.add("user " + username + destination);
+        }
+    }
+
+    @AfterEach
+    void shutdown() {
+        brokers.forEach(TcpClusterBroker::shutdown);
+    }
+
+    @Test
+    void publishOnlyReachesNodesWithMatchingInterest() throws Exception {
+        int[] ports = freePorts(2);
+        Recorder r2 = new Recorder();
+        TcpClusterBroker n1 = start("n1", ports, 0, "", new Recorder());
+        TcpClusterBroker n2 = start("n2", ports, 1, "", r2);
+
+        n2.updateInterest(Set.of("/topic/a/*"));
+        await(() -> n1.connectedNodes().contains("n2") && n1.nodesFor("/topic/a/x").contains("n2"));
+
+        // Cùng một kết nối giữ thứ tự: nếu /topic/b/x được gửi thì nó tới trước /topic/a/x
+        n1.publish("/topic/b/x", "application/json", body());
+        n1.publish("/topic/a/x", "application/json", body());
+        await(() -> !r2.received.isEmpty());
+        assertEquals(List.of("topic /topic/a/x"), r2.received);
+    }
+
+    @Test
+    void userMessageOnlyReachesNodeAdvertisingTheUser() throws Exception {
+        int[] ports = freePorts(3);
+        Recorder r2 = new Recorder();
+        Recorder r3 = new Recorder();
+        TcpClusterBroker n1 = start("n1", ports, 0, "", new Recorder());
+        TcpClusterBroker n2 = start("n2", ports, 1, "", r2);
+        TcpClusterBroker n3 = start("n3", ports, 2, "", r3);
+
+        n2.updateUsers(Set.of("bob"));
+        n3.updateUsers(Set.of("carol"));
+        await(() -> n1.connectedNodes().equals(Set.of("n2", "n3"))
+                && n1.nodesForUser("bob").equals(Set.of("n2")) && n1.nodesForUser("carol").equals(Set.of("n3")));
+
+        n1.publishToUser("bob", "/queue/a", "application/json", body());
+        n1.publishToUser("carol", "/queue/b", "application/json", body());
+        n1.publishToUser("bob", "/queue/c", "application/json", body());
+        await(() -> r2.received.size() == 2 && r3.received.size() == 1);
+        assertEquals(List.of("user bob/queue/a", "user bob/queue/c"), r2.received);
+        assertEquals(List.of("user carol/queue/b"), r3.received);
+    }
+
+    @Test
+    void stateFramesSurviveFullPublishQueue() throws Exception {
+        int[] ports = freePorts(2);
+        TcpClusterBroker n1 = start("n1", ports, 0, "", new Recorder(), 1);
+        TcpClusterBroker n2 = start("n2", ports, 1, "", new Recorder(), 1);
+        n2.updateInterest(Set.of("/topic/**"));
+        await(() -> n1.connectedNodes().contains("n2") && !n1.nodesFor("/topic/x").isEmpty());
+
+        // Hàng đợi 1 frame bị PUBLISH lấp đầy liên tục: PUBLISH rơi, USERS thì không
+        byte[] body = new byte[1024];
+        for (int i = 0; i < 20_000; i++) {
+            n1.publish("/topic/x", "application/octet-stream", body);
+            if (i % 1000 == 0) {
+                n1.updateUsers(Set.of("user-" + i));
+            }
+        }
+        n1.updateUsers(Set.of("final"));
+        await(() -> n2.nodesForUser("final").equals(Set.of("n1")));
+        assertTrue(n1.droppedFrames() > 0, "publish queue never filled");
+    }
+
+    @Test
+    void failingDeliveryKeepsConnectionAndState() throws Exception {
+        int[] ports = freePorts(2);
+        List<String> received = new CopyOnWriteArrayList<>();
+        TcpClusterBroker n1 = start("n1", ports, 0, "", new Recorder());
+        TcpClusterBroker n2 = start("n2", ports, 1, "", new ClusterBroker.Listener() {
+            @Override
+            public void onRemoteMessage(String destination, String contentType, byte[] body) {
+                if (destination.endsWith("boom")) {
+                    throw new IllegalStateException("encode failed");
+                }
+                received.add(destination);
+            }
+
+            @Override
+            public void onRemoteUserMessage(String username, String destination, String contentType, byte[] body) {}
+        });
+
+        n2.updateInterest(Set.of("/topic/**"));
+        n1.updateUsers(Set.of("alice"));
+        await(() -> n1.connectedNodes().contains("n2")
+                && !n1.nodesFor("/topic/x").isEmpty() && !n2.nodesForUser("alice").isEmpty());
+
+        n1.publish("/topic/boom", "application/json", body());
+        n1.publish("/topic/ok", "application/json", body());
+        await(() -> !received.isEmpty());
+        assertEquals(List.of("/topic/ok"), received);
+        assertEquals(1, n2.deliveryFailures());
+        // Trạng thái của n1 trên n2 không bị xóa
+        assertEquals(Set.of("n1"), n2.nodesForUser("alice"));
+    }
+
+    @Test
+    void stateIsAdvertisedAgainAfterReconnect() throws Exception {
+        int[] ports = freePorts(2);
+        TcpClusterBroker n1 = start("n1", ports, 0, "", new Recorder());
+        TcpClusterBroker n2 = start("n2", ports, 1, "", new Recorder());
+
+        n1.updateUsers(Set.of("alice"));
+        n1.updateInterest(Set.of("/topic/a"));
+        await(() -> n2.nodesForUser("alice").equals(Set.of("n1")));
+
+        // n2 khởi động lại với trạng thái trống: n1 phải tự kết nối lại và gửi lại users + interest
+        n2.shutdown();
+        // Kết nối gửi của n1 đang rảnh vẫn phải tự phát hiện n2 đã đóng
+        await(() -> n1.connectedNodes().isEmpty());
+        TcpClusterBroker restarted = start("n2", ports, 1, "", new Recorder());
+        await(() -> restarted.nodesForUser("alice").equals(Set.of("n1"))
+                && restarted.nodesFor("/topic/a").equals(Set.of("n1")));
+    }
+
+    @Test
+    void helloWithWrongTokenIsRejected() throws Exception {
+        int[] ports = freePorts(1);
+        start("n1", ports, 0, "s3cret", new Recorder());
+
+        assertEquals(-1, handshake(ports[0], "other"));
+        assertEquals(HELLO, handshake(ports[0], "s3cret"));
+    }
+
+    @Test
+    void connectionFromNonPeerAddressIsRejectedWithoutToken() throws Exception {
+        int[] ports = freePorts(1);
+        // Peer duy nhất là 127.0.0.2 - kết nối từ 127.0.0.1 bị từ chối trước cả HELLO
+        brokers.add(new TcpClusterBroker("n1", LOOPBACK, ports[0],
+                List.of(new InetSocketAddress("127.0.0.2", ports[0])), "", 100));
+        brokers.getLast().start(new Recorder());
+        assertEquals(-1, handshake(ports[0], ""));
+
+        int[] other = freePorts(1);
+        start("n2", new int[]{other[0], ports[0]}, 0, "", new Recorder());
+        assertEquals(HELLO, handshake(other[0], ""));
+    }
+
+    // ========== HELPERS ========== //
+
+    private static final byte HELLO = 1;
+
+    /**
+     * Node index trong ports, các port còn lại là peer
+     */
+    private TcpClusterBroker start(String nodeId, int[] ports, int index, String token, ClusterBroker.Listener listener) {
+        return start(nodeId, ports, index, token, listener, 100);
+    }
+
+    private TcpClusterBroker start(String nodeId, int[] ports, int index, String token, ClusterBroker.Listener listener,
+                                   int queueCapacity) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (int i = 0; i < ports.length; i++) {
+            if (i != index) {
+                peers.add(new InetSocketAddress(LOOPBACK, ports[i]));
+            }
+        }
+        TcpClusterBroker broker = new TcpClusterBroker(nodeId, LOOPBACK, ports[index], peers, token, queueCapacity);
+        brokers.add(broker);
+        broker.start(listener);
+        return broker;
+    }
+
+    /**
+     * Gửi HELLO như một peer, trả về type của frame trả lời hoặc -1 nếu node đóng kết nối
+     */
+    private static int handshake(int port, String token) throws IOException {
+        try (Socket socket = new Socket(LOOPBACK, port)) {
+            socket.setSoTimeout((int) TIMEOUT_MS);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream hello = new DataOutputStream(bytes);
+            hello.writeByte(HELLO);
+            hello.writeUTF("probe");
+            byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+            hello.writeShort(tokenBytes.length);
+            hello.write(tokenBytes);
+
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int first = in.read();
+            if (first < 0) {
+                return -1;
+            }
+            in.readNBytes(3); // phần còn lại của length
+            return in.readByte();
+        } catch (SocketException e) {
+            // Node đóng kết nối trước khi đọc hết HELLO
+            return -1;
+        }
+    }
+
+    private static int[] freePorts(int count) throws IOException {
+        int[] ports = new int[count];
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocket socket = new ServerSocket(0, 50, LOOPBACK);
+                sockets.add(socket);
+                ports[i] = socket.getLocalPort();
+            }
+        } finally {
+            for (ServerSocket socket : sockets) {
+                socket.close();
+            }
+        }
+        return ports;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not reached within " + TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] body() {
+        return "{}".getBytes(StandardCharsets.UTF_8);
+    }
+}
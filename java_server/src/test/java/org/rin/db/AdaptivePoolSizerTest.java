@@ -0,0 +1,65 @@
+package org.rin.db;
+
+import org.junit.jupiter.api.Test;
+import org.rin.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptivePoolSizerTest {
+
+    private static final int MIN = 4;
+    private static final int MAX = 40;
+    private static final double TARGET_WAIT_MS = 10;
+
+    // decide không đụng tới dataSource: số liệu mỗi chu kỳ do test dựng
+    private final AdaptivePoolSizer sizer = new AdaptivePoolSizer(null, MIN, MAX, TARGET_WAIT_MS);
+
+    /**
+     * Snapshot của một chu kỳ: count mẫu cùng một độ trễ
+     */
+    private static LatencyHistogram.Snapshot samples(int count, long millis) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < count; i++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        return histogram.snapshot();
+    }
+
+    private static LatencyHistogram.Snapshot none() {
+        return samples(0, 0);
+    }
+
+    @Test
+    void growsByAQuarterWhenRequestsWaitAndDbIsFast() {
+        assertEquals(25, sizer.decide(20, 20, 0, samples(40, 50), samples(40, 2)));
+        // Có waiter nhưng chưa có mẫu chờ nào kết thúc cũng tính là đang chờ
+        assertEquals(31, sizer.decide(25, 25, 3, none(), samples(40, 2)));
+        assertEquals(MAX, sizer.decide(38, 38, 0, samples(40, 50), samples(40, 2)));
+    }
+
+    @Test
+    void stepsDownWhenWaitingBecauseDbIsSlow() {
+        // Chu kỳ đầu chỉ lập baseline ~2ms, pool đang dùng hết nên không đổi
+        assertEquals(20, sizer.decide(20, 20, 0, none(), samples(40, 2)));
+        assertEquals(18, sizer.decide(20, 20, 0, samples(40, 50), samples(40, 20)));
+        assertEquals(MIN, sizer.decide(MIN, MIN, 0, samples(40, 50), samples(40, 20)));
+    }
+
+    @Test
+    void smallAbsoluteSlowdownIsNotTreatedAsSlowDb() {
+        assertEquals(20, sizer.decide(20, 20, 0, none(), samples(40, 1)));
+        // 4ms là gấp 4 baseline nhưng chỉ hơn 3ms - vẫn tăng pool
+        assertEquals(25, sizer.decide(20, 20, 0, samples(40, 50), samples(40, 4)));
+        // Quá ít mẫu statement thì không kết luận DB chậm
+        assertEquals(31, sizer.decide(25, 25, 0, samples(40, 50), samples(5, 100)));
+    }
+
+    @Test
+    void shrinksByOneWhenNobodyWaitsAndPoolIsMostlyIdle() {
+        assertEquals(19, sizer.decide(20, 9, 0, none(), samples(40, 2)));
+        assertEquals(20, sizer.decide(20, 10, 0, none(), samples(40, 2)));
+        assertEquals(MIN, sizer.decide(MIN, 0, 0, none(), none()));
+    }
+}
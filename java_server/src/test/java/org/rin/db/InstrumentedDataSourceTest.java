@@ -0,0 +1,41 @@
+package org.rin.db;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InstrumentedDataSourceTest {
+
+    @Test
+    void literalsBecomePlaceholders() {
+        assertEquals("SELECT * FROM users WHERE name = ? AND score > ? AND ratio < ?",
+                InstrumentedDataSource.normalize("SELECT * FROM users WHERE name = 'O\\'Brien' AND score > 30 AND ratio < 0.75"));
+        assertEquals("UPDATE users SET name = ? WHERE id = ?",
+                InstrumentedDataSource.normalize("UPDATE users\n   SET name = \"An\"\n WHERE id = 42"));
+    }
+
+    @Test
+    void inListsCollapseToOneShape() {
+        String expected = "SELECT * FROM users WHERE id IN (?...)";
+        assertEquals(expected, InstrumentedDataSource.normalize("SELECT * FROM users WHERE id IN (?, ?)"));
+        assertEquals(expected, InstrumentedDataSource.normalize("SELECT * FROM users WHERE id IN (1, 2, 3)"));
+        assertEquals(expected, InstrumentedDataSource.normalize("SELECT * FROM users WHERE id IN ( ?,?,? )"));
+        // Một phần tử giữ nguyên (?)
+        assertEquals("SELECT * FROM users WHERE id IN (?)", InstrumentedDataSource.normalize("SELECT * FROM users WHERE id IN (7)"));
+    }
+
+    @Test
+    void multiRowValuesCollapseToFirstRow() {
+        String expected = "INSERT INTO users (name, phone) VALUES (?...), ...";
+        assertEquals(expected, InstrumentedDataSource.normalize(
+                "INSERT INTO users (name, phone) VALUES ('a', '1'), ('b', '2'), ('c', '3')"));
+        assertEquals(expected, InstrumentedDataSource.normalize("INSERT INTO users (name, phone) VALUES (?, ?), (?, ?)"));
+        assertEquals("INSERT INTO tags VALUES (?), ...", InstrumentedDataSource.normalize("INSERT INTO tags VALUES (1), (2)"));
+    }
+
+    @Test
+    void digitsInsideIdentifiersAreKept() {
+        assertEquals("SELECT col1, t2.x_3 FROM table2 t2 WHERE t2.col_9 = ?",
+                InstrumentedDataSource.normalize("SELECT col1, t2.x_3 FROM table2 t2 WHERE t2.col_9 = 5"));
+    }
+}
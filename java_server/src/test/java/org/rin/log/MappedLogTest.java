@@ -0,0 +1,157 @@
+package org.rin.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedLogTest {
+
+    private static final int SEGMENT_BYTES = 256;
+    private static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+    @TempDir
+    Path dir;
+
+    private static byte[] payload(long seq) {
+        return ("record-" + seq).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> read(MappedLog log, long afterSeq) {
+        List<String> out = new ArrayList<>();
+        log.readFrom(afterSeq, (seq, payload) -> out.add(seq + ":" + new String(payload, StandardCharsets.UTF_8)));
+        return out;
+    }
+
+    private static List<String> expected(long from, long to) {
+        List<String> out = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            out.add(seq + ":record-" + seq);
+        }
+        return out;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    @Test
+    void recoversRecordsAcrossSegmentsAfterReopen() throws IOException {
+        MappedLog log = new MappedLog(dir, SEGMENT_BYTES, 100);
+        for (long seq = 1; seq <= 30; seq++) {
+            log.append(seq, payload(seq));
+        }
+        log.close();
+
+        MappedLog reopened = new MappedLog(dir, SEGMENT_BYTES, 100);
+        assertEquals(1, reopened.firstSeq());
+        assertEquals(30, reopened.lastSeq());
+        assertEquals(expected(1, 30), read(reopened, 0));
+        assertEquals(expected(21, 30), read(reopened, 20));
+
+        // Ghi tiếp sau khi khôi phục
+        reopened.append(31, payload(31));
+        assertEquals(expected(29, 31), read(reopened, 28));
+        reopened.close();
+    }
+
+    @Test
+    void tornFinalRecordIsDroppedAndOverwritten() throws IOException {
+        MappedLog log = new MappedLog(dir, SEGMENT_BYTES, 100);
+        for (long seq = 1; seq <= 3; seq++) {
+            log.append(seq, payload(seq));
+        }
+        log.close();
+
+        // Process chết giữa lúc ghi record 4: seq + payload đã có, length (ghi sau cùng) vẫn là 0
+        int end = 0;
+        for (long seq = 1; seq <= 3; seq++) {
+            end += RECORD_HEADER + payload(seq).length;
+        }
+        Path segment = segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(RECORD_HEADER + 4);
+            torn.putInt(0).putLong(4).put("reco".getBytes(StandardCharsets.UTF_8)).flip();
+            channel.write(torn, end);
+        }
+
+        MappedLog reopened = new MappedLog(dir, SEGMENT_BYTES, 100);
+        assertEquals(3, reopened.lastSeq());
+        assertEquals(expected(1, 3), read(reopened, 0));
+
+        // Record 4 ghi lại đè lên chỗ dở dang
+        reopened.append(4, payload(4));
+        reopened.close();
+        MappedLog again = new MappedLog(dir, SEGMENT_BYTES, 100);
+        assertEquals(expected(1, 4), read(again, 0));
+        again.close();
+    }
+
+    @Test
+    void lengthPastSegmentEndStopsRecovery() throws IOException {
+        MappedLog log = new MappedLog(dir, SEGMENT_BYTES, 100);
+        log.append(1, payload(1));
+        log.close();
+
+        int end = RECORD_HEADER + payload(1).length;
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(RECORD_HEADER);
+            torn.putInt(SEGMENT_BYTES).putLong(2).flip();
+            channel.write(torn, end);
+        }
+
+        MappedLog reopened = new MappedLog(dir, SEGMENT_BYTES, 100);
+        assertEquals(1, reopened.lastSeq());
+        assertEquals(expected(1, 1), read(reopened, 0));
+        reopened.close();
+    }
+
+    @Test
+    void deleteUpToKeepsSegmentsWithNewerRecords() throws IOException {
+        MappedLog log = new MappedLog(dir, SEGMENT_BYTES, 100);
+        for (long seq = 1; seq <= 30; seq++) {
+            log.append(seq, payload(seq));
+        }
+        int before = segmentFiles().size();
+
+        log.deleteUpTo(15);
+        long first = log.firstSeq();
+        // Segment chứa seq 16 phải còn, segment chỉ có seq <= 15 bị xóa
+        assertTrue(first > 1 && first <= 16, "firstSeq " + first);
+        assertEquals(expected(16, 30), read(log, 15));
+        assertTrue(segmentFiles().size() < before);
+
+        // Segment đang ghi luôn được giữ
+        log.deleteUpTo(1_000);
+        assertEquals(30, log.lastSeq());
+        assertEquals(1, segmentFiles().size());
+        log.close();
+    }
+
+    @Test
+    void maxSegmentsDropsOldestOnRoll() throws IOException {
+        MappedLog log = new MappedLog(dir, SEGMENT_BYTES, 2);
+        for (long seq = 1; seq <= 30; seq++) {
+            log.append(seq, payload(seq));
+        }
+        assertEquals(2, segmentFiles().size());
+        assertEquals(30, log.lastSeq());
+        List<String> kept = read(log, 0);
+        assertEquals(expected(log.firstSeq(), 30), kept);
+        log.close();
+    }
+}
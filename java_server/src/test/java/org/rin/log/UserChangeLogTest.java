@@ -0,0 +1,92 @@
+package org.rin.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.rin.dto.UserChangesDTO;
+import org.rin.dto.UserHandleDTO;
+import org.rin.model.User;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UserChangeLogTest {
+
+    // Segment nhỏ để vài chục event đã sang nhiều segment, snapshot chỉ ghi khi test gọi
+    private static final int SEGMENT_BYTES = 512;
+    private static final int NO_AUTO_SNAPSHOT = Integer.MAX_VALUE;
+
+    @TempDir
+    Path dir;
+
+    private static List<UserHandleDTO> adds(int fromId, int toId) {
+        List<UserHandleDTO> events = new ArrayList<>();
+        for (int id = fromId; id <= toId; id++) {
+            events.add(new UserHandleDTO(new User(id, "User " + id, "0900000000", 0), "add"));
+        }
+        return events;
+    }
+
+    private static List<Long> seqs(UserChangesDTO changes) {
+        return changes.getChanges().stream().map(UserChangeLog.Change::seq).toList();
+    }
+
+    @Test
+    void changesAfterReturnsSeqOfLastChange() throws IOException {
+        try (UserChangeLog log = new UserChangeLog(dir, SEGMENT_BYTES, NO_AUTO_SNAPSHOT)) {
+            log.append(adds(1, 5));
+
+            UserChangesDTO changes = log.changesAfter(2);
+            assertEquals(List.of(3L, 4L, 5L), seqs(changes));
+            assertEquals(5, changes.getSeq());
+
+            UserChangesDTO upToDate = log.changesAfter(5);
+            assertEquals(List.of(), upToDate.getChanges());
+            assertEquals(5, upToDate.getSeq());
+        }
+    }
+
+    @Test
+    void compactedRangeIsGoneButTailIsServed() throws IOException {
+        try (UserChangeLog log = new UserChangeLog(dir, SEGMENT_BYTES, NO_AUTO_SNAPSHOT)) {
+            log.append(adds(1, 40));
+            log.writeSnapshot();
+            log.append(List.of(new UserHandleDTO(new User(3, "", ""), "delete")));
+
+            // Phần đầu đã gộp vào snapshot -> null (controller trả 410)
+            assertNull(log.changesAfter(0));
+            // Client đã có snapshot seq 40 chỉ cần phần sau
+            UserChangesDTO tail = log.changesAfter(40);
+            assertNotNull(tail);
+            assertEquals(List.of(41L), seqs(tail));
+            assertEquals(41, tail.getSeq());
+            assertEquals(39, log.snapshot().users().size());
+        }
+    }
+
+    @Test
+    void restartRebuildsUsersFromSnapshotAndLog() throws IOException {
+        try (UserChangeLog log = new UserChangeLog(dir, SEGMENT_BYTES, NO_AUTO_SNAPSHOT)) {
+            log.append(adds(1, 20));
+            log.writeSnapshot();
+            log.append(adds(21, 25));
+            log.append(List.of(new UserHandleDTO(new User(1, "", ""), "delete")));
+        }
+
+        try (UserChangeLog reopened = new UserChangeLog(dir, SEGMENT_BYTES, NO_AUTO_SNAPSHOT)) {
+            UserChangeLog.Snapshot snapshot = reopened.snapshot();
+            assertEquals(26, snapshot.seq());
+            assertEquals(24, snapshot.users().size());
+            assertEquals(List.of(21L, 22L, 23L, 24L, 25L, 26L), seqs(reopened.changesAfter(20)));
+
+            // seq tiếp tục sau khi restart
+            reopened.append(adds(26, 26));
+            assertEquals(27, reopened.lastSeq());
+        }
+    }
+}
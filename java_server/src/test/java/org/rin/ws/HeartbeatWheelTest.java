@@ -0,0 +1,137 @@
+package org.rin.ws;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeartbeatWheelTest {
+
+    // Tick ngắn, wheel 4 bucket: delay 100ms phải đi qua nhiều vòng (rounds > 0)
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 4;
+
+    private final HeartbeatWheel wheel = new HeartbeatWheel(TICK_MS, WHEEL_SIZE);
+
+    @AfterEach
+    void shutdown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void timeoutLongerThanOneRevolutionWaitsForItsRound() throws InterruptedException {
+        long delay = 100;
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicReference<Long> firedAt = new AtomicReference<>();
+        long scheduledAt = System.currentTimeMillis();
+        wheel.schedule(now -> {
+            firedAt.set(now);
+            fired.countDown();
+            return 0;
+        }, delay);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS), "timeout never fired");
+        assertTrue(firedAt.get() >= scheduledAt + delay, "fired after " + (firedAt.get() - scheduledAt) + " ms");
+    }
+
+    @Test
+    void taskIsRescheduledUntilItReturnsZero() throws InterruptedException {
+        List<Long> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(now -> {
+            runs.add(now);
+            if (runs.size() == 4) {
+                done.countDown();
+                return 0;
+            }
+            return 30;
+        }, 0);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS), "task ran " + runs.size() + " times");
+        Thread.sleep(100);
+        assertEquals(4, runs.size());
+        for (int i = 1; i < runs.size(); i++) {
+            assertTrue(runs.get(i) - runs.get(i - 1) >= 30, "rescheduled too early: " + runs);
+        }
+    }
+
+    @Test
+    void cancelledTimeoutNeverRunsAgain() throws InterruptedException {
+        CountDownLatch neverFired = new CountDownLatch(1);
+        wheel.schedule(now -> {
+            neverFired.countDown();
+            return 0;
+        }, 50).cancel();
+
+        List<Long> runs = new CopyOnWriteArrayList<>();
+        CountDownLatch twice = new CountDownLatch(2);
+        HeartbeatWheel.Timeout repeating = wheel.schedule(now -> {
+            runs.add(now);
+            twice.countDown();
+            return TICK_MS;
+        }, 0);
+        assertTrue(twice.await(2, TimeUnit.SECONDS));
+        repeating.cancel();
+        int afterCancel = runs.size();
+
+        assertTrue(!neverFired.await(200, TimeUnit.MILLISECONDS), "cancelled timeout fired");
+        // Có thể đã đang chạy đúng lúc cancel, nhưng không được đặt lại lần nữa
+        assertTrue(runs.size() <= afterCancel + 1, "ran " + (runs.size() - afterCancel) + " times after cancel");
+    }
+
+    @Test
+    void missedHeartbeatIsDeadWithinOnePeriodByDefault() {
+        long incoming = 1_000;
+        AtomicReference<String> dead = new AtomicReference<>();
+        Heartbeat heartbeat = new Heartbeat("s1", openSession(), null, 0, incoming, 0, 0, dead::set);
+
+        long before = System.currentTimeMillis();
+        heartbeat.touch();
+        long after = System.currentTimeMillis();
+
+        assertTrue(heartbeat.run(before + incoming) > 0);
+        assertNull(dead.get());
+        assertEquals(0, heartbeat.run(after + incoming + 1));
+        assertEquals("s1", dead.get());
+    }
+
+    @Test
+    void graceExtendsTheIncomingDeadline() {
+        long incoming = 1_000;
+        long grace = 500;
+        AtomicReference<String> dead = new AtomicReference<>();
+        Heartbeat heartbeat = new Heartbeat("s1", openSession(), null, 0, incoming, grace, 0, dead::set);
+
+        long before = System.currentTimeMillis();
+        heartbeat.touch();
+        long after = System.currentTimeMillis();
+
+        assertTrue(heartbeat.run(before + incoming + grace) > 0);
+        assertNull(dead.get());
+        assertEquals(0, heartbeat.run(after + incoming + grace + 1));
+        assertEquals("s1", dead.get());
+    }
+
+    /**
+     * Session không có socket, luôn "mở"
+     */
+    private static Session openSession() {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> method.getReturnType() == boolean.class ? false : null;
+                });
+    }
+}
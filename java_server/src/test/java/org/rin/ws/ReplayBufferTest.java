@@ -0,0 +1,84 @@
+package org.rin.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplayBufferTest {
+
+    private static final byte[] BODY = new byte[100];
+
+    /**
+     * Kết quả resume: seq được replay hoặc "gap"
+     */
+    private static final class Sink implements ReplayBuffer.ResumeSink {
+        final List<String> replayed = new ArrayList<>();
+        String gap;
+
+        @Override
+        public void message(String seq, String contentType, byte[] body) {
+            replayed.add(seq);
+        }
+
+        @Override
+        public void gap(String seq) {
+            gap = seq;
+        }
+    }
+
+    private static List<String> publish(ReplayBuffer.TopicLog topic, int count) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            topic.publish("application/json", BODY, tokens::add);
+        }
+        return tokens;
+    }
+
+    private static Sink resume(ReplayBuffer.TopicLog topic, String from) {
+        Sink sink = new Sink();
+        topic.resume(from, 100, () -> "subscribed", sink);
+        return sink;
+    }
+
+    @Test
+    void topicByteBudgetDropsOldestMessages() {
+        ReplayBuffer buffer = new ReplayBuffer("n1", 100, Set.of("/topic/t"), 10, 300, 10_000, null, 0, 0);
+        ReplayBuffer.TopicLog topic = buffer.topic("/topic/t");
+        List<String> tokens = publish(topic, 5);
+
+        assertEquals(300, buffer.bytes());
+        // seq 3..5 còn trong ring
+        assertEquals(tokens.subList(2, 5), resume(topic, tokens.get(1)).replayed);
+        // seq 2 đã bị bỏ vì budget -> gap tại vị trí hiện tại
+        Sink evicted = resume(topic, tokens.get(0));
+        assertEquals(List.of(), evicted.replayed);
+        assertEquals(tokens.get(4), evicted.gap);
+    }
+
+    @Test
+    void globalByteBudgetTrimsPublishingTopic() {
+        ReplayBuffer buffer = new ReplayBuffer("n1", 100, Set.of("/topic/**"), 10, 10_000, 350, null, 0, 0);
+        ReplayBuffer.TopicLog quiet = buffer.topic("/topic/quiet");
+        ReplayBuffer.TopicLog noisy = buffer.topic("/topic/noisy");
+        List<String> quietTokens = publish(quiet, 2);
+        List<String> noisyTokens = publish(noisy, 4);
+
+        // Topic ồn tự nhường chỗ, topic im lặng giữ nguyên
+        assertEquals(300, buffer.bytes());
+        assertEquals(quietTokens.subList(1, 2), resume(quiet, quietTokens.get(0)).replayed);
+        assertEquals(noisyTokens.subList(3, 4), resume(noisy, noisyTokens.get(2)).replayed);
+        assertEquals(noisyTokens.get(3), resume(noisy, noisyTokens.get(1)).gap);
+    }
+
+    @Test
+    void onlyConfiguredTopicsAreRecorded() {
+        ReplayBuffer buffer = new ReplayBuffer("n1", 100, Set.of("/topic/manager/users"), 10, 10_000, 10_000, null, 0, 0);
+        assertNull(buffer.topic("/topic/chat"));
+        assertNull(buffer.topic("/topic/manager/*"));
+    }
+}
@@ -0,0 +1,96 @@
+package org.rin.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendAdmissionTest {
+
+    private static final int MAX_KEYS = 3;
+    // 10 token/s, burst 5: lấy hết burst thì bucket bận 500ms, mỗi 100ms hồi một token
+    private static final SendAdmission.Limit USER_LIMIT = new SendAdmission.Limit(10, 5);
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Chỉ giới hạn theo user, thời gian do test truyền vào
+    private static SendAdmission admission() {
+        return new SendAdmission(SendAdmission.Limit.NONE, USER_LIMIT, SendAdmission.Limit.NONE, MAX_KEYS);
+    }
+
+    @Test
+    void fullKeyMapRejectsOnlyNewKeysUntilIdleBucketsAreEvicted() {
+        SendAdmission admission = admission();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < MAX_KEYS; i++) {
+            for (int n = 0; n < USER_LIMIT.burst(); n++) {
+                assertNull(admission.admit(null, "user-" + i, "/app/d-" + i, t0));
+            }
+        }
+        assertEquals(SendAdmission.Scope.USER, admission.admit(null, "user-0", "/app/d-0", t0));
+
+        // Map đầy toàn bucket đang bận: key mới bị từ chối, key cũ vẫn gửi được bằng bucket riêng
+        assertEquals(SendAdmission.Scope.USER, admission.admit(null, "newcomer", "/app/new", t0));
+        assertNull(admission.admit(null, "user-0", "/app/d-0", t0 + 100 * MS));
+        assertEquals(MAX_KEYS, admission.metrics().get("trackedUsers"));
+
+        // user-1, user-2 đã hồi đầy nhưng chưa qua khoảng cách giữa hai lần dọn: vẫn từ chối
+        assertEquals(SendAdmission.Scope.USER, admission.admit(null, "newcomer", "/app/new", t0 + 600 * MS));
+        assertEquals(MAX_KEYS, admission.metrics().get("trackedUsers"));
+
+        // Mọi bucket đã hồi đầy và đã qua 1s kể từ lần dọn trước: key mới dọn map rồi được nhận
+        assertNull(admission.admit(null, "newcomer", "/app/new", t0 + 1_000 * MS));
+        assertEquals(1, admission.metrics().get("trackedUsers"));
+    }
+
+    @Test
+    void evictIdleKeepsBucketsThatHaveNotRefilled() {
+        SendAdmission admission = admission();
+        long t0 = System.nanoTime();
+        assertNull(admission.admit(null, "quiet", "/app/a", t0));
+        for (int n = 0; n < USER_LIMIT.burst(); n++) {
+            assertNull(admission.admit(null, "busy", "/app/a", t0));
+        }
+
+        // quiet hồi đầy sau 100ms, busy sau 500ms
+        admission.evictIdle(t0 + 100 * MS);
+        assertEquals(1, admission.metrics().get("trackedUsers"));
+        admission.evictIdle(t0 + 500 * MS);
+        assertEquals(0, admission.metrics().get("trackedUsers"));
+    }
+
+    @Test
+    void tokenBucketAllowsBurstThenRefillsAtRate() {
+        long t0 = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(10, 5, t0);
+
+        for (int n = 0; n < 5; n++) {
+            assertTrue(bucket.tryAcquire(t0), "burst token " + n);
+        }
+        assertFalse(bucket.tryAcquire(t0));
+        assertFalse(bucket.tryAcquire(t0 + 99 * MS));
+
+        // Mỗi 100ms đúng một token
+        assertTrue(bucket.tryAcquire(t0 + 100 * MS));
+        assertFalse(bucket.tryAcquire(t0 + 100 * MS));
+        int admitted = 0;
+        for (long ms = 101; ms <= 1_100; ms++) {
+            if (bucket.tryAcquire(t0 + ms * MS)) {
+                admitted++;
+            }
+        }
+        assertEquals(10, admitted);
+
+        // Rảnh đủ lâu chỉ hồi lại burst, không tích thêm
+        assertFalse(bucket.isFull(t0 + 1_100 * MS));
+        assertTrue(bucket.isFull(t0 + 1_600 * MS));
+        int burst = 0;
+        while (bucket.tryAcquire(t0 + 10_000 * MS)) {
+            burst++;
+        }
+        assertEquals(5, burst);
+    }
+}
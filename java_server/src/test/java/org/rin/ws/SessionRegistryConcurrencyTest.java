@@ -0,0 +1,218 @@
+package org.rin.ws;
+
+import io.javalin.websocket.WsContext;
+import io.javalin.websocket.WsMessageContext;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SessionRegistry + TopicRouter dưới tải đồng thời: nhiều thread subscribe/unsubscribe/CONNECT lại/remove
+ * trên cùng một topic trong khi các thread khác liên tục router.match.
+ * - Trong lúc chạy: match không bao giờ trả về session đã remove xong trước khi match bắt đầu,
+ *   và luôn có đủ các session "ổn định" không bị đụng tới
+ * - Khi dừng: match trả về đúng tập subscription còn sống, router không còn subscription mồ côi
+ */
+class SessionRegistryConcurrencyTest {
+
+    private static final String TOPIC = "/topic/manager/users";
+    // Pattern khớp TOPIC (exact + wildcard) và không khớp
+    private static final List<String> MATCHING = List.of(TOPIC, "/topic/manager/*", "/topic/**");
+    private static final List<String> PATTERNS = List.of(TOPIC, "/topic/manager/*", "/topic/**", "/topic/other");
+
+    private static final int STABLE_SESSIONS = 16;
+    private static final int SLOTS = 32;
+    private static final int CHURN_THREADS = 4;
+    private static final int MATCH_THREADS = 2;
+    private static final int OPS_PER_THREAD = 50_000;
+
+    private final TopicRouter router = new TopicRouter(1_000);
+    private final SessionRegistry registry = new SessionRegistry(router);
+    private final AtomicLong nextSession = new AtomicLong();
+
+    // Đồng hồ logic: session id -> thời điểm remove() trả về
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, Long> removedAt = new ConcurrentHashMap<>();
+    // Chỉ giữ vài vi phạm đầu để báo lỗi, còn lại chỉ đếm
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong violationCount = new AtomicLong();
+
+    @Test
+    void matchAgreesWithRegistryUnderChurn() throws Exception {
+        Set<TopicRouter.Subscriber> stable = new HashSet<>();
+        for (int i = 0; i < STABLE_SESSIONS; i++) {
+            String sessionId = connect("stable-" + i);
+            registry.subscribe(sessionId, TOPIC, "sub-0");
+            stable.add(new TopicRouter.Subscriber(sessionId, "sub-0"));
+        }
+        AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            slots.set(i, connect("churn-" + nextSession.incrementAndGet()));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean churning = new AtomicBoolean(true);
+        List<Thread> churners = new ArrayList<>();
+        for (int t = 0; t < CHURN_THREADS; t++) {
+            churners.add(Thread.ofPlatform().name("churn-" + t).start(guarded(() -> {
+                start.await();
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    churn(slots);
+                }
+            })));
+        }
+        List<Thread> matchers = new ArrayList<>();
+        for (int t = 0; t < MATCH_THREADS; t++) {
+            matchers.add(Thread.ofPlatform().name("match-" + t).start(guarded(() -> {
+                start.await();
+                while (churning.get()) {
+                    checkMatch(stable);
+                }
+            })));
+        }
+
+        start.countDown();
+        for (Thread thread : churners) {
+            assertTrue(thread.join(Duration.ofMinutes(1)), "churn thread did not finish");
+        }
+        churning.set(false);
+        for (Thread thread : matchers) {
+            thread.join(Duration.ofMinutes(1));
+        }
+
+        assertEquals(0, violationCount.get(), () -> violationCount.get() + " violations, first: " + violations);
+        assertFinalState(stable);
+    }
+
+    /**
+     * Một thao tác ngẫu nhiên trên một slot dùng chung - nhiều thread đụng cùng session cùng lúc
+     */
+    private void churn(AtomicReferenceArray<String> slots) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = random.nextInt(SLOTS);
+        String sessionId = slots.get(slot);
+        String subscriptionId = "sub-" + random.nextInt(3);
+        int op = random.nextInt(100);
+        if (op < 45) {
+            registry.subscribe(sessionId, PATTERNS.get(random.nextInt(PATTERNS.size())), subscriptionId);
+        } else if (op < 80) {
+            registry.unsubscribe(sessionId, subscriptionId);
+        } else if (op < 90) {
+            // CONNECT lại trên cùng kết nối: subscription cũ phải biến mất khỏi router
+            SessionRegistry.Entry entry = registry.get(sessionId);
+            if (entry != null) {
+                registry.connect(entry, user(sessionId), null);
+            }
+        } else if (registry.remove(sessionId) != null) {
+            removedAt.put(sessionId, clock.incrementAndGet());
+            slots.compareAndSet(slot, sessionId, connect("churn-" + nextSession.incrementAndGet()));
+        }
+    }
+
+    private void checkMatch(Set<TopicRouter.Subscriber> stable) {
+        long startedAt = clock.get();
+        List<TopicRouter.Subscriber> matched = router.match(TOPIC);
+        Set<TopicRouter.Subscriber> seen = new HashSet<>(matched);
+        if (seen.size() != matched.size()) {
+            violation("duplicate subscribers in " + matched);
+        }
+        if (!seen.containsAll(stable)) {
+            violation("stable subscriber missing from match (" + matched.size() + " matched)");
+        }
+        for (TopicRouter.Subscriber subscriber : matched) {
+            Long removed = removedAt.get(subscriber.sessionId());
+            if (removed != null && removed <= startedAt) {
+                violation("session " + subscriber.sessionId() + " matched after remove");
+            }
+        }
+    }
+
+    private void violation(String message) {
+        if (violationCount.incrementAndGet() <= 10) {
+            violations.add(message);
+        }
+    }
+
+    private void assertFinalState(Set<TopicRouter.Subscriber> stable) {
+        Set<String> live = new HashSet<>();
+        Set<TopicRouter.Subscriber> expected = new HashSet<>();
+        for (SessionRegistry.Entry entry : registry.entries()) {
+            String sessionId = entry.ctx().sessionId();
+            live.add(sessionId);
+            for (Map.Entry<String, String> subscription : entry.user().getSubscriptions().entrySet()) {
+                if (MATCHING.contains(subscription.getValue())) {
+                    expected.add(new TopicRouter.Subscriber(sessionId, subscription.getKey()));
+                }
+            }
+        }
+        assertTrue(expected.containsAll(stable));
+        assertEquals(expected, new HashSet<>(router.match(TOPIC)));
+
+        for (Map.Entry<String, Set<String>> pattern : router.snapshot().entrySet()) {
+            for (String sessionId : pattern.getValue()) {
+                assertTrue(live.contains(sessionId), "orphan subscription " + pattern.getKey() + " -> " + sessionId);
+            }
+        }
+        for (String removed : removedAt.keySet()) {
+            assertTrue(registry.get(removed) == null, "removed session still registered: " + removed);
+        }
+    }
+
+    private String connect(String sessionId) {
+        SessionRegistry.Entry entry = registry.open(context(sessionId),
+                ctx -> new OutboundQueue(ctx.sessionId(), ctx.session, 16, OutboundQueue.OverflowPolicy.DROP_OLDEST));
+        registry.connect(entry, user(sessionId), null);
+        return sessionId;
+    }
+
+    private static UserSession user(String sessionId) {
+        return new UserSession(sessionId, "127.0.0.1", 50_000, "user-" + sessionId, true);
+    }
+
+    /**
+     * Context không có socket: Session là proxy luôn "mở", gửi đi không làm gì
+     */
+    private static WsContext context(String sessionId) {
+        Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "Session[" + sessionId + "]";
+                    default -> method.getReturnType() == boolean.class ? false : null;
+                });
+        return new WsMessageContext(sessionId, session, "");
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private Runnable guarded(Body body) {
+        return () -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                violation(Thread.currentThread().getName() + " failed: " + e);
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package org.rin.ws;
+
+import io.javalin.websocket.WsContext;
+import io.javalin.websocket.WsMessageContext;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SessionRegistryTest {
+
+    private static final String TOPIC = "/topic/manager/users";
+
+    private final TopicRouter router = new TopicRouter(1_000);
+    private final SessionRegistry registry = new SessionRegistry(router);
+
+    @Test
+    void secondSubscriptionToSameDestinationKeepsTheFirst() {
+        SessionRegistry.Entry entry = connect("s1");
+        registry.subscribe("s1", TOPIC, "sub-a");
+        registry.subscribe("s1", TOPIC, "sub-b");
+
+        assertEquals(Set.of(new TopicRouter.Subscriber("s1", "sub-a"), new TopicRouter.Subscriber("s1", "sub-b")),
+                Set.copyOf(router.match(TOPIC)));
+        assertEquals(Map.of("sub-a", TOPIC, "sub-b", TOPIC), entry.user().getSubscriptions());
+        assertEquals(2, registry.subscriptionCount());
+
+        // Hủy một id chỉ bỏ subscription đó
+        assertEquals(TOPIC, registry.unsubscribe("s1", "sub-a"));
+        assertEquals(List.of(new TopicRouter.Subscriber("s1", "sub-b")), router.match(TOPIC));
+        assertEquals(List.of("sub-b"), entry.user().getSubscriptionIds(TOPIC));
+    }
+
+    @Test
+    void reusingAnIdMovesItToTheNewDestination() {
+        SessionRegistry.Entry entry = connect("s1");
+        registry.subscribe("s1", TOPIC, "sub-a");
+        registry.subscribe("s1", "/topic/other", "sub-a");
+
+        assertEquals(List.of(), router.match(TOPIC));
+        assertEquals(List.of(new TopicRouter.Subscriber("s1", "sub-a")), router.match("/topic/other"));
+        assertEquals(Map.of("sub-a", "/topic/other"), entry.user().getSubscriptions());
+    }
+
+    @Test
+    void removeDropsEverySubscriptionOfTheSession() {
+        connect("s1");
+        registry.subscribe("s1", TOPIC, "sub-a");
+        registry.subscribe("s1", TOPIC, "sub-b");
+        registry.subscribe("s1", "/topic/**", "sub-c");
+
+        registry.remove("s1");
+        assertEquals(List.of(), router.match(TOPIC));
+        assertEquals(Set.of(), router.patterns());
+    }
+
+    private SessionRegistry.Entry connect(String sessionId) {
+        SessionRegistry.Entry entry = registry.open(context(sessionId),
+                ctx -> new OutboundQueue(ctx.sessionId(), ctx.session, 16, OutboundQueue.OverflowPolicy.DROP_OLDEST));
+        registry.connect(entry, new UserSession(sessionId, "127.0.0.1", 50_000, "user-" + sessionId, true), null);
+        return entry;
+    }
+
+    /**
+     * Context không có socket: Session là proxy luôn "mở"
+     */
+    private static WsContext context(String sessionId) {
+        Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> method.getReturnType() == boolean.class ? false : null;
+                });
+        return new WsMessageContext(sessionId, session, "");
+    }
+}
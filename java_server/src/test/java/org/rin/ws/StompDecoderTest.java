@@ -0,0 +1,48 @@
+package org.rin.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StompDecoderTest {
+
+    private final StompDecoder decoder = new StompDecoder();
+    private final List<String> commands = new ArrayList<>();
+
+    private void decode(String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        decoder.decode(bytes, 0, bytes.length, frame -> commands.add(frame.command().name()));
+    }
+
+    @Test
+    void commandSplitAcrossMessagesIsBuffered() {
+        decode("SUBSC");
+        decode("RIBE\r");
+        decode("\nid:sub-0\ndestination:/topic/a\n\n\u0000\nSE");
+        decode("ND\ndestination:/app/a\n\nhi\u0000");
+        assertEquals(List.of("SUBSCRIBE", "SEND"), commands);
+    }
+
+    @Test
+    void garbageWithoutEolIsRejectedWithoutWaitingForMaxFrameSize() {
+        assertThrows(StompProtocolException.class, () -> decode("GET / HTTP"));
+        decoder.reset();
+        assertThrows(StompProtocolException.class, () -> decode("CONNECTX"));
+        decoder.reset();
+        // Đúng tiền tố nhưng dài hơn mọi command
+        assertThrows(StompProtocolException.class, () -> decode("UNSUBSCRIBE "));
+        decoder.reset();
+        assertThrows(StompProtocolException.class, () -> decode("x".repeat(64)));
+    }
+
+    @Test
+    void invalidCommandIsRejectedOnceTheLineEnds() {
+        decode("CONNECT");
+        assertThrows(StompProtocolException.class, () -> decode("ED\n\n\u0000"));
+    }
+}
@@ -0,0 +1,98 @@
+package org.rin.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TopicRouterTest {
+
+    private final TopicRouter router = new TopicRouter(1000);
+
+    private List<String> sessions(String destination) {
+        return router.match(destination).stream().map(TopicRouter.Subscriber::sessionId).sorted().toList();
+    }
+
+    @Test
+    void multiWildcardMatchesZeroOrMoreTrailingSegments() {
+        router.subscribe("/topic/users/**", "s1", "sub-1");
+
+        assertEquals(List.of("s1"), sessions("/topic/users"));
+        assertEquals(List.of("s1"), sessions("/topic/users/42"));
+        assertEquals(List.of("s1"), sessions("/topic/users/42/orders/7"));
+        assertEquals(List.of(), sessions("/topic/user"));
+        assertEquals(List.of(), sessions("/topic"));
+    }
+
+    @Test
+    void singleWildcardMatchesExactlyOneSegment() {
+        router.subscribe("/topic/manager/*", "wild", "sub-1");
+        router.subscribe("/topic/manager/users", "literal", "sub-1");
+
+        assertEquals(List.of("literal", "wild"), sessions("/topic/manager/users"));
+        assertEquals(List.of("wild"), sessions("/topic/manager/roles"));
+        assertEquals(List.of(), sessions("/topic/manager"));
+        assertEquals(List.of(), sessions("/topic/manager/users/42"));
+    }
+
+    @Test
+    void segmentsAfterMultiWildcardMustStillMatch() {
+        router.subscribe("/topic/**/orders", "s1", "sub-1");
+        router.subscribe("/topic/**/*/items", "s2", "sub-1");
+
+        assertEquals(List.of("s1"), sessions("/topic/orders"));
+        assertEquals(List.of("s1"), sessions("/topic/users/42/orders"));
+        assertEquals(List.of(), sessions("/topic/users/42/orders/7"));
+        assertEquals(List.of("s2"), sessions("/topic/a/b/items"));
+        assertEquals(List.of("s2"), sessions("/topic/b/items"));
+        assertEquals(List.of(), sessions("/topic/items"));
+    }
+
+    @Test
+    void wildcardInPublishedDestinationIsLiteral() {
+        router.subscribe("/topic/a", "literal", "sub-1");
+        router.subscribe("/topic/*", "single", "sub-1");
+        router.subscribe("/topic/**", "multi", "sub-1");
+
+        // "*" trong destination không mở rộng thành mọi segment, và mỗi subscription chỉ nhận một lần
+        assertEquals(List.of("multi", "single"), sessions("/topic/*"));
+        assertEquals(List.of("multi", "single"), sessions("/topic/**"));
+        assertEquals(List.of("multi"), sessions("/topic/**/x"));
+        assertEquals(2, router.match("/topic/*").size());
+    }
+
+    @Test
+    void sameSessionCanHoldTwoSubscriptionsOnOneDestination() {
+        router.subscribe("/topic/a", "s1", "sub-1");
+        router.subscribe("/topic/a", "s1", "sub-2");
+
+        assertEquals(Set.of(new TopicRouter.Subscriber("s1", "sub-1"), new TopicRouter.Subscriber("s1", "sub-2")),
+                Set.copyOf(router.match("/topic/a")));
+
+        router.unsubscribe("/topic/a", "s1", "sub-1");
+        assertEquals(List.of(new TopicRouter.Subscriber("s1", "sub-2")), router.match("/topic/a"));
+        assertEquals(Set.of("/topic/a"), router.patterns());
+    }
+
+    @Test
+    void cachedMatchIsInvalidatedByUnsubscribe() {
+        router.subscribe("/topic/users/*", "s1", "sub-1");
+        router.subscribe("/topic/users/42", "s2", "sub-1");
+
+        List<TopicRouter.Subscriber> first = router.match("/topic/users/42");
+        assertSame(first, router.match("/topic/users/42"), "second match should hit the cache");
+        assertEquals(List.of("s1", "s2"), sessions("/topic/users/42"));
+
+        router.unsubscribe("/topic/users/*", "s1", "sub-1");
+        assertEquals(List.of("s2"), sessions("/topic/users/42"));
+        assertEquals(Set.of("/topic/users/42"), router.patterns());
+
+        router.unsubscribe("/topic/users/42", "s2", "sub-1");
+        assertEquals(List.of(), sessions("/topic/users/42"));
+        assertEquals(Set.of(), router.patterns());
+        assertEquals(0, router.snapshot().size());
+    }
+}
@@ -26,6 +26,7 @@ CREATE TABLE `user` (
   `id` int NOT NULL AUTO_INCREMENT,
   `name` varchar(45) NOT NULL,
   `phone` varchar(45) NOT NULL,
+  `version` int NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
   UNIQUE KEY `id_UNIQUE` (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=19 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -37,7 +38,7 @@ CREATE TABLE `user` (
 
 LOCK TABLES `user` WRITE;
 /*!40000 ALTER TABLE `user` DISABLE KEYS */;
-INSERT INTO `user` VALUES (1,'1','1'),(2,'2','2'),(3,'3','3'),(4,'4','4'),(5,'5','5'),(6,'6','6'),(7,'7','7'),(8,'8','8'),(9,'9','9'),(10,'1','1'),(11,'1','1'),(12,'1','1'),(13,'Rin','4'),(17,'Huy','028364723'),(18,'Long','0972364723');
+INSERT INTO `user` VALUES (1,'1','1',0),(2,'2','2',0),(3,'3','3',0),(4,'4','4',0),(5,'5','5',0),(6,'6','6',0),(7,'7','7',0),(8,'8','8',0),(9,'9','9',0),(10,'1','1',0),(11,'1','1',0),(12,'1','1',0),(13,'Rin','4',0),(17,'Huy','028364723',0),(18,'Long','0972364723',0);
 /*!40000 ALTER TABLE `user` ENABLE KEYS */;
 UNLOCK TABLES;
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
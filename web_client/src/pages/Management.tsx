@@ -31,6 +31,19 @@ const Management: React.FC = () => {
       .catch(() => setUsers([]));
   }, []);
 
+  const applyEvent = (action: string, user: User) => {
+    if (action === "add") {
+      setUsers(prev => {
+        if (prev.find(u => u.id === user.id)) return prev;
+        return [user, ...prev];
+      });
+    } else if (action === "update") {
+      setUsers(prev => prev.map(u => u.id === user.id ? user : u));
+    } else if (action === "delete") {
+      setUsers(prev => prev.filter(u => u.id !== user.id));
+    }
+  };
+
   useEffect(() => {
   console.log("stompClient", stompClient);
   if (!stompClient) return;
@@ -45,23 +58,16 @@ const Management: React.FC = () => {
       try {
         // PARSE BODY - quan trọng!
         const data = JSON.parse(message.body);
-
-        // Xử lý theo cấu trúc data của bạn
-        if (data.action && data.user) {
-          console.log("Action:", data.action, "User:", data.user);
-          
-          if (data.action === "add") {
-            setUsers(prev => {
-              if (prev.find(u => u.id === data.user.id)) return prev;
-              return [data.user, ...prev];
-            });
-          } else if (data.action === "update") {
-            setUsers(prev => prev.map(u => u.id === data.user.id ? data.user : u));
-          } else if (data.action === "delete") {
-            setUsers(prev => prev.filter(u => u.id !== data.user.id));
+        // Batch gửi một mảng event trong một frame
+        const events = Array.isArray(data) ? data : [data];
+
+        for (const event of events) {
+          // Xử lý theo cấu trúc data của bạn
+          if (event.action && event.user) {
+            applyEvent(event.action, event.user);
+          } else {
+            console.warn("Invalid message format:", event);
           }
-        } else {
-          console.warn("Invalid message format:", data);
         }
       } catch (error) {
         console.error("❌ Parse error:", error, "Raw body:", message.body);